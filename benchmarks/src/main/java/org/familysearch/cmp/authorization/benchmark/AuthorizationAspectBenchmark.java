@@ -0,0 +1,117 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.benchmark;
+
+import org.familysearch.cmp.authorization.AuthorizationAspect;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.permissions.CmpPermission;
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * {@link AuthorizationAspect#doAccessCheck} as seen by a caller: a Spring AOP proxied
+ * method guarded by {@link PermissionRequired}, next to the same method unguarded.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class AuthorizationAspectBenchmark {
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class BenchmarkConfiguration {
+
+        @Bean
+        ProtectedResource protectedResource() {
+            return( new ProtectedResource() );
+        }
+
+        @Bean
+        AuthorizationAspect authorizationAspect() {
+            return( new AuthorizationAspect() );
+        }
+
+        @Bean
+        FoundationSecurityManager securityManager() {
+            return( BenchmarkStubs.securityManager( true ) );
+        }
+    }
+
+
+    public static class ProtectedResource {
+
+        @PermissionRequired( CmpPermission.SessionRequired )
+        public String sessionRequired( String in ) {
+            return( in );
+        }
+
+        @PermissionRequired( value = CmpPermission.SessionRequired, requireCheckSessionCasContext = true )
+        public String sessionCasContext( String in ) {
+            return( in );
+        }
+
+        public String unprotected( String in ) {
+            return( in );
+        }
+    }
+
+
+    private AnnotationConfigApplicationContext  context;
+    private ProtectedResource                   resource;
+
+
+    @Setup
+    public void setup() {
+
+        context = new AnnotationConfigApplicationContext( BenchmarkConfiguration.class );
+        resource = context.getBean( ProtectedResource.class );
+    }
+
+
+    @TearDown
+    public void teardown() {
+        context.close();
+    }
+
+
+    @Benchmark
+    public String unprotectedBaseline() {
+        return( resource.unprotected( BenchmarkStubs.SESSION_ID ) );
+    }
+
+
+    @Benchmark
+    public String sessionRequired() {
+        return( resource.sessionRequired( BenchmarkStubs.SESSION_ID ) );
+    }
+
+
+    @Benchmark
+    public String sessionCasContext() {
+        return( resource.sessionCasContext( BenchmarkStubs.SESSION_ID ) );
+    }
+
+
+}
@@ -0,0 +1,58 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Entry point of the benchmarks jar.  Modes, warm-up and measurement are set on the
+ * benchmark classes (throughput plus sampled latency, for percentiles).  Unless the
+ * command line says otherwise, this adds the GC profiler (for allocation rate) and writes
+ * JSON results that can be kept as a baseline.
+ * <pre>
+ *   java -jar target/benchmarks.jar                                  # everything
+ *   java -jar target/benchmarks.jar CASAuthorizationFilter           # one class
+ *   java -jar target/benchmarks.jar -rff baseline/current.json
+ * </pre>
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT_FILE = "benchmark-results.json";
+
+
+    private BenchmarkRunner() {
+    }
+
+
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException {
+
+        CommandLineOptions commandLine = new CommandLineOptions( args );
+        OptionsBuilder     options = new OptionsBuilder();
+
+        if ( commandLine.getIncludes().isEmpty() ) {
+            options.include( BenchmarkRunner.class.getPackage().getName() + ".*Benchmark" );
+        }
+        if ( commandLine.getProfilers().isEmpty() ) {
+            options.addProfiler( GCProfiler.class );
+        }
+        if ( !commandLine.getResultFormat().hasValue() ) {
+            options.resultFormat( ResultFormatType.JSON );
+        }
+        if ( !commandLine.getResult().hasValue() ) {
+            options.result( DEFAULT_RESULT_FILE );
+        }
+
+        new Runner( options.parent( commandLine ).build() ).run();
+    }
+
+
+}
@@ -0,0 +1,119 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.benchmark;
+
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.familysearch.identity.api.IdentityService;
+import org.familysearch.identity.api.PermissionSet;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * In-memory collaborators for the benchmarks.  The foundation and identity interfaces are
+ * implemented with dynamic proxies, answering only the calls the authorization code makes,
+ * so the benchmarks don't depend on the rest of those APIs.
+ */
+final class BenchmarkStubs {
+
+    static final String SESSION_ID =    "benchmark-session";
+    static final String USER_ID =       "cis.user.MMMM-BENCH";
+    static final String CAS_CONTEXT =   "FSMessagingDefaultContext";
+
+
+    private BenchmarkStubs() {
+    }
+
+
+    /**
+     * @param authorized answer returned by {@code isAuthorized}
+     */
+    static FoundationSecurityManager securityManager( boolean authorized ) {
+        return( securityManager( authorized, USER_ID ) );
+    }
+
+
+    static FoundationSecurityManager securityManager( boolean authorized, String userId ) {
+
+        return( proxy( FoundationSecurityManager.class, ( proxy, method, args ) -> {
+            switch ( method.getName() ) {
+                case "authenticatedSessionID":  return( SESSION_ID );
+                case "authenticatedUserID":     return( userId );
+                case "casContext":              return( CAS_CONTEXT );
+                case "isAuthorized":            return( authorized );
+                default:                        return( objectMethod( proxy, method.getName(), args ) );
+            }
+        } ) );
+    }
+
+
+    /**
+     * Identity service granting a fixed set of permissions to every session.
+     *
+     * @param latencyMicros delay before each answer completes; zero answers at once
+     * @param scheduler     completes delayed answers
+     */
+    static IdentityService identityService( long                        latencyMicros,
+                                            Set<String>                 grantedPermissions,
+                                            ScheduledExecutorService    scheduler ) {
+
+        final PermissionSet answer = new PermissionSet( CAS_CONTEXT, new HashSet<>( grantedPermissions ), Collections.<String>emptySet() );
+
+        return( proxy( IdentityService.class, ( proxy, method, args ) -> {
+            if ( !"isAuthorized".equals( method.getName() ) ) {
+                return( objectMethod( proxy, method.getName(), args ) );
+            }
+
+            if ( latencyMicros <= 0L ) {
+                return( CompletableFuture.completedFuture( answer ) );
+            }
+
+            CompletableFuture<PermissionSet> future = new CompletableFuture<>();
+            scheduler.schedule( () -> future.complete( answer ), latencyMicros, TimeUnit.MICROSECONDS );
+            return( future );
+        } ) );
+    }
+
+
+    /**
+     * Chain standing in for the rest of the filters: never authorizes, allocates nothing.
+     */
+    static AuthorizationFilterChain denyingChain() {
+
+        return( new AuthorizationFilterChain() {
+            @Override
+            public boolean isAuthorized( AuthorizationContext context ) {
+                return( false );
+            }
+        } );
+    }
+
+
+    private static <T> T proxy( Class<T> type, InvocationHandler handler ) {
+        return( type.cast( Proxy.newProxyInstance( BenchmarkStubs.class.getClassLoader(), new Class<?>[] { type }, handler ) ) );
+    }
+
+
+    private static Object objectMethod( Object proxy, String methodName, Object[] args ) {
+
+        switch ( methodName ) {
+            case "hashCode":    return( System.identityHashCode( proxy ) );
+            case "equals":      return( proxy == args[0] );
+            case "toString":    return( "BenchmarkStub@" + Integer.toHexString( System.identityHashCode( proxy ) ) );
+            default:            throw new UnsupportedOperationException( methodName + " is not stubbed for benchmarks" );
+        }
+    }
+
+
+}
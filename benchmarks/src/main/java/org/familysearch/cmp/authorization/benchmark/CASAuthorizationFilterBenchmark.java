@@ -0,0 +1,105 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.benchmark;
+
+import org.familysearch.cmp.authorization.CASAuthorizationFilter;
+import org.familysearch.cmp.authorization.cache.NoOpPermissionDecisionCache;
+import org.familysearch.cmp.authorization.cache.PermissionDecisionCache;
+import org.familysearch.cmp.authorization.cache.TtlPermissionDecisionCache;
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
+import org.familysearch.identity.api.IdentityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingAdminApiViewThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.MessagingClientRole;
+
+
+/**
+ * {@link CASAuthorizationFilter#isAuthorized} against a stub identity service with a
+ * configurable response latency, with and without the decision cache.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CASAuthorizationFilterBenchmark {
+
+    @Param( { "0", "500" } )
+    public long     identityLatencyMicros;
+
+    @Param( { "false", "true" } )
+    public boolean  cached;
+
+
+    private ScheduledExecutorService    scheduler;
+    private CASAuthorizationFilter      filter;
+    private AuthorizationFilterChain    chain;
+    private AuthorizationContext        grantedContext;
+    private AuthorizationContext        unhandledContext;
+
+
+    @Setup
+    public void setup() {
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        IdentityService identityService = BenchmarkStubs.identityService( identityLatencyMicros,
+                                                                          Collections.singleton( FSMessagingModifyThread.name() ),
+                                                                          scheduler );
+        Set<String> handled = new HashSet<>( asList( FSMessagingModifyThread.name(), FSMessagingAdminApiViewThread.name() ) );
+        PermissionDecisionCache cache = cached
+                                            ? new TtlPermissionDecisionCache( 1000, 10L, TimeUnit.MINUTES )
+                                            : NoOpPermissionDecisionCache.INSTANCE;
+
+        filter = new CASAuthorizationFilter( BenchmarkStubs.securityManager( true ), identityService,
+                                             BenchmarkStubs.CAS_CONTEXT, handled, cache );
+        chain = BenchmarkStubs.denyingChain();
+        grantedContext = new AuthorizationContext( FSMessagingModifyThread );
+        unhandledContext = new AuthorizationContext( MessagingClientRole );
+    }
+
+
+    @TearDown
+    public void teardown() {
+        scheduler.shutdownNow();
+    }
+
+
+    @Benchmark
+    public boolean granted() {
+        return( filter.isAuthorized( chain, grantedContext ) );
+    }
+
+
+    @Benchmark
+    public boolean unhandledPermission() {
+        return( filter.isAuthorized( chain, unhandledContext ) );
+    }
+
+
+}
@@ -0,0 +1,62 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.benchmark;
+
+import org.familysearch.cmp.authorization.UserIdEnforcer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * {@link UserIdEnforcer#enforceUserIdIsAuthenticated}: the session user, and the
+ * service-account delegation rule.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class UserIdEnforcerBenchmark {
+
+    private static final String SERVICE_ACCOUNT_ID =    "cis.proc.MMMM-SVC";
+    private static final String CONTRIBUTOR_ID =        "cis.wkca.MMMM-CONTRIB";
+
+
+    private UserIdEnforcer enforcer;
+    private UserIdEnforcer serviceAccountEnforcer;
+
+
+    @Setup
+    public void setup() {
+
+        enforcer = new UserIdEnforcer( BenchmarkStubs.securityManager( true ) );
+        serviceAccountEnforcer = new UserIdEnforcer( BenchmarkStubs.securityManager( true, SERVICE_ACCOUNT_ID ) );
+    }
+
+
+    @Benchmark
+    public boolean sessionUser() {
+        return( enforcer.enforceUserIdIsAuthenticated( BenchmarkStubs.USER_ID, "benchmark" ) );
+    }
+
+
+    @Benchmark
+    public boolean delegatedRule() {
+        return( serviceAccountEnforcer.enforceUserIdIsAuthenticated( CONTRIBUTOR_ID, "benchmark" ) );
+    }
+
+
+}
@@ -0,0 +1,67 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.benchmark;
+
+import org.familysearch.cmp.authorization.ValidSessionOnlyAuthorizationFilter;
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+
+
+/**
+ * {@link ValidSessionOnlyAuthorizationFilter#isAuthorized}: a session-only permission that
+ * the filter grants, and one it has to pass down the chain.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ValidSessionOnlyFilterBenchmark {
+
+    private ValidSessionOnlyAuthorizationFilter filter;
+    private AuthorizationFilterChain            chain;
+    private AuthorizationContext                sessionContext;
+    private AuthorizationContext                otherContext;
+
+
+    @Setup
+    public void setup() {
+
+        filter = new ValidSessionOnlyAuthorizationFilter( BenchmarkStubs.securityManager( true ), SessionRequired.name() );
+        chain = BenchmarkStubs.denyingChain();
+        sessionContext = new AuthorizationContext( SessionRequired );
+        otherContext = new AuthorizationContext( FSMessagingModifyThread );
+    }
+
+
+    @Benchmark
+    public boolean sessionPermission() {
+        return( filter.isAuthorized( chain, sessionContext ) );
+    }
+
+
+    @Benchmark
+    public boolean deferredToChain() {
+        return( filter.isAuthorized( chain, otherContext ) );
+    }
+
+
+}
@@ -0,0 +1,26 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization;
+
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Non-blocking counterpart of {@link org.familysearch.engage.foundation.security.AuthorizationFilter}.
+ * A filter either decides, or passes the context on by returning
+ * {@code filterChain.isAuthorizedAsync(context)}.
+ * <p>
+ * Anything that depends on the current request (session ID, CAS context) must be
+ * read before the returned future is chained onto, since later stages may run on
+ * another thread.
+ */
+public interface AsyncAuthorizationFilter {
+
+    CompletableFuture<Boolean> isAuthorizedAsync( AsyncAuthorizationFilterChain filterChain,
+                                                  AuthorizationContext          context );
+
+}
@@ -0,0 +1,78 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Ordered chain of {@link AsyncAuthorizationFilter}s, evaluated without blocking.
+ * Like the foundation AuthorizationFilterChain, a request that falls off the end
+ * of the chain is not authorized.
+ * <p>
+ * Instances are immutable: each step hands the next filter a chain positioned one
+ * further along, so one chain can serve any number of concurrent requests.
+ */
+public class AsyncAuthorizationFilterChain {
+
+    private static final CompletableFuture<Boolean> NOT_AUTHORIZED = CompletableFuture.completedFuture( Boolean.FALSE );
+
+
+    private final List<AsyncAuthorizationFilter>   filters;
+    private final int                              position;
+
+
+    public AsyncAuthorizationFilterChain( List<? extends AsyncAuthorizationFilter> chainFilters ) {
+
+        Preconditions.checkArgument( chainFilters != null, "No List<AsyncAuthorizationFilter> object provided (null)" );
+
+        this.filters = Collections.unmodifiableList( new ArrayList<>( chainFilters ) );
+        this.position = 0;
+    }
+
+
+    private AsyncAuthorizationFilterChain( List<AsyncAuthorizationFilter> filters, int position ) {
+
+        this.filters = filters;
+        this.position = position;
+    }
+
+
+    /**
+     * Ask the remaining filters whether the context is authorized.
+     *
+     * @return future completing with the decision, or exceptionally (e.g. with an
+     *         UnauthenticatedException) if a filter rejected the request outright
+     */
+    public CompletableFuture<Boolean> isAuthorizedAsync( AuthorizationContext context ) {
+
+        if ( position >= filters.size() ) {
+            return( NOT_AUTHORIZED );
+        }
+
+        try {
+            return( filters.get( position )
+                           .isAuthorizedAsync( new AsyncAuthorizationFilterChain( filters, position + 1 ), context ) );
+        }
+        catch( RuntimeException ex ) {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally( ex );
+            return( failed );
+        }
+    }
+
+
+    public List<AsyncAuthorizationFilter> getFilters() {
+        return( filters );
+    }
+
+
+}
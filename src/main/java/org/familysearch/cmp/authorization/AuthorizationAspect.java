@@ -1,19 +1,38 @@
 
 package org.familysearch.cmp.authorization;
 
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 
+import org.familysearch.cmp.authorization.audit.AuthorizationAuditEvent;
+import org.familysearch.cmp.authorization.audit.AuthorizationAuditLog;
 import org.familysearch.cmp.authorization.exception.UnauthenticatedException;
 import org.familysearch.cmp.authorization.exception.UnauthorizedException;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanRegistry;
+import org.familysearch.cmp.authorization.reporting.RejectionReporter;
 import org.familysearch.cmp.authorization.util.StringUtils;
 import org.familysearch.engage.foundation.security.AuthorizationContext;
 import org.familysearch.engage.foundation.security.FoundationSecurityManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -21,53 +40,418 @@ import org.springframework.stereotype.Component;
  * This aspect builds an AuthorizationContext instance and delegates
  * to {@link FoundationSecurityManager} instance to determine if the request
  * is authorized.
+ * <p>
+ * Each advised method's annotation is compiled once into an {@link AuthorizationPlan},
+ * kept in an {@link AuthorizationPlanRegistry}; a check then costs a table lookup plus
+ * the session checks.  Within an HTTP request, decisions are memoized in the request's
+ * {@link RequestAuthorizationMemo}, so nested advised methods don't repeat them.  Each
+ * check's time and outcome are recorded on the plan's pre-registered timers, and, when an
+ * {@link AuthorizationAuditLog} is configured, each grant and deny is handed to it without
+ * waiting; so is each check that fails instead, e.g. for want of a session.
+ * <p>
+ * Controller handler methods ({@link RequestMapping} or a composed mapping such as
+ * {@code @GetMapping}) returning a {@link CompletableFuture} are checked through the
+ * {@link AsyncAuthorizationFilterChain} when one is available, together with a
+ * {@value #CONTINUATION_EXECUTOR} executor: the servlet thread returns at once, and once the
+ * decision is in the method is invoked on that executor.  The request is not bound to it
+ * there; Spring MVC has already resolved the handler's arguments from the request, so the
+ * method must take what it needs from them.  Every other method returning a CompletableFuture,
+ * such as a service method, is checked before it runs on the caller's thread, like any other.
+ * Methods returning a {@link DeferredResult} are also checked before they run, so the
+ * DeferredResult Spring MVC waits on is the method's own, with its timeout and callbacks.
+ * <p>
+ * The aspect is registered as a bean by
+ * {@link org.familysearch.cmp.authorization.beans.AuthorizationBeans} only, never by component
+ * scanning.  By default Spring applies it through proxies, so calls a bean makes to its own
+ * methods are not checked.  Under the {@value #WEAVING_PROFILE} profile the aspect is instead
+ * woven into the classes, at build time (the {@code aspectj-ctw} Maven profile) or at load time
+ * (the AspectJ weaver agent, with an {@code aop.xml} of the application's), and applies to
+ * every execution.
  *
  * (Shamelessly stolen from the units project)
  */
 @Aspect
-@Component
 public class AuthorizationAspect {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthorizationAspect.class);
 
+    /**
+     * Spring profile for applications whose classes are woven with this aspect; proxies are
+     * then not created, and the woven aspect instance is configured as the bean.
+     */
+    public static final String WEAVING_PROFILE = "cmp-auth-aspectj-weaving";
+
+    /**
+     * Name of the executor that runs CompletableFuture methods once their decision is in.
+     */
+    public static final String CONTINUATION_EXECUTOR = "authorizationContinuationExecutor";
+
 
 
     @Autowired
     private FoundationSecurityManager securityManager;
 
+    @Autowired( required = false )
+    private AsyncAuthorizationFilterChain asyncFilterChain;
+
+    @Autowired( required = false )
+    @Qualifier( CONTINUATION_EXECUTOR )
+    private Executor continuationExecutor;
+
+    @Autowired( required = false )
+    private AuthorizationPlanRegistry planRegistry;
+
+    @Autowired( required = false )
+    private RejectionReporter rejectionReporter;
+
+    @Autowired( required = false )
+    private AuthorizationAuditLog auditLog;
+
+
+    @PostConstruct
+    public void init() {
+
+        if ( planRegistry == null ) {
+            planRegistry = new AuthorizationPlanRegistry( asyncFilterChain );
+        }
+    }
+
 
-    @Pointcut(value = "execution(@PermissionRequired * *(..)) && @annotation(permission)", argNames = "permission")
-    public void permissionRequired(PermissionRequired permission) {
+    /**
+     * Methods annotated directly or through a composed annotation, and controller handler
+     * methods of classes annotated either way.  Which annotation applies is settled by the
+     * plan registry.
+     */
+    @Pointcut(value = "execution(@PermissionRequired * *(..)) "
+                      + "|| execution(@(@PermissionRequired *) * *(..)) "
+                      + "|| (handlerMethod() && execution(* (@PermissionRequired *).*(..))) "
+                      + "|| (handlerMethod() && execution(* (@(@PermissionRequired *) *).*(..)))")
+    public void permissionRequired() {
     }
 
 
-    @Before(value = "permissionRequired(permission) && !within(AuthorizationAspect)", argNames = "permission")
-    public void doAccessCheck(PermissionRequired permission) {
+    /**
+     * Public methods mapped with RequestMapping, directly or through a composed mapping.  A
+     * class-level annotation covers only these, never the class's setters, lifecycle callbacks
+     * and the like.
+     */
+    @Pointcut(value = "execution(@org.springframework.web.bind.annotation.RequestMapping public !static * *(..)) "
+                      + "|| execution(@(@org.springframework.web.bind.annotation.RequestMapping *) public !static * *(..))")
+    public void handlerMethod() {
+    }
 
-        final AuthorizationContext context = createContext(permission);
 
-        if ( ! securityManager.isAuthorized(context)) {
-            LOGGER.info( "Authorization denied; required permissions={}, casContext={}",
-                          context.getPermissionNames(),
-                          context.get( AuthorizationContext.KEY_CAS_CONTEXT ) );
-            throw new UnauthorizedException();
+    /**
+     * Controller handler methods returning a CompletableFuture, mapped directly or through a
+     * composed mapping annotation.
+     */
+    @Pointcut(value = "execution(@org.springframework.web.bind.annotation.RequestMapping java.util.concurrent.CompletableFuture *(..)) "
+                      + "|| execution(@(@org.springframework.web.bind.annotation.RequestMapping *) java.util.concurrent.CompletableFuture *(..))")
+    public void asyncResult() {
+    }
+
+
+    @Before(value = "permissionRequired() && !asyncResult() && !within(AuthorizationAspect)")
+    public void doAccessCheck(JoinPoint joinPoint) {
+
+        checkAccess( planFor( joinPoint ) );
+    }
+
+
+    private void checkAccess(AuthorizationPlan plan) {
+
+        final long                     start = System.nanoTime();
+        final RequestAuthorizationMemo memo = RequestAuthorizationMemo.current();
+        final String                   sessionId = sessionId( memo );
+        final String                   casContext = authenticatedCasContext(plan, memo, sessionId, start);
+        final String                   userId = ( auditLog != null ) ? userId( memo ) : null;
+
+        if ( memo != null ) {
+            memo.recordEndpoint( plan.getEndpoint() );
         }
+
+        AuthorizationContext context = null;
+        Boolean              authorized = ( memo != null ) ? memo.decision( plan.getPermissionMask(), casContext ) : null;
+        try {
+            if ( authorized == null ) {
+                context = createContext(plan, casContext);
+                authorized = securityManager.isAuthorized( context );
+                if ( memo != null ) {
+                    memo.recordDecision( plan.getPermissionMask(), casContext, authorized );
+                }
+            }
+        }
+        catch( RuntimeException ex ) {
+            failed( plan, sessionId, userId, casContext, context, ex, start );
+            throw ex;
+        }
+
+        decided( plan, sessionId, userId, casContext, context, authorized, start );
     }
 
 
     /**
-     * Create the AuthorizationContext by obtaining the required permissions from the annotation.
+     * Record a decision on the plan's timers and in the audit log, and reject the call if it
+     * was denied.
      *
-     * @param permission annotation on the method containing the required set of permissions
-     * @return an AuthorizationContext
+     * @param sessionId authenticated session ID, read on the request thread
+     * @param userId    authenticated user ID, read on the request thread; null when not auditing
+     * @param context   context the filters decided, or null if the decision was memoized
+     * @param start     {@link System#nanoTime()} when the check started
      *
-     * @throws UnauthenticatedException if the session ID is not provided or the session ID is the string "null".
+     * @throws UnauthorizedException if the decision was a denial.
+     */
+    private void decided( AuthorizationPlan         plan,
+                          String                    sessionId,
+                          String                    userId,
+                          String                    casContext,
+                          AuthorizationContext      context,
+                          boolean                   authorized,
+                          long                      start ) {
+
+        final long elapsedNanos = System.nanoTime() - start;
+
+        if ( auditLog != null ) {
+            audit( plan, sessionId, userId, casContext, context, authorized, null, elapsedNanos );
+        }
+
+        if ( ! authorized ) {
+            UnauthorizedException denied = new UnauthorizedException();
+            plan.getMeters().record( elapsedNanos, denied );
+            logDenied( plan, casContext );
+            throw denied;
+        }
+        plan.getMeters().record( elapsedNanos, null );
+    }
+
+
+    /**
+     * Record a check that ended in an exception instead of a decision, e.g. for want of a
+     * session, on the plan's timers and, as a deny, in the audit log.
+     *
+     * @param casContext session CAS context, or null if the check failed before reading it
+     * @param context    context the filters were deciding, or null if they weren't reached
+     */
+    private void failed( AuthorizationPlan          plan,
+                         String                     sessionId,
+                         String                     userId,
+                         String                     casContext,
+                         AuthorizationContext       context,
+                         Throwable                  failure,
+                         long                       start ) {
+
+        final long elapsedNanos = System.nanoTime() - start;
+
+        plan.getMeters().record( elapsedNanos, failure );
+        if ( auditLog != null ) {
+            audit( plan, sessionId, userId, casContext, context, false, failure, elapsedNanos );
+        }
+    }
+
+
+    /**
+     * Hand the decision to the audit log, with the session token replaced by its fingerprint;
+     * never waits, and drops the event if the log is full.
+     *
+     * @param failure exception that ended the check, or null if it was decided
+     */
+    private void audit( AuthorizationPlan           plan,
+                        String                      sessionId,
+                        String                      userId,
+                        String                      casContext,
+                        AuthorizationContext        context,
+                        boolean                     authorized,
+                        Throwable                   failure,
+                        long                        elapsedNanos ) {
+
+        final String decidedBy = ( context != null ) ? (String) context.get( AuthorizationPlan.KEY_DECIDED_BY )
+                                                     : ( failure == null ) ? AuthorizationAuditEvent.DECIDED_BY_MEMO : null;
+
+        auditLog.publish( new AuthorizationAuditEvent( System.currentTimeMillis(),
+                                                       plan.getEndpoint(),
+                                                       auditLog.fingerprint( sessionId ),
+                                                       userId,
+                                                       CmpPermissionMask.names( plan.getPermissionMask() ),
+                                                       casContext,
+                                                       decidedBy,
+                                                       ( failure != null ) ? failure.getClass().getSimpleName() : null,
+                                                       authorized,
+                                                       elapsedNanos ) );
+    }
+
+
+    @Around(value = "permissionRequired() && asyncResult() && !within(AuthorizationAspect)")
+    public Object doAsyncAccessCheck(ProceedingJoinPoint joinPoint)
+        throws Throwable {
+
+        final AuthorizationPlan plan = planFor( joinPoint );
+
+        if ( (plan.getAsyncFilterChain() == null) || (continuationExecutor == null) ) {
+            checkAccess( plan );
+            return( joinPoint.proceed() );
+        }
+
+        final long                       start = System.nanoTime();
+        final RequestAuthorizationMemo   memo = RequestAuthorizationMemo.current();
+        final String                     sessionId = sessionId( memo );
+        final String                     casContext = authenticatedCasContext(plan, memo, sessionId, start);
+        final Boolean                    memoized = ( memo != null ) ? memo.decision( plan.getPermissionMask(), casContext ) : null;
+        final AuthorizationContext       context = ( memoized != null ) ? null : createContext(plan, casContext);
+        final CompletableFuture<Boolean> decision = ( memoized != null )
+                                                        ? CompletableFuture.completedFuture( memoized )
+                                                        : plan.getAsyncFilterChain().isAuthorizedAsync( context );
+
+        // read on the request thread; the rest may run on the continuation executor
+        final String userId = ( auditLog != null ) ? userId( memo ) : null;
+
+        if ( memo != null ) {
+            memo.recordEndpoint( plan.getEndpoint() );
+        }
+        if ( (memo != null) && (memoized == null) ) {
+            decision.thenAccept( authorized -> memo.recordDecision( plan.getPermissionMask(), casContext, authorized ) );
+        }
+
+        if ( decision.isDone() ) {
+            // answered without a remote call; no need to leave this thread
+            return( proceedIfAuthorized( joinPoint, plan, sessionId, userId, casContext, context, start, decision ) );
+        }
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        decision.whenCompleteAsync( ( authorized, error ) -> {
+            try {
+                CompletableFuture<?> result = (CompletableFuture<?>) proceedIfAuthorized( joinPoint, plan, sessionId, userId, casContext,
+                                                                                                   context, start, decision );
+                if ( result == null ) {
+                    future.complete( null );
+                }
+                else {
+                    result.whenComplete( ( value, resultError ) -> {
+                        if ( resultError != null ) {
+                            future.completeExceptionally( unwrap( resultError ) );
+                        }
+                        else {
+                            future.complete( value );
+                        }
+                    } );
+                }
+            }
+            catch( Throwable ex ) {
+                future.completeExceptionally( ex );
+            }
+        }, continuationExecutor );
+        return( future );
+    }
+
+
+    /**
+     * Invoke the advised method if the (completed) decision allows it.
+     *
+     * @param sessionId authenticated session ID, read on the request thread
+     * @param userId    authenticated user ID for the audit log, or null when not auditing
+     * @param context   context the filters decide, or null if the decision was memoized
+     * @param start     {@link System#nanoTime()} when the check started
+     */
+    private Object proceedIfAuthorized( ProceedingJoinPoint          joinPoint,
+                                        AuthorizationPlan            plan,
+                                        String                       sessionId,
+                                        String                       userId,
+                                        String                       casContext,
+                                        AuthorizationContext         context,
+                                        long                         start,
+                                        CompletableFuture<Boolean>   decision )
+        throws Throwable {
+
+        boolean authorized;
+        try {
+            authorized = decision.join();
+        }
+        catch( CompletionException ex ) {
+            Throwable cause = unwrap( ex );
+            failed( plan, sessionId, userId, casContext, context, cause, start );
+            throw cause;
+        }
+
+        decided( plan, sessionId, userId, casContext, context, authorized, start );
+
+        return( joinPoint.proceed() );
+    }
+
+
+    private void logDenied( AuthorizationPlan plan, String casContext ) {
+
+        if ( (rejectionReporter != null) && ! rejectionReporter.record( LOGGER, Level.INFO, plan.getEndpoint(), "denied" ) ) {
+            return;
+        }
+        LOGGER.info( "Authorization denied; required permissions={}, casContext={}",
+                     CmpPermissionMask.names( plan.getPermissionMask() ),
+                     casContext );
+    }
+
+
+    private static Throwable unwrap( Throwable failure ) {
+        return( ((failure instanceof CompletionException) && (failure.getCause() != null)) ? failure.getCause() : failure );
+    }
+
+
+    private String sessionId( RequestAuthorizationMemo memo ) {
+        return( ( memo != null ) ? memo.sessionId( securityManager ) : securityManager.authenticatedSessionID() );
+    }
+
+
+    private String userId( RequestAuthorizationMemo memo ) {
+        return( ( memo != null ) ? memo.userId( securityManager ) : securityManager.authenticatedUserID() );
+    }
+
+
+    /**
+     * @return the plan of the advised method.
+     * @throws UnauthorizedException if the registry resolves no annotation for it; the pointcut
+     *         and the registry disagree, and the call is denied rather than let through unchecked.
      */
-    private AuthorizationContext createContext(PermissionRequired permission) {
+    private AuthorizationPlan planFor(JoinPoint joinPoint) {
+
+        final Object            target = joinPoint.getTarget();
+        final Method            method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        final AuthorizationPlan plan = planRegistry.planFor( method, ( target != null ) ? target.getClass() : null );
+
+        if ( plan == null ) {
+            LOGGER.warn( "No @PermissionRequired resolved for advised method {}; denying the call", method );
+            throw new UnauthorizedException();
+        }
+        return( plan );
+    }
+
+
+    /**
+     * {@link #authenticatedCasContext(AuthorizationPlan, RequestAuthorizationMemo, String)},
+     * recording a failure, such as a missing session, on the plan's timers and in the audit log.
+     *
+     * @param start {@link System#nanoTime()} when the check started
+     */
+    private String authenticatedCasContext(AuthorizationPlan plan, RequestAuthorizationMemo memo, String sessionId, long start) {
+
+        try {
+            return( authenticatedCasContext( plan, memo, sessionId ) );
+        }
+        catch( RuntimeException ex ) {
+            failed( plan, sessionId, null, null, null, ex, start );
+            throw ex;
+        }
+    }
 
-        final AuthorizationContext authContext = new AuthorizationContext(permission.value());
 
-        final String sessionId = securityManager.authenticatedSessionID();
+    /**
+     * Verify there is an authenticated session and, if the plan calls for it, read the
+     * session's CAS context.  Both come from the request memo when there is one.
+     *
+     * @param plan      compiled form of the annotation on the method
+     * @param memo      memo of the current request, or null outside a request
+     * @param sessionId authenticated session ID, or null if there is none
+     * @return the session CAS context, or null if the plan doesn't require one
+     *
+     * @throws UnauthenticatedException if the session ID is not provided or the session ID is the string "null".
+     */
+    private String authenticatedCasContext(AuthorizationPlan plan, RequestAuthorizationMemo memo, String sessionId) {
 
         if ( StringUtils.isNullorEmpty( sessionId ) ) {
             throw new UnauthenticatedException("User not authenticated. No session ID.");
@@ -76,8 +460,27 @@ public class AuthorizationAspect {
         // Do this only if the endpoint requires a session read to get a different CAS context.
         // do this after we know we have a session since this will force a read of the session.
         // this is used by the CASAuthorizationFilter for elevated privilege checking.
-        if ( permission.requireCheckSessionCasContext() ) {
-            authContext.casContext( securityManager.casContext() );
+        if ( plan.isRequireCheckSessionCasContext() ) {
+            return( ( memo != null ) ? memo.casContext( securityManager ) : securityManager.casContext() );
+        }
+
+        return( null );
+    }
+
+
+    /**
+     * Create the AuthorizationContext from the method's precompiled plan.
+     *
+     * @param plan       compiled form of the annotation on the method
+     * @param casContext session CAS context from {@link #authenticatedCasContext}
+     * @return an AuthorizationContext
+     */
+    private AuthorizationContext createContext(AuthorizationPlan plan, String casContext) {
+
+        final AuthorizationContext authContext = plan.newContext();
+
+        if ( plan.isRequireCheckSessionCasContext() ) {
+            authContext.casContext( casContext );
         }
 
         return authContext;
@@ -5,6 +5,22 @@
 
 package org.familysearch.cmp.authorization;
 
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.cmp.authorization.cache.NegativeResultCache;
+import org.familysearch.cmp.authorization.cache.NoOpPermissionDecisionCache;
+import org.familysearch.cmp.authorization.cache.PermissionDecisionCache;
+import org.familysearch.cmp.authorization.cas.CasLookupStats;
+import org.familysearch.cmp.authorization.cas.CasTimeoutFallback;
+import org.familysearch.cmp.authorization.cas.CircuitBreaker;
+import org.familysearch.cmp.authorization.cas.CircuitOpenException;
+import org.familysearch.cmp.authorization.cas.FutureBridge;
+import org.familysearch.cmp.authorization.cas.IdentityServicePermissionLoader;
+import org.familysearch.cmp.authorization.cas.PermissionSetLoader;
+import org.familysearch.cmp.authorization.metrics.AuthorizationMetrics;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.familysearch.cmp.authorization.permissions.PermissionImplications;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+import org.familysearch.cmp.authorization.reporting.RejectionReporter;
 import org.familysearch.engage.foundation.security.AuthorizationContext;
 import org.familysearch.engage.foundation.security.AuthorizationFilter;
 import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
@@ -13,31 +29,72 @@ import org.familysearch.identity.api.IdentityService;
 import org.familysearch.identity.api.PermissionSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import jersey.repackaged.com.google.common.base.Preconditions;
 
 
 /**
- * {@link AuthorizationFilter} to check permissions by using CAS.
+ * {@link AuthorizationFilter} to check permissions by using CAS.  Also usable as an
+ * {@link AsyncAuthorizationFilter}, in which case the CAS answer is chained onto rather
+ * than waited for.
  *
  * (Shamelessly stolen from the units project)
  */
-public class CASAuthorizationFilter implements AuthorizationFilter {
+public class CASAuthorizationFilter implements AuthorizationFilter, AsyncAuthorizationFilter, PermissionScopedFilter,
+                                               PrefetchingFilter {
+
+    /**
+     * AuthorizationContext key for a per-call CAS latency budget (a Number of milliseconds)
+     * that overrides the filter's default; set from {@link PermissionRequired#casTimeoutMillis()}.
+     */
+    public static final String KEY_CAS_TIMEOUT_MILLIS = "cmp.authorization.casTimeoutMillis";
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private static final String NULL_REQUIRED_ARG = "No %s object provided (null)";
 
+    // endpoint under which failed lookups are counted by the RejectionReporter
+    private static final String REJECTION_ENDPOINT = "cas-lookup";
+
+    // answer for lookups known to be denied; grants nothing, so the chain decides
+    private static final PermissionSet DENIED = new PermissionSet( null, Collections.<String>emptySet(), Collections.<String>emptySet() );
+
 
     final private FoundationSecurityManager foundationSecurityManager;
-    final private IdentityService           identityService;
-    final private Set<String>               handledPermissions;
+    final private PermissionSetLoader       permissionLoader;
+    final private long                      handledPermissionMask;
     final private String                    defaultCasAuthorizationContext;
+    final private PermissionDecisionCache   permissionCache;
+    final private CasLookupStats            lookupStats = new CasLookupStats();
+
+    // lookups started by prefetch() that have not completed yet
+    final private ConcurrentMap<CasDecisionKey, CompletableFuture<PermissionSet>> prefetches = new ConcurrentHashMap<>();
+
+    private long                            lookupTimeoutMillis = 0L;
+    private CasTimeoutFallback              timeoutFallback = CasTimeoutFallback.CHAIN;
+    private CircuitBreaker                  circuitBreaker;
+    private FutureBridge                    futureBridge;
+    private NegativeResultCache<CasDecisionKey> denialCache;
+    private Executor                        refreshExecutor;
+    private boolean                         snapshotEnabled = false;
+    private PermissionImplications          implications = PermissionImplications.NONE;
+    private RejectionReporter               rejectionReporter;
+    private AuthorizationMetrics.FilterMeters filterMeters = AuthorizationMetrics.NONE.filterMeters( "CASAuthorizationFilter" );
+    private AuthorizationMetrics.LookupMeters lookupMeters = AuthorizationMetrics.NONE.casLookupMeters();
 
 
     public CASAuthorizationFilter( FoundationSecurityManager    securityMgr,
@@ -45,21 +102,214 @@ public class CASAuthorizationFilter implements AuthorizationFilter {
                                    String                       casAuthContext,
                                    Set<String>                  validPermissions ) {
 
+        this( securityMgr, identService, casAuthContext, validPermissions, NoOpPermissionDecisionCache.INSTANCE );
+    }
+
+
+    /**
+     * @param decisionCache cache consulted before calling CAS; repeat checks for the same
+     *                      session, CAS context and permissions are answered from it.
+     */
+    public CASAuthorizationFilter( FoundationSecurityManager    securityMgr,
+                                   IdentityService              identService,
+                                   String                       casAuthContext,
+                                   Set<String>                  validPermissions,
+                                   PermissionDecisionCache      decisionCache ) {
+
+        this( securityMgr, identityServiceLoader( identService ), casAuthContext, validPermissions, decisionCache );
+    }
+
+
+    /**
+     * @param loader        source of CAS lookups, e.g. the identity service wrapped in a
+     *                      {@link org.familysearch.cmp.authorization.cas.SingleFlightPermissionLoader}.
+     * @param decisionCache cache consulted before the loader is asked.
+     */
+    public CASAuthorizationFilter( FoundationSecurityManager    securityMgr,
+                                   PermissionSetLoader          loader,
+                                   String                       casAuthContext,
+                                   Set<String>                  validPermissions,
+                                   PermissionDecisionCache      decisionCache ) {
+
         Preconditions.checkArgument( securityMgr != null,
                                      String.format( NULL_REQUIRED_ARG, "FoundationSecurityManager" ) );
-        Preconditions.checkArgument( identService != null,
-                                     String.format( NULL_REQUIRED_ARG, "IdentityService" ) );
+        Preconditions.checkArgument( loader != null,
+                                     String.format( NULL_REQUIRED_ARG, "PermissionSetLoader" ) );
         Preconditions.checkArgument( casAuthContext != null,
                                      String.format( NULL_REQUIRED_ARG, "CasAuthorizationContext" ) );
         Preconditions.checkArgument( validPermissions != null,
                                      String.format( NULL_REQUIRED_ARG, "Set<Permissions>" ) );
         Preconditions.checkArgument( ! validPermissions.isEmpty(),
                                      "Empty expected permissions set provided" );
+        Preconditions.checkArgument( decisionCache != null,
+                                     String.format( NULL_REQUIRED_ARG, "PermissionDecisionCache" ) );
+
+        Set<String> undefinedPermissions = undefinedPermissions( validPermissions );
+        Preconditions.checkArgument( undefinedPermissions.isEmpty(),
+                                     "Handled permissions are not CmpPermissions: %s", undefinedPermissions );
 
         foundationSecurityManager = securityMgr;
-        identityService = identService;
+        permissionLoader = loader;
         defaultCasAuthorizationContext = casAuthContext;
-        handledPermissions = validPermissions;
+        handledPermissionMask = CmpPermissionMask.ofNames( validPermissions );
+        permissionCache = decisionCache;
+    }
+
+
+    public PermissionDecisionCache getPermissionCache() {
+        return( permissionCache );
+    }
+
+
+    public CasLookupStats getLookupStats() {
+        return( lookupStats );
+    }
+
+
+    /**
+     * @return the handled permissions, plus every permission they imply; a check for any of
+     *         them may be satisfied by this filter.
+     */
+    @Override
+    public long getHandledPermissionMask() {
+        return( implications.implied( handledPermissionMask ) );
+    }
+
+
+    /**
+     * Set the default latency budget for a CAS lookup.  Configure before the filter is put
+     * into service.
+     *
+     * @param timeout budget; zero or less waits without limit
+     * @param unit    unit of {@code timeout}
+     */
+    public void setLookupTimeout( long timeout, TimeUnit unit ) {
+        lookupTimeoutMillis = unit.toMillis( timeout );
+    }
+
+
+    /**
+     * Guard CAS lookups with a circuit breaker.  While it is open, lookups are answered from
+     * stale cache entries when the decision cache still holds one, and otherwise defer to
+     * the chain without waiting on CAS.  Configure before the filter is put into service.
+     */
+    public void setCircuitBreaker( CircuitBreaker breaker ) {
+        circuitBreaker = breaker;
+    }
+
+
+    public CircuitBreaker getCircuitBreaker() {
+        return( circuitBreaker );
+    }
+
+
+    /**
+     * Set the bridge used by {@link #isAuthorizedAsync} to chain onto CAS answers.  Without
+     * one, the async entry point waits for CAS on the calling thread.  Configure before the
+     * filter is put into service.
+     */
+    public void setFutureBridge( FutureBridge bridge ) {
+        futureBridge = bridge;
+    }
+
+
+    /**
+     * Remember denied lookups in a separate short-lived cache, so repeats are answered
+     * without calling CAS.  Only granting permission sets are then kept in the decision
+     * cache.  Configure before the filter is put into service.
+     */
+    public void setDenialCache( NegativeResultCache<CasDecisionKey> cache ) {
+        denialCache = cache;
+    }
+
+
+    public NegativeResultCache<CasDecisionKey> getDenialCache() {
+        return( denialCache );
+    }
+
+
+    /**
+     * Refresh cached permission sets in the background once the decision cache reports them
+     * due (see {@link PermissionDecisionCache#claimRefresh}), so that request threads keep
+     * being answered from the cache while an entry rolls over.  Without an executor, entries
+     * simply expire and the next request reloads them.  Configure before the filter is put
+     * into service.
+     */
+    public void setRefreshExecutor( Executor executor ) {
+        refreshExecutor = executor;
+    }
+
+
+    public Executor getRefreshExecutor() {
+        return( refreshExecutor );
+    }
+
+
+    /**
+     * Ask CAS for every handled permission at once, rather than only those the current
+     * check needs, and cache the answer as the session's permission snapshot for the CAS
+     * context.  Checks for other permission sets in the same session and context are then
+     * answered from that snapshot without another remote call.  Configure before the filter
+     * is put into service.
+     */
+    public void setSnapshotEnabled( boolean enabled ) {
+        snapshotEnabled = enabled;
+    }
+
+
+    public boolean isSnapshotEnabled() {
+        return( snapshotEnabled );
+    }
+
+
+    /**
+     * Satisfy checks from grants of permissions that imply the required ones.  CAS is then
+     * asked about the implying permissions too, so e.g. a session granted ModifyThread passes
+     * a ViewThread check, and shares the cached lookup with checks that name both.  Configure
+     * before the filter is put into service.
+     */
+    public void setImplications( PermissionImplications implications ) {
+
+        Preconditions.checkArgument( implications != null, String.format( NULL_REQUIRED_ARG, "PermissionImplications" ) );
+        this.implications = implications;
+    }
+
+
+    public PermissionImplications getImplications() {
+        return( implications );
+    }
+
+
+    /**
+     * Count failed and timed-out lookups, by exception type, and log only a sample of them,
+     * so that a CAS outage doesn't write an error line per request.  Without a reporter,
+     * every failure is logged.  Configure before the filter is put into service.
+     */
+    public void setRejectionReporter( RejectionReporter reporter ) {
+        rejectionReporter = reporter;
+    }
+
+
+    /**
+     * Count this filter's answers, and time every identity service round-trip, on meters
+     * registered here once.  Configure before the filter is put into service.
+     */
+    public void setMetrics( AuthorizationMetrics metrics ) {
+
+        Preconditions.checkArgument( metrics != null, String.format( NULL_REQUIRED_ARG, "AuthorizationMetrics" ) );
+        filterMeters = metrics.filterMeters( getClass().getSimpleName() );
+        lookupMeters = metrics.casLookupMeters();
+    }
+
+
+    /**
+     * Set the decision made when CAS does not answer within the budget.  Configure before
+     * the filter is put into service.
+     */
+    public void setTimeoutFallback( CasTimeoutFallback fallback ) {
+
+        Preconditions.checkArgument( fallback != null, String.format( NULL_REQUIRED_ARG, "CasTimeoutFallback" ) );
+        timeoutFallback = fallback;
     }
 
 
@@ -70,40 +320,472 @@ public class CASAuthorizationFilter implements AuthorizationFilter {
 
         if ( sessionID != null ) {
 
-            List<String> casPermissions = new ArrayList<>();
-            for ( String handledPermission : handledPermissions ) {
-                if ( context.getPermissionNames().contains(handledPermission) ) {
-                    casPermissions.add( handledPermission );
-                }
-            }
+            long casPermissions = requestedPermissions( context );
 
             if ( hasPermissionsToRequest( casPermissions ) ) {
                 try {
-                    String casContext = defaultCasAuthorizationContext;
-                    if ( hasCASContext(context) ) {
-                        casContext = context.get( AuthorizationContext.KEY_CAS_CONTEXT, String.class );
+                    PermissionSet permissionSet = lookupPermissions( decisionKey( sessionID, context, casPermissions ),
+                                                                     lookupBudgetMillis( context ) );
+
+                    if ( isGranted( permissionSet, casPermissions ) ) {
+                        decided( context );
+                        return true;
                     }
+                }
+                catch( RuntimeException | InterruptedException | ExecutionException | TimeoutException ex ) {
+                    Boolean fallback = lookupFailed( ex );
+                    if ( fallback != null ) {
+                        decided( context );
+                        return( fallback );
+                    }
+                }
+            }
+        }
 
-                    Future<PermissionSet> future;
-                    future = identityService.isAuthorized( sessionID, casContext, casPermissions );
+        filterMeters.pass();
+        return filterChain.isAuthorized(context);
+    }
 
-                    PermissionSet permissionSet = future.get();
 
-                    for ( String authorized : permissionSet.getAuthorizedPermissions() ) {
-                        if ( casPermissions.contains(authorized) ) {
-                            return true;
-                        }
-                    }
+    @Override
+    public CompletableFuture<Boolean> isAuthorizedAsync( AsyncAuthorizationFilterChain filterChain,
+                                                         AuthorizationContext          context ) {
+
+        String sessionID = foundationSecurityManager.authenticatedSessionID();
+
+        if ( sessionID != null ) {
+
+            long casPermissions = requestedPermissions( context );
+
+            if ( hasPermissionsToRequest( casPermissions ) ) {
+                CasDecisionKey key = decisionKey( sessionID, context, casPermissions );
+
+                return( lookupPermissionsAsync( key, lookupBudgetMillis( context ) )
+                            .handle( ( permissionSet, error ) -> ( error != null )
+                                                                    ? lookupFailed( error )
+                                                                    : ( isGranted( permissionSet, casPermissions ) ? Boolean.TRUE : null ) )
+                            .thenCompose( decision -> decided( decision, filterChain, context ) ) );
+            }
+        }
+
+        filterMeters.pass();
+        return( filterChain.isAuthorizedAsync( context ) );
+    }
+
+
+    /**
+     * @return the filter's own decision, or the rest of the chain's if it has none.
+     */
+    private CompletableFuture<Boolean> decided( Boolean                         decision,
+                                                AsyncAuthorizationFilterChain   filterChain,
+                                                AuthorizationContext            context ) {
+
+        if ( decision != null ) {
+            decided( context );
+            return( CompletableFuture.completedFuture( decision ) );
+        }
+
+        filterMeters.pass();
+        return( filterChain.isAuthorizedAsync( context ) );
+    }
+
+
+    /**
+     * Count the decision and name this filter as its maker.
+     */
+    private void decided( AuthorizationContext context ) {
+
+        filterMeters.hit();
+        context.put( AuthorizationPlan.KEY_DECIDED_BY, getClass().getSimpleName() );
+    }
+
+
+    /**
+     * Start the CAS lookup a check of the plan will need, unless it is cached or already
+     * underway.  The lookup completes into the decision cache; a check arriving before then
+     * waits on it rather than starting another.  Needs the {@link #setFutureBridge future
+     * bridge}; plans that read the session's CAS context are not prefetched.
+     */
+    @Override
+    public boolean prefetch( String sessionID, AuthorizationPlan plan ) {
+
+        if ( (futureBridge == null) || (sessionID == null) || plan.isRequireCheckSessionCasContext() ) {
+            return( false );
+        }
+
+        long casPermissions = requestedPermissions( plan.getPermissionMask() );
+        if ( ! hasPermissionsToRequest( casPermissions ) ) {
+            return( false );
+        }
+
+        CasDecisionKey key = new CasDecisionKey( sessionID, defaultCasAuthorizationContext,
+                                                 snapshotEnabled ? handledPermissionMask : casPermissions );
+        if ( (cachedPermissions( key ) != null) || prefetches.containsKey( key ) ) {
+            return( false );
+        }
+
+        CompletableFuture<PermissionSet> pending = new CompletableFuture<>();
+        if ( prefetches.putIfAbsent( key, pending ) != null ) {
+            return( false );
+        }
+
+        // only the prefetch that registered the lookup takes a breaker permit; a check that
+        // already found it gets the answer it would have got by asking itself
+        long permit = breakerPermit();
+        if ( permit == CircuitBreaker.NO_PERMIT ) {
+            prefetches.remove( key, pending );
+            try {
+                pending.complete( staleWhileBreakerOpen( key ) );
+            }
+            catch( CircuitOpenException ex ) {
+                pending.completeExceptionally( ex );
+            }
+            return( false );
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            long budgetMillis = ( plan.getCasTimeoutMillis() > 0L ) ? plan.getCasTimeoutMillis() : lookupTimeoutMillis;
+            futureBridge.toCompletable( permissionLoader.load( key ), budgetMillis )
+                        .whenComplete( ( permissionSet, error ) -> {
+                            lookupCompleted( key, permit, permissionSet, error, System.nanoTime() - waitStart );
+                            prefetches.remove( key, pending );
+                            if ( error != null ) {
+                                pending.completeExceptionally( error );
+                            }
+                            else {
+                                pending.complete( permissionSet );
+                            }
+                        } );
+        }
+        catch( RuntimeException ex ) {
+            lookupCompleted( key, permit, null, ex, System.nanoTime() - waitStart );
+            prefetches.remove( key, pending );
+            pending.completeExceptionally( ex );
+            logger.debug( "CAS prefetch failed to start: {}", ex.getMessage() );
+        }
+
+        return( true );
+    }
+
+
+    /**
+     * @return mask of the permissions this filter handles that the context requires, or that
+     *         imply one that it requires.
+     */
+    private long requestedPermissions( AuthorizationContext context ) {
+
+        AuthorizationPlan plan = context.get( AuthorizationPlan.KEY_AUTHORIZATION_PLAN, AuthorizationPlan.class );
+        return( requestedPermissions( ( plan != null )
+                                          ? plan.getPermissionMask()
+                                          : CmpPermissionMask.ofPermissions( context.getPermissions() ) ) );
+    }
+
+
+    private long requestedPermissions( long requiredMask ) {
+        return( implications.satisfying( requiredMask ) & handledPermissionMask );
+    }
+
+
+    /**
+     * @return key of the CAS lookup for the check; in snapshot mode, the lookup of every
+     *         handled permission, whichever of them the check needs.
+     */
+    private CasDecisionKey decisionKey( String sessionID, AuthorizationContext context, long casPermissions ) {
+        return( new CasDecisionKey( sessionID, casContext( context ), snapshotEnabled ? handledPermissionMask : casPermissions ) );
+    }
+
+
+    private String casContext( AuthorizationContext context ) {
+
+        String casContext = defaultCasAuthorizationContext;
+        if ( hasCASContext(context) ) {
+            casContext = context.get( AuthorizationContext.KEY_CAS_CONTEXT, String.class );
+        }
+        return( casContext );
+    }
+
+
+    private static boolean isGranted( PermissionSet permissionSet, long casPermissions ) {
+        return( CmpPermissionMask.anyGranted( casPermissions, permissionSet.getAuthorizedPermissions() ) );
+    }
+
+
+    /**
+     * Log a failed lookup and pick the decision to make instead.
+     *
+     * @return the fallback decision, or null to delegate to the chain.
+     */
+    private Boolean lookupFailed( Throwable failure ) {
+
+        Throwable ex = unwrap( failure );
+
+        if ( ex instanceof TimeoutException ) {
+            if ( reportRejection( Level.WARN, "timeout" ) ) {
+                logger.warn( "CAS permission lookup exceeded its latency budget; falling back to {}", timeoutFallback );
+            }
+            return( ( timeoutFallback == CasTimeoutFallback.CHAIN ) ? null : (timeoutFallback == CasTimeoutFallback.GRANT) );
+        }
+
+        if ( ex instanceof CircuitOpenException ) {
+            // the breaker already logged why it opened; don't add a line per request
+            logger.debug( "CAS lookup skipped: {}", ex.getMessage() );
+            return( null );
+        }
+
+        // log but delegate to the chain
+        lookupStats.recordError();
+        logger.debug( "isAuthorized Exception", ex );
+        if ( reportRejection( Level.ERROR, ex.getClass().getSimpleName() ) ) {
+            logger.error( "Exception resolving CAS permissions: {}", ex.getMessage() );
+        }
+        return( null );
+    }
+
+
+    /**
+     * @return true if the failed lookup should be logged.
+     */
+    private boolean reportRejection( Level level, String reason ) {
+        return( (rejectionReporter == null) || rejectionReporter.record( logger, level, REJECTION_ENDPOINT, reason ) );
+    }
+
+
+    /**
+     * Answer from the decision cache when possible, otherwise ask CAS and remember the result.
+     * With an open circuit breaker, fall back to a stale cached answer instead of asking CAS.
+     */
+    private PermissionSet lookupPermissions( CasDecisionKey key, long budgetMillis )
+        throws InterruptedException, ExecutionException, TimeoutException {
+
+        PermissionSet permissionSet = cachedPermissions( key );
+
+        if ( permissionSet == null ) {
+            CompletableFuture<PermissionSet> prefetch = prefetches.get( key );
+            if ( prefetch != null ) {
+                // the prefetch does the book-keeping when it completes
+                return( ( budgetMillis > 0L ) ? prefetch.get( budgetMillis, TimeUnit.MILLISECONDS ) : prefetch.get() );
+            }
+
+            long permit = breakerPermit();
+            if ( permit == CircuitBreaker.NO_PERMIT ) {
+                return( staleWhileBreakerOpen( key ) );
+            }
+
+            long        waitStart = System.nanoTime();
+            Throwable   failure = null;
+            try {
+                Future<PermissionSet> future = permissionLoader.load( key );
+
+                permissionSet = ( budgetMillis > 0L )
+                                    ? future.get( budgetMillis, TimeUnit.MILLISECONDS )
+                                    : future.get();
+            }
+            catch( RuntimeException | InterruptedException | ExecutionException | TimeoutException ex ) {
+                failure = ex;
+                throw ex;
+            }
+            finally {
+                lookupCompleted( key, permit, permissionSet, failure, System.nanoTime() - waitStart );
+            }
+        }
+
+        return( permissionSet );
+    }
+
+
+    /**
+     * Non-blocking form of {@link #lookupPermissions}.
+     */
+    private CompletableFuture<PermissionSet> lookupPermissionsAsync( CasDecisionKey key, long budgetMillis ) {
+
+        long permit;
+        try {
+            if ( futureBridge == null ) {
+                return( CompletableFuture.completedFuture( lookupPermissions( key, budgetMillis ) ) );
+            }
+
+            PermissionSet permissionSet = cachedPermissions( key );
+            if ( permissionSet != null ) {
+                return( CompletableFuture.completedFuture( permissionSet ) );
+            }
+
+            CompletableFuture<PermissionSet> prefetch = prefetches.get( key );
+            if ( prefetch != null ) {
+                return( futureBridge.toCompletable( prefetch, budgetMillis ) );
+            }
+
+            permit = breakerPermit();
+            if ( permit == CircuitBreaker.NO_PERMIT ) {
+                return( CompletableFuture.completedFuture( staleWhileBreakerOpen( key ) ) );
+            }
+        }
+        catch( RuntimeException | InterruptedException | ExecutionException | TimeoutException ex ) {
+            return( failedFuture( ex ) );
+        }
+
+        long waitStart = System.nanoTime();
+        CompletableFuture<PermissionSet> lookup;
+        try {
+            lookup = futureBridge.toCompletable( permissionLoader.load( key ), budgetMillis );
+        }
+        catch( RuntimeException ex ) {
+            lookupCompleted( key, permit, null, ex, System.nanoTime() - waitStart );
+            return( failedFuture( ex ) );
+        }
+
+        return( lookup.whenComplete( ( permissionSet, error ) ->
+                                         lookupCompleted( key, permit, permissionSet, error, System.nanoTime() - waitStart ) ) );
+    }
+
+
+    /**
+     * @return the cached grant, {@link #DENIED} for a recently denied lookup, or null on a miss.
+     */
+    private PermissionSet cachedPermissions( CasDecisionKey key ) {
+
+        PermissionSet permissionSet = permissionCache.getIfPresent( key );
+        if ( permissionSet == null ) {
+            if ( (denialCache != null) && denialCache.contains( key ) ) {
+                permissionSet = DENIED;
+            }
+        }
+        else if ( (refreshExecutor != null) && permissionCache.claimRefresh( key ) ) {
+            refreshInBackground( key );
+        }
+        return( permissionSet );
+    }
+
+
+    /**
+     * Reload a cached permission set that is nearing expiry.  The request that noticed it is
+     * answered from the cache meanwhile; a failed refresh leaves the entry to expire normally.
+     */
+    private void refreshInBackground( CasDecisionKey key ) {
+
+        try {
+            refreshExecutor.execute( () -> {
+                long permit = breakerPermit();
+                if ( permit == CircuitBreaker.NO_PERMIT ) {
+                    return;
+                }
+
+                long            waitStart = System.nanoTime();
+                PermissionSet   permissionSet = null;
+                Throwable       failure = null;
+                try {
+                    Future<PermissionSet> future = permissionLoader.load( key );
+                    permissionSet = ( lookupTimeoutMillis > 0L )
+                                        ? future.get( lookupTimeoutMillis, TimeUnit.MILLISECONDS )
+                                        : future.get();
+                }
+                catch( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                    failure = ex;
+                }
+                catch( RuntimeException | ExecutionException | TimeoutException ex ) {
+                    failure = ex;
+                    logger.debug( "Refresh-ahead of CAS permissions failed: {}", unwrap( ex ).getMessage() );
                 }
-                catch( RuntimeException | InterruptedException | ExecutionException ex ) {
-                    // log but delegate to the chain
-                    logger.debug( "isAuthorized Exception", ex );
-                    logger.error( "Exception resolving CAS permissions: {}", ex.getMessage() );
+                finally {
+                    lookupCompleted( key, permit, permissionSet, failure, System.nanoTime() - waitStart );
                 }
+            } );
+        }
+        catch( RejectedExecutionException ex ) {
+            logger.debug( "Refresh-ahead of CAS permissions skipped: {}", ex.getMessage() );
+        }
+    }
+
+
+    /**
+     * @return the circuit breaker's permit to ask CAS, to be handed back to {@link #lookupCompleted};
+     *         {@link CircuitBreaker#NO_PERMIT} while the breaker is open.
+     */
+    private long breakerPermit() {
+        return( ( circuitBreaker != null ) ? circuitBreaker.tryAcquire() : 0L );
+    }
+
+
+    /**
+     * @return the stale cached answer to give while the circuit breaker is open.
+     * @throws CircuitOpenException if there is nothing cached to fall back on.
+     */
+    private PermissionSet staleWhileBreakerOpen( CasDecisionKey key ) {
+
+        PermissionSet permissionSet = permissionCache.getStale( key );
+        if ( permissionSet == null ) {
+            throw new CircuitOpenException( "Identity service circuit breaker is open" );
+        }
+        return( permissionSet );
+    }
+
+
+    /**
+     * Book-keeping once a remote lookup has finished: statistics, circuit breaker and cache.
+     */
+    private void lookupCompleted( CasDecisionKey key, long permit, PermissionSet permissionSet, Throwable failure, long elapsedNanos ) {
+
+        lookupMeters.record( elapsedNanos, failure );
+
+        if ( unwrap( failure ) instanceof TimeoutException ) {
+            lookupStats.recordTimeout( elapsedNanos );
+        }
+        else if ( failure == null ) {
+            lookupStats.recordWait( elapsedNanos );
+        }
+
+        if ( circuitBreaker != null ) {
+            if ( failure == null ) {
+                circuitBreaker.onSuccess( permit, elapsedNanos );
+            }
+            else {
+                circuitBreaker.onFailure( permit, elapsedNanos );
             }
         }
 
-        return filterChain.isAuthorized(context);
+        if ( (failure == null) && (permissionSet != null) ) {
+            if ( (denialCache != null) && !isGranted( permissionSet, key.getPermissionMask() ) ) {
+                permissionCache.invalidate( key );                      // a revoked grant must not outlive its reload
+                denialCache.add( key );
+            }
+            else {
+                permissionCache.put( key, permissionSet );
+            }
+        }
+    }
+
+
+    private static Throwable unwrap( Throwable failure ) {
+
+        Throwable ex = failure;
+        while ( ((ex instanceof CompletionException) || (ex instanceof ExecutionException)) && (ex.getCause() != null) ) {
+            ex = ex.getCause();
+        }
+        return( ex );
+    }
+
+
+    private static <T> CompletableFuture<T> failedFuture( Throwable ex ) {
+
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally( ex );
+        return( failed );
+    }
+
+
+    private long lookupBudgetMillis( AuthorizationContext context ) {
+
+        Object override = context.get( KEY_CAS_TIMEOUT_MILLIS );
+        return( (override instanceof Number) ? ((Number) override).longValue() : lookupTimeoutMillis );
+    }
+
+
+    private static PermissionSetLoader identityServiceLoader( IdentityService identService ) {
+
+        Preconditions.checkArgument( identService != null,
+                                     String.format( NULL_REQUIRED_ARG, "IdentityService" ) );
+        return( new IdentityServicePermissionLoader( identService ) );
     }
 
 
@@ -112,8 +794,20 @@ public class CASAuthorizationFilter implements AuthorizationFilter {
     }
 
 
-    private boolean hasPermissionsToRequest( List<String> casPermissions ) {
-        return !casPermissions.isEmpty();
+    private boolean hasPermissionsToRequest( long casPermissions ) {
+        return casPermissions != CmpPermissionMask.NONE;
+    }
+
+
+    private static Set<String> undefinedPermissions( Set<String> permissionNames ) {
+
+        Set<String> undefined = new TreeSet<>();
+        for ( String name : permissionNames ) {
+            if ( !CmpPermissionMask.isDefined( name ) ) {
+                undefined.add( name );
+            }
+        }
+        return( undefined );
     }
 
 
@@ -18,12 +18,18 @@ import java.lang.annotation.Target;
  * permissions are specified, they will be treated as OR conditions,
  * i.e., the affected method can be called if the user has any one
  * of the listed permissions.
+ * <p>
+ * On a class, the annotation applies to every public method the class (or a subclass)
+ * declares that has none of its own.  It may also be placed on another annotation, e.g.
+ * {@code @AdminThreadAccess}, which then stands for it wherever it is used.  Each method's
+ * effective annotation is resolved once, when its plan is compiled; see
+ * {@link org.familysearch.cmp.authorization.plan.PermissionRequiredResolver}.
  *
  * (Shamelessly stolen from the units project)
  */
 @Inherited
 @Documented
-@Target( ElementType.METHOD )
+@Target( { ElementType.METHOD, ElementType.TYPE, ElementType.ANNOTATION_TYPE } )
 @Retention( RetentionPolicy.RUNTIME )
 public @interface PermissionRequired {
 
@@ -31,5 +37,11 @@ public @interface PermissionRequired {
 
     boolean requireCheckSessionCasContext() default false;
 
+    /**
+     * Latency budget, in milliseconds, for the CAS lookup made on behalf of this method.
+     * Values of zero or less use the CASAuthorizationFilter's configured default.
+     */
+    long casTimeoutMillis() default 0L;
+
 }
 
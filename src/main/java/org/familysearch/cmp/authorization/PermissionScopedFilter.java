@@ -0,0 +1,22 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization;
+
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+
+
+/**
+ * Marks an authorization filter whose only effect, for a context requiring none of its
+ * handled permissions, is to defer to the rest of the chain.  Such a filter may be left
+ * out of the chain built for a method whose permissions it cannot match.
+ */
+public interface PermissionScopedFilter {
+
+    /**
+     * @return {@link CmpPermissionMask} of the permissions this filter can decide on.
+     */
+    long getHandledPermissionMask();
+
+}
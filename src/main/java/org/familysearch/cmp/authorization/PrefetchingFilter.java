@@ -0,0 +1,24 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization;
+
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+
+
+/**
+ * An authorization filter that can start the remote work for a check ahead of time, so
+ * that it overlaps request processing and the check itself finds the answer ready.
+ */
+public interface PrefetchingFilter {
+
+    /**
+     * Start, without waiting, whatever a later check of the plan for the session will need.
+     * Must be cheap when there is nothing to do, and must never throw.
+     *
+     * @return true if work was started.
+     */
+    boolean prefetch( String sessionID, AuthorizationPlan plan );
+
+}
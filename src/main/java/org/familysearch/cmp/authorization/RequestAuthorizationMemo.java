@@ -0,0 +1,195 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization;
+
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Per-request memo of authorization work: the authenticated session ID, user ID and CAS
+ * context, the endpoint the request was first checked for, and the decision reached for
+ * each set of permissions checked.  A request that
+ * passes through several {@link PermissionRequired} methods (controller, service, helper)
+ * evaluates a given permission set once.
+ * <p>
+ * The memo is kept as a request-scoped attribute of the current {@link RequestAttributes},
+ * so it goes away with the request.  Outside a request, {@link #current()} returns null and
+ * callers go straight to the {@link FoundationSecurityManager}.
+ */
+public final class RequestAuthorizationMemo {
+
+    public static final String ATTRIBUTE_NAME = RequestAuthorizationMemo.class.getName();
+
+
+    private final Map<DecisionKey, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private volatile String                 sessionId;
+    private volatile String                 userId;
+    private volatile String                 casContext;
+    private volatile String                 endpoint;
+
+
+    RequestAuthorizationMemo() {
+    }
+
+
+    /**
+     * @return the memo of the request bound to this thread, created on first use; null when
+     *         there is no active request.
+     */
+    public static RequestAuthorizationMemo current() {
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if ( attributes == null ) {
+            return( null );
+        }
+
+        try {
+            Object memo = attributes.getAttribute( ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST );
+            if ( memo == null ) {
+                memo = new RequestAuthorizationMemo();
+                attributes.setAttribute( ATTRIBUTE_NAME, memo, RequestAttributes.SCOPE_REQUEST );
+            }
+            return( (RequestAuthorizationMemo) memo );
+        }
+        catch( IllegalStateException ex ) {
+            // request already completed, e.g. when an async decision finishes after the servlet thread returned
+            return( null );
+        }
+    }
+
+
+    /**
+     * @return the authenticated session ID, memoized for the current request when there is one.
+     */
+    public static String authenticatedSessionID( FoundationSecurityManager securityManager ) {
+
+        RequestAuthorizationMemo memo = current();
+        return( (memo != null) ? memo.sessionId( securityManager ) : securityManager.authenticatedSessionID() );
+    }
+
+
+    /**
+     * @return the authenticated user ID, memoized for the current request when there is one.
+     */
+    public static String authenticatedUserID( FoundationSecurityManager securityManager ) {
+
+        RequestAuthorizationMemo memo = current();
+        return( (memo != null) ? memo.userId( securityManager ) : securityManager.authenticatedUserID() );
+    }
+
+
+    public String sessionId( FoundationSecurityManager securityManager ) {
+
+        String id = sessionId;
+        if ( id == null ) {
+            id = securityManager.authenticatedSessionID();
+            sessionId = id;
+        }
+        return( id );
+    }
+
+
+    public String userId( FoundationSecurityManager securityManager ) {
+
+        String id = userId;
+        if ( id == null ) {
+            id = securityManager.authenticatedUserID();
+            userId = id;
+        }
+        return( id );
+    }
+
+
+    public String casContext( FoundationSecurityManager securityManager ) {
+
+        String context = casContext;
+        if ( context == null ) {
+            context = securityManager.casContext();
+            casContext = context;
+        }
+        return( context );
+    }
+
+
+    /**
+     * Remember the endpoint of the request's first check, normally its handler method; the
+     * nested checks that follow don't replace it.
+     */
+    public void recordEndpoint( String checkedEndpoint ) {
+
+        if ( endpoint == null ) {
+            endpoint = checkedEndpoint;
+        }
+    }
+
+
+    /**
+     * @return the endpoint of the request's first check, or null if nothing was checked yet.
+     */
+    public String getEndpoint() {
+        return( endpoint );
+    }
+
+
+    /**
+     * @param permissionMask {@link org.familysearch.cmp.authorization.permissions.CmpPermissionMask} of the permissions checked
+     * @param casContext     session CAS context the check was made in, or null for the default
+     * @return the decision already reached in this request, or null if not yet checked.
+     */
+    public Boolean decision( long permissionMask, String casContext ) {
+        return( decisions.get( new DecisionKey( permissionMask, casContext ) ) );
+    }
+
+
+    public void recordDecision( long permissionMask, String casContext, boolean authorized ) {
+        decisions.put( new DecisionKey( permissionMask, casContext ), authorized );
+    }
+
+
+    public int decisionCount() {
+        return( decisions.size() );
+    }
+
+
+    private static final class DecisionKey {
+
+        private final long      permissionMask;
+        private final String    casContext;
+
+
+        DecisionKey( long permissionMask, String casContext ) {
+
+            this.permissionMask = permissionMask;
+            this.casContext = casContext;
+        }
+
+
+        @Override
+        public boolean equals( Object other ) {
+
+            if ( !(other instanceof DecisionKey) ) {
+                return( false );
+            }
+
+            DecisionKey that = (DecisionKey) other;
+            return( (permissionMask == that.permissionMask) && Objects.equals( casContext, that.casContext ) );
+        }
+
+
+        @Override
+        public int hashCode() {
+            return( (31 * Long.hashCode( permissionMask )) + Objects.hashCode( casContext ) );
+        }
+    }
+
+
+}
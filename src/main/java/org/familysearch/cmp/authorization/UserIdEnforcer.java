@@ -3,28 +3,46 @@ package org.familysearch.cmp.authorization;
 
 import jersey.repackaged.com.google.common.base.Preconditions;
 //import org.familysearch.cmp.messages.dal.entity.Participant;
+import org.familysearch.cmp.authorization.delegation.DelegationRules;
 import org.familysearch.cmp.authorization.exception.UnauthorizedException;
+import org.familysearch.cmp.authorization.reporting.RejectionReporter;
 import org.familysearch.engage.foundation.security.FoundationSecurityManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
 
 /**
  * Created by randyhem on 3/31/2016.
  *
  *  Simple bean that provides a method to validate session User-ID against
- *  an arbitrary User-ID.
+ *  an arbitrary User-ID.  Within an HTTP request, the session's User-ID is looked
+ *  up once and kept in the {@link RequestAuthorizationMemo}.  Which session users
+ *  may act for other User-IDs is decided by the {@link DelegationRules}.
  */
 @Component
 public class UserIdEnforcer {
 
     private static final Logger ID_LOGGER = LoggerFactory.getLogger( UserIdEnforcer.class );
 
+    // rejection endpoint outside a request, or before any @PermissionRequired check in it
+    private static final String UNKNOWN_ENDPOINT = "unspecified";
+
     private final FoundationSecurityManager  foundSecurityMgr;
 
+    private DelegationRules                  delegationRules = DelegationRules.defaults();
+
+    private RejectionReporter                rejectionReporter;
+
 
     @Autowired
     public UserIdEnforcer( FoundationSecurityManager foundationSecurityMgr ) {
@@ -35,6 +53,34 @@ public class UserIdEnforcer {
     }
 
 
+    /**
+     * @param rules  - which session users may act for other User-IDs; defaults to
+     *                 {@link DelegationRules#defaults()}
+     */
+    @Autowired( required = false )
+    public void setDelegationRules( DelegationRules rules ) {
+
+        Preconditions.checkArgument( rules != null, "No DelegationRules object provided (null)" );
+
+        this.delegationRules = rules;
+    }
+
+
+    public DelegationRules getDelegationRules() {
+        return( delegationRules );
+    }
+
+
+    /**
+     * @param reporter  - counts rejections and samples their warnings; without one every
+     *                    rejection is logged
+     */
+    @Autowired( required = false )
+    public void setRejectionReporter( RejectionReporter reporter ) {
+        this.rejectionReporter = reporter;
+    }
+
+
     /**
      *  Using the internal Foundation Security Manager, return the
      *   current authorization session token.
@@ -42,7 +88,7 @@ public class UserIdEnforcer {
      * @return String  - current session authorization token.
      */
     public String getSessionToken() {
-        return( foundSecurityMgr.authenticatedSessionID() );
+        return( RequestAuthorizationMemo.authenticatedSessionID( foundSecurityMgr ) );
     }
 
 
@@ -54,7 +100,7 @@ public class UserIdEnforcer {
      * @return String  - CIS User-ID of the authenticated user.
      */
     public String getSessionUserId() {
-        return( foundSecurityMgr.authenticatedUserID() );
+        return( RequestAuthorizationMemo.authenticatedUserID( foundSecurityMgr ) );
     }
 
 
@@ -70,11 +116,11 @@ public class UserIdEnforcer {
                                                 String  activityUnderway,
                                                 Logger  srcLogger ) {
 
-        String authenticatedUserID = foundSecurityMgr.authenticatedUserID();
+        String authenticatedUserID = RequestAuthorizationMemo.authenticatedUserID( foundSecurityMgr );
 
 
         if ( ! userIdsMatch(authenticatedUserID, userId) ) {
-            if ( srcLogger != null ) {
+            if ( reportRejection( srcLogger, "user-id-mismatch" ) ) {
 
                 srcLogger.warn( "Rejecting {} request in behalf of user: {}, session user is: {}",
                                  (( activityUnderway != null )
@@ -99,15 +145,13 @@ public class UserIdEnforcer {
         // however in the case where our UserMessagingServiceAccount is the author, we change
         // the author to a well known contributor account.
 
-        // make sure that we don't block it in that case
+        // make sure that we don't block it in that case, or any other configured delegation
 
-        if (authenticatedUser.startsWith("cis.proc") && userToValidate.startsWith("cis.wkca")) {
+        if (authenticatedUser.equals(userToValidate)) {
             return true;
         }
 
-        // otherwise they must match
-
-        return authenticatedUser.equals(userToValidate);
+        return delegationRules.mayActFor(authenticatedUser, userToValidate);
     }
 
 
@@ -138,41 +182,152 @@ public class UserIdEnforcer {
     }
 
 
-  /**
-   * Asserts that the userId provided is found in the list of {@link Participant} objects provided.
-   *
-   * @param participantList a list of participants that will be used to enforce that one of them is the authenticated user
-   * @param activityUnderway description of the activity that will be completed if the authorization check succeeds
-   * @param srcLogger Logger to be used to generate warning message
-   * @throws UnauthorizedException
-   */
-/*
-    public void enforceCurrentUserIsParticipant(
-        Set<Participant> participantList,
-        String activityUnderway,
-        Logger srcLogger ) {
+    /**
+     *  Ensure that the FS session user is one of the participants provided.  If not
+     *      throw UnauthorizedException.  The session User-ID is looked up once, and
+     *      the participants are walked at most once; a {@link Set} of User-IDs is
+     *      checked by hashed lookup.
+     *
+     * @param participants      - participants, e.g. of a messaging thread
+     * @param userIdOf          - extracts a participant's CIS User-ID
+     * @param activityUnderway  - Web-Service activity being attempted
+     * @param srcLogger         - Logger to be used to generate warning message
+     */
+    public <P> void enforceCurrentUserIsParticipant(Collection<P>                   participants,
+                                                    Function<? super P, String>     userIdOf,
+                                                    String                          activityUnderway,
+                                                    Logger                          srcLogger ) {
+
+        Preconditions.checkArgument( participants != null, "participant list must not be null" );
+        Preconditions.checkArgument( userIdOf != null, "No participant User-ID function provided (null)" );
+
+        String authenticatedUserID = RequestAuthorizationMemo.authenticatedUserID( foundSecurityMgr );
+
+        if ( (authenticatedUserID == null) || ! isParticipant( authenticatedUserID, participants, userIdOf ) ) {
+            rejectNonParticipant( authenticatedUserID, activityUnderway, srcLogger );
+        }
+    }
+
+
+    /**
+     *  Ensure that the FS session user is one of the participants provided.  If not
+     *      throw UnauthorizedException.  Use internal logger for warning message.
+     *
+     * @param participantIds    - CIS User-IDs of the participants
+     * @param activityUnderway  - Web-Service activity being attempted
+     */
+    public void enforceCurrentUserIsParticipant(Collection<String>  participantIds,
+                                                String              activityUnderway ) {
+
+        Preconditions.checkArgument( participantIds != null, "participant list must not be null" );
+
+        String authenticatedUserID = RequestAuthorizationMemo.authenticatedUserID( foundSecurityMgr );
+
+        if ( (authenticatedUserID == null) || ! isParticipantId( authenticatedUserID, participantIds ) ) {
+            rejectNonParticipant( authenticatedUserID, activityUnderway, ID_LOGGER );
+        }
+    }
+
+
+    /**
+     *  Keep those of the items, e.g. messaging threads, that have the FS session user
+     *      among their participants.  The session User-ID is looked up once for the
+     *      whole batch.
+     *
+     * @param items             - items to filter; their order is kept
+     * @param participantIdsOf  - CIS User-IDs of an item's participants; a {@link Set}
+     *                            is checked by hashed lookup
+     * @return the items the session user participates in; empty if there is no session user.
+     */
+    public <T> List<T> filterCurrentUserParticipation(Collection<T>                                         items,
+                                                      Function<? super T, ? extends Collection<String>>     participantIdsOf ) {
+
+        Preconditions.checkArgument( items != null, "item list must not be null" );
+        Preconditions.checkArgument( participantIdsOf != null, "No participant User-ID function provided (null)" );
+
+        String  authenticatedUserID = RequestAuthorizationMemo.authenticatedUserID( foundSecurityMgr );
+        List<T> participating = new ArrayList<>();
 
-        Preconditions.checkArgument(participantList != null, "participant list must not be null");
+        if ( authenticatedUserID == null ) {
+            return( participating );
+        }
+
+        for ( T item : items ) {
+            Collection<String> participantIds = participantIdsOf.apply( item );
+            if ( (participantIds != null) && isParticipantId( authenticatedUserID, participantIds ) ) {
+                participating.add( item );
+            }
+        }
+        return( participating );
+    }
 
-        String authenticatedUserID = foundSecurityMgr.authenticatedUserID();
 
-        List<String> participantIds = participantList.stream()
-            .map(p -> p.getCisUserId())
-            .collect(Collectors.toList());
+    private void rejectNonParticipant(String authenticatedUserID, String activityUnderway, Logger srcLogger) {
 
-        if ( (authenticatedUserID == null) || ! participantIds.contains(authenticatedUserID)) {
-            if ( srcLogger != null ) {
+        if ( reportRejection( srcLogger, "not-participant" ) ) {
 
-                srcLogger.warn( "Rejecting {} request because session user {} is not a participant",
-                    (( activityUnderway != null )
-                        ? ( '\'' + activityUnderway + "' " )
-                        : "" ),
-                    authenticatedUserID );
+            srcLogger.warn( "Rejecting {} request because session user {} is not a participant",
+                            (( activityUnderway != null )
+                                    ? ( '\'' + activityUnderway + "' " )
+                                    : "" ),
+                            authenticatedUserID );
+        }
+        throw new UnauthorizedException(
+            "Logged in user is not a participant and does not have access to perform activity: " + activityUnderway );
+    }
+
+
+    /**
+     * Counts the rejection under the endpoint the request was authorized for, so the number
+     * of counters stays bounded by the protected methods; the caller's free-form activity
+     * only goes into the warning.
+     *
+     * @return true if the rejection's warning should be written to {@code srcLogger}.
+     */
+    private boolean reportRejection(Logger srcLogger, String reason) {
+
+        if ( rejectionReporter == null ) {
+            return( srcLogger != null );
+        }
+
+        RequestAuthorizationMemo memo = RequestAuthorizationMemo.current();
+        String                   endpoint = ( memo != null ) ? memo.getEndpoint() : null;
+        return( rejectionReporter.record( srcLogger, Level.WARN, ( endpoint != null ) ? endpoint : UNKNOWN_ENDPOINT, reason ) );
+    }
+
+
+    /**
+     * @return true if {@code authenticatedUser} matches one of the participant IDs.  A set is
+     *         answered by hashed lookup unless the user may act for other accounts.
+     */
+    private boolean isParticipantId(String authenticatedUser, Collection<String> participantIds) {
+
+        if ( participantIds instanceof Set ) {
+            if ( participantIds.contains( authenticatedUser ) ) {
+                return( true );
+            }
+            if ( ! delegationRules.actsForOthers( authenticatedUser ) ) {
+                return( false );
+            }
+        }
+        return( isParticipant( authenticatedUser, participantIds, Function.identity() ) );
+    }
+
+
+    /**
+     * @return true if {@code authenticatedUser} matches one of the participants by {@link #userIdsMatch}.
+     */
+    private <P> boolean isParticipant(String                        authenticatedUser,
+                                      Collection<P>                 participants,
+                                      Function<? super P, String>   userIdOf ) {
+
+        for ( P participant : participants ) {
+            String participantId = userIdOf.apply( participant );
+            if ( (participantId != null) && userIdsMatch( authenticatedUser, participantId ) ) {
+                return( true );
             }
-            throw new UnauthorizedException(
-                "Logged in user is not a participant and does not have access to perform activity: " + activityUnderway);
         }
+        return( false );
     }
-*/
 
 }
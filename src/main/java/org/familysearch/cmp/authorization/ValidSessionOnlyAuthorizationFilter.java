@@ -6,20 +6,32 @@
 package org.familysearch.cmp.authorization;
 
 import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.cache.NegativeResultCache;
 import org.familysearch.cmp.authorization.exception.UnauthenticatedException;
+import org.familysearch.cmp.authorization.metrics.AuthorizationMetrics;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
 import org.familysearch.cmp.authorization.util.StringUtils;
 import org.familysearch.engage.foundation.security.AuthorizationContext;
 import org.familysearch.engage.foundation.security.AuthorizationFilter;
 import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
 import org.familysearch.engage.foundation.security.FoundationSecurityManager;
 
+import java.util.concurrent.CompletableFuture;
+
 
 /**
  * An {@link AuthorizationFilter} that always grants permission if there is a session provided.
+ * Its checks are local, so the {@link AsyncAuthorizationFilter} form simply answers at once.
+ * The session and user IDs come from the {@link RequestAuthorizationMemo} the aspect already
+ * filled, and the required permissions from the context's {@link AuthorizationPlan}.
  * <p>
  * (Shamelessly stolen from the units project)
  */
-public class ValidSessionOnlyAuthorizationFilter implements AuthorizationFilter {
+public class ValidSessionOnlyAuthorizationFilter implements AuthorizationFilter, AsyncAuthorizationFilter {
+
+    private static final CompletableFuture<Boolean> AUTHORIZED = CompletableFuture.completedFuture( Boolean.TRUE );
+
 
     private static final String NULL_REQUIRED_ARG = "No %s object provided (null)";
 
@@ -28,6 +40,13 @@ public class ValidSessionOnlyAuthorizationFilter implements AuthorizationFilter
 
     final private String                    sessionRequiredPermission;
 
+    // bit of sessionRequiredPermission, or NONE when it is not a CmpPermission
+    final private long                      sessionRequiredMask;
+
+    private NegativeResultCache<String>     unauthenticatedSessions;
+
+    private AuthorizationMetrics.FilterMeters meters = AuthorizationMetrics.NONE.filterMeters( "ValidSessionOnlyAuthorizationFilter" );
+
 
     public ValidSessionOnlyAuthorizationFilter( FoundationSecurityManager   securityMgr,
                                                 String                      sessionPermissionName ) {
@@ -40,9 +59,45 @@ public class ValidSessionOnlyAuthorizationFilter implements AuthorizationFilter
 
         foundationSecurityManager = securityMgr;
         sessionRequiredPermission = sessionPermissionName;
+        sessionRequiredMask = CmpPermissionMask.bit( sessionPermissionName );
+    }
+
+
+
+    /**
+     * Remember, for a short while, session IDs found to have no authenticated user, so
+     * retries with the same dead session are rejected without resolving it again.
+     * Configure before the filter is put into service.
+     */
+    public void setUnauthenticatedSessionCache( NegativeResultCache<String> cache ) {
+        unauthenticatedSessions = cache;
+    }
+
+
+    public NegativeResultCache<String> getUnauthenticatedSessionCache() {
+        return( unauthenticatedSessions );
     }
 
 
+    /**
+     * Count this filter's answers on meters registered here once.  Configure before the
+     * filter is put into service.
+     */
+    public void setMetrics( AuthorizationMetrics metrics ) {
+
+        Preconditions.checkArgument( metrics != null, String.format( NULL_REQUIRED_ARG, "AuthorizationMetrics" ) );
+        meters = metrics.filterMeters( getClass().getSimpleName() );
+    }
+
+
+    /**
+     * @return bit of the permission that an authenticated session alone satisfies, or
+     *         {@link CmpPermissionMask#NONE} if it is not a CmpPermission.
+     */
+    public long getSessionRequiredMask() {
+        return( sessionRequiredMask );
+    }
+
 
     @Override
     public boolean isAuthorized( AuthorizationFilterChain   filterChain,
@@ -56,22 +111,90 @@ public class ValidSessionOnlyAuthorizationFilter implements AuthorizationFilter
             NOTE: This filter should be registered first in the filter chain so that
             unauthenticated requests never reach other filters.
         */
-        final String authenticatedUserID = foundationSecurityManager.authenticatedUserID();
+        final String authenticatedUserID = authenticatedUserID();
         if ( StringUtils.isNullorEmpty( authenticatedUserID ) ) {
+            meters.thrown();
             throw new UnauthenticatedException( "The request is not authenticated with a valid session token");
         }
 
         // Now that the request has been verified to be authenticated, check the context to see which permissions are required
-        if ( context.getPermissionNames().contains( sessionRequiredPermission ) ) {
+        if ( requiresSessionOnly( context ) ) {
             // Authentication alone is sufficient to authorize this request, return true
+            decided( context );
             return true;
         }
         else {
             // The permission required is not handled by this class, defer to the next authorization filter in the chain.
+            meters.pass();
             return filterChain.isAuthorized(context);
         }
     }
 
 
-}
+    @Override
+    public CompletableFuture<Boolean> isAuthorizedAsync( AsyncAuthorizationFilterChain   filterChain,
+                                                         AuthorizationContext            context ) {
+
+        // Same rules as isAuthorized(); the chain turns an UnauthenticatedException into a failed future.
+        final String authenticatedUserID = authenticatedUserID();
+        if ( StringUtils.isNullorEmpty( authenticatedUserID ) ) {
+            meters.thrown();
+            throw new UnauthenticatedException( "The request is not authenticated with a valid session token");
+        }
 
+        if ( requiresSessionOnly( context ) ) {
+            decided( context );
+            return( AUTHORIZED );
+        }
+        else {
+            meters.pass();
+            return( filterChain.isAuthorizedAsync( context ) );
+        }
+    }
+
+
+    /**
+     * Count the decision and name this filter as its maker.
+     */
+    private void decided( AuthorizationContext context ) {
+
+        meters.hit();
+        context.put( AuthorizationPlan.KEY_DECIDED_BY, getClass().getSimpleName() );
+    }
+
+
+    private String authenticatedUserID() {
+
+        final RequestAuthorizationMemo memo = RequestAuthorizationMemo.current();
+
+        if ( unauthenticatedSessions == null ) {
+            return( ( memo != null ) ? memo.userId( foundationSecurityManager ) : foundationSecurityManager.authenticatedUserID() );
+        }
+
+        final String sessionID = ( memo != null ) ? memo.sessionId( foundationSecurityManager )
+                                                  : foundationSecurityManager.authenticatedSessionID();
+        if ( (sessionID != null) && unauthenticatedSessions.contains( sessionID ) ) {
+            return( null );
+        }
+
+        final String userID = ( memo != null ) ? memo.userId( foundationSecurityManager ) : foundationSecurityManager.authenticatedUserID();
+        if ( (sessionID != null) && StringUtils.isNullorEmpty( userID ) ) {
+            unauthenticatedSessions.add( sessionID );
+        }
+        return( userID );
+    }
+
+
+    private boolean requiresSessionOnly( AuthorizationContext context ) {
+
+        if ( sessionRequiredMask != CmpPermissionMask.NONE ) {
+            final AuthorizationPlan plan = context.get( AuthorizationPlan.KEY_AUTHORIZATION_PLAN, AuthorizationPlan.class );
+            final long              required = ( plan != null ) ? plan.getPermissionMask()
+                                                                : CmpPermissionMask.ofPermissions( context.getPermissions() );
+            return( CmpPermissionMask.intersects( required, sessionRequiredMask ) );
+        }
+        return( context.getPermissionNames().contains( sessionRequiredPermission ) );
+    }
+
+
+}
@@ -0,0 +1,23 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Destination of the audit log's batches; called from the log's writer thread only.
+ */
+public interface AuditEventWriter extends Closeable {
+
+    /**
+     * Write, and make durable as far as the destination allows, one batch of events.
+     */
+    void write( List<AuthorizationAuditEvent> events )
+        throws IOException;
+
+}
@@ -0,0 +1,152 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Bounded, lock-free ring buffer: any number of threads {@link #offer} into it, and a
+ * consumer {@link #drainTo drains} it.  A full buffer refuses the element at once instead
+ * of making the producer wait.
+ * <p>
+ * Each slot carries a sequence number telling whose turn it is: a producer may fill slot
+ * {@code i} at position {@code p} once its sequence is {@code p}, and a consumer may empty
+ * it once the sequence is {@code p + 1}.  Claiming a position is one compare-and-set on the
+ * tail (or head); nothing else is shared between producers.
+ */
+public class AuditRingBuffer<E> {
+
+    private final int                       mask;
+    private final AtomicReferenceArray<E>   elements;
+    private final AtomicLongArray           sequences;
+    private final AtomicLong                tail = new AtomicLong();
+    private final AtomicLong                head = new AtomicLong();
+
+
+    /**
+     * @param capacity most elements held; rounded up to a power of two
+     */
+    public AuditRingBuffer( int capacity ) {
+
+        Preconditions.checkArgument( (capacity > 0) && (capacity <= (1 << 30)), "Invalid ring buffer capacity: %s", capacity );
+
+        int size = Integer.highestOneBit( capacity );
+        if ( size < capacity ) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>( size );
+        this.sequences = new AtomicLongArray( size );
+        for ( int i = 0; i < size; i++ ) {
+            sequences.set( i, i );
+        }
+    }
+
+
+    /**
+     * @return true if the element was added; false, without waiting, if the buffer is full.
+     */
+    public boolean offer( E element ) {
+
+        Preconditions.checkArgument( element != null, "No element object provided (null)" );
+
+        long pos = tail.get();
+        int  slot;
+        for ( ;; ) {
+            slot = (int) (pos & mask);
+            long turn = sequences.get( slot ) - pos;
+            if ( turn == 0L ) {
+                if ( tail.compareAndSet( pos, pos + 1 ) ) {
+                    break;
+                }
+                pos = tail.get();
+            }
+            else if ( turn < 0L ) {
+                // the slot still holds the element from one lap ago
+                return( false );
+            }
+            else {
+                pos = tail.get();
+            }
+        }
+
+        elements.lazySet( slot, element );
+        sequences.lazySet( slot, pos + 1 );
+        return( true );
+    }
+
+
+    /**
+     * @return the oldest element, or null if the buffer is empty.
+     */
+    public E poll() {
+
+        long pos = head.get();
+        int  slot;
+        for ( ;; ) {
+            slot = (int) (pos & mask);
+            long turn = sequences.get( slot ) - (pos + 1);
+            if ( turn == 0L ) {
+                if ( head.compareAndSet( pos, pos + 1 ) ) {
+                    break;
+                }
+                pos = head.get();
+            }
+            else if ( turn < 0L ) {
+                return( null );
+            }
+            else {
+                pos = head.get();
+            }
+        }
+
+        E element = elements.get( slot );
+        elements.lazySet( slot, null );
+        sequences.lazySet( slot, pos + mask + 1 );
+        return( element );
+    }
+
+
+    /**
+     * Move up to {@code maxElements} of the oldest elements into {@code sink}.
+     *
+     * @return number of elements moved.
+     */
+    public int drainTo( Collection<? super E> sink, int maxElements ) {
+
+        int drained = 0;
+        while ( drained < maxElements ) {
+            E element = poll();
+            if ( element == null ) {
+                break;
+            }
+            sink.add( element );
+            ++drained;
+        }
+        return( drained );
+    }
+
+
+    /**
+     * @return elements currently held; only an estimate while producers are active.
+     */
+    public int size() {
+        return( (int) Math.max( 0L, Math.min( tail.get() - head.get(), mask + 1L ) ) );
+    }
+
+
+    public int capacity() {
+        return( mask + 1 );
+    }
+
+
+}
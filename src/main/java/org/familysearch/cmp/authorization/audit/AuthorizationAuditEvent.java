@@ -0,0 +1,188 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import java.util.List;
+
+
+/**
+ * One grant or deny decision, as written to the audit log.  The session is identified by
+ * its {@link SessionFingerprint}, never by its token.  A check that ended in an exception,
+ * such as a request without a session, is recorded as a deny with the exception's type.
+ */
+public final class AuthorizationAuditEvent {
+
+    /**
+     * {@code decidedBy} of a decision taken from the request's memo.
+     */
+    public static final String DECIDED_BY_MEMO = "memo";
+
+
+    private final long          timestampMillis;
+    private final String        endpoint;
+    private final String        sessionFingerprint;
+    private final String        userId;
+    private final List<String>  permissions;
+    private final String        casContext;
+    private final String        decidedBy;
+    private final String        error;
+    private final boolean       granted;
+    private final long          latencyNanos;
+
+
+    /**
+     * @param sessionFingerprint {@link SessionFingerprint} of the session, or null if there was none
+     * @param casContext         session CAS context of the check, or null for the default
+     * @param decidedBy          name of the filter that decided, {@link #DECIDED_BY_MEMO} if the
+     *                           decision was already made earlier in the request, or null if no
+     *                           filter decided
+     * @param error              type of the exception that ended the check, or null if it was decided
+     */
+    public AuthorizationAuditEvent( long            timestampMillis,
+                                    String          endpoint,
+                                    String          sessionFingerprint,
+                                    String          userId,
+                                    List<String>    permissions,
+                                    String          casContext,
+                                    String          decidedBy,
+                                    String          error,
+                                    boolean         granted,
+                                    long            latencyNanos ) {
+
+        this.timestampMillis = timestampMillis;
+        this.endpoint = endpoint;
+        this.sessionFingerprint = sessionFingerprint;
+        this.userId = userId;
+        this.permissions = permissions;
+        this.casContext = casContext;
+        this.decidedBy = decidedBy;
+        this.error = error;
+        this.granted = granted;
+        this.latencyNanos = latencyNanos;
+    }
+
+
+    public long getTimestampMillis() {
+        return( timestampMillis );
+    }
+
+
+    public String getEndpoint() {
+        return( endpoint );
+    }
+
+
+    public String getSessionFingerprint() {
+        return( sessionFingerprint );
+    }
+
+
+    public String getUserId() {
+        return( userId );
+    }
+
+
+    public List<String> getPermissions() {
+        return( permissions );
+    }
+
+
+    public String getCasContext() {
+        return( casContext );
+    }
+
+
+    public String getDecidedBy() {
+        return( decidedBy );
+    }
+
+
+    public String getError() {
+        return( error );
+    }
+
+
+    public boolean isGranted() {
+        return( granted );
+    }
+
+
+    public long getLatencyNanos() {
+        return( latencyNanos );
+    }
+
+
+    /**
+     * Append the event as one JSON object, without a line break.
+     */
+    public void appendJson( StringBuilder json ) {
+
+        json.append( "{\"ts\":" ).append( timestampMillis );
+        appendField( json, "endpoint", endpoint );
+        appendField( json, "sessionFingerprint", sessionFingerprint );
+        appendField( json, "user", userId );
+        json.append( ",\"permissions\":[" );
+        for ( int i = 0; i < permissions.size(); i++ ) {
+            if ( i > 0 ) {
+                json.append( ',' );
+            }
+            appendString( json, permissions.get( i ) );
+        }
+        json.append( ']' );
+        appendField( json, "casContext", casContext );
+        appendField( json, "decidedBy", decidedBy );
+        appendField( json, "error", error );
+        json.append( ",\"granted\":" ).append( granted );
+        json.append( ",\"latencyMicros\":" ).append( latencyNanos / 1000L );
+        json.append( '}' );
+    }
+
+
+    @Override
+    public String toString() {
+
+        StringBuilder json = new StringBuilder( 256 );
+        appendJson( json );
+        return( json.toString() );
+    }
+
+
+    private static void appendField( StringBuilder json, String name, String value ) {
+
+        json.append( ",\"" ).append( name ).append( "\":" );
+        appendString( json, value );
+    }
+
+
+    private static void appendString( StringBuilder json, String value ) {
+
+        if ( value == null ) {
+            json.append( "null" );
+            return;
+        }
+
+        json.append( '"' );
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            switch ( c ) {
+                case '"':   json.append( "\\\"" ); break;
+                case '\\':  json.append( "\\\\" ); break;
+                case '\n':  json.append( "\\n" ); break;
+                case '\r':  json.append( "\\r" ); break;
+                case '\t':  json.append( "\\t" ); break;
+                default:
+                    if ( c < 0x20 ) {
+                        json.append( String.format( "\\u%04x", (int) c ) );
+                    }
+                    else {
+                        json.append( c );
+                    }
+            }
+        }
+        json.append( '"' );
+    }
+
+
+}
@@ -0,0 +1,219 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Asynchronous audit log of authorization decisions.  Request threads {@link #publish}
+ * events into an {@link AuditRingBuffer} and return at once; one background thread drains
+ * the buffer in batches into an {@link AuditEventWriter}.
+ * <p>
+ * Auditing never makes a request wait: when the buffer is full, or the writer can't keep
+ * up, events are dropped and counted, and the writer thread logs how many were lost.
+ * Events the writer fails to write are counted too.
+ * <p>
+ * Session tokens are not written; callers {@link #fingerprint} them first.
+ */
+public class AuthorizationAuditLog implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( AuthorizationAuditLog.class );
+
+    // pause of the writer thread while the buffer is empty
+    private static final long   IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos( 5L );
+
+    // least time between two warnings about dropped or failed events
+    private static final long   WARN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos( 60L );
+
+
+    private final AuditRingBuffer<AuthorizationAuditEvent>  buffer;
+    private final AuditEventWriter                          writer;
+    private final Thread                                    writerThread;
+    private final LongAdder                                 published = new LongAdder();
+    private final LongAdder                                 dropped = new LongAdder();
+    private final LongAdder                                 written = new LongAdder();
+    private final LongAdder                                 failed = new LongAdder();
+
+    private volatile SessionFingerprint                     sessionFingerprint = SessionFingerprint.randomKey();
+    private volatile int                                    batchSize = 256;
+    private volatile boolean                                running = true;
+
+    // writer thread only
+    private long                                            lostReported;
+    private long                                            lastWarnNanos;
+
+
+    /**
+     * @param capacity      events the buffer holds; rounded up to a power of two
+     * @param writer        destination of the batches; closed with the log
+     * @param threadFactory creates the writer thread, started at once
+     */
+    public AuthorizationAuditLog( int capacity, AuditEventWriter writer, ThreadFactory threadFactory ) {
+
+        Preconditions.checkArgument( writer != null, "No AuditEventWriter object provided (null)" );
+        Preconditions.checkArgument( threadFactory != null, "No ThreadFactory object provided (null)" );
+
+        this.buffer = new AuditRingBuffer<>( capacity );
+        this.writer = writer;
+        this.lastWarnNanos = System.nanoTime() - WARN_INTERVAL_NANOS;
+        this.writerThread = threadFactory.newThread( this::drainLoop );
+        this.writerThread.start();
+    }
+
+
+    /**
+     * @param size most events handed to the writer at once
+     */
+    public void setBatchSize( int size ) {
+
+        Preconditions.checkArgument( size > 0, "Audit batch size must be positive: %s", size );
+        batchSize = size;
+    }
+
+
+    /**
+     * @param fingerprint replaces session tokens in the events; defaults to one with a random
+     *                    key.  Configure before use.
+     */
+    public void setSessionFingerprint( SessionFingerprint fingerprint ) {
+
+        Preconditions.checkArgument( fingerprint != null, "No SessionFingerprint object provided (null)" );
+        sessionFingerprint = fingerprint;
+    }
+
+
+    /**
+     * @return what to record for the session token in an event; null if there is no token.
+     */
+    public String fingerprint( String sessionId ) {
+        return( sessionFingerprint.of( sessionId ) );
+    }
+
+
+    /**
+     * Queue an event for writing, without waiting.
+     *
+     * @return false if the event was dropped because the buffer is full or the log closed.
+     */
+    public boolean publish( AuthorizationAuditEvent event ) {
+
+        if ( running && buffer.offer( event ) ) {
+            published.increment();
+            return( true );
+        }
+
+        dropped.increment();
+        return( false );
+    }
+
+
+    /**
+     * Stop accepting events, write those still buffered, and close the writer.
+     */
+    @Override
+    public void close()
+        throws IOException {
+
+        running = false;
+        LockSupport.unpark( writerThread );
+        try {
+            writerThread.join( TimeUnit.SECONDS.toMillis( 10L ) );
+        }
+        catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+
+
+    public long getPublishedCount() {
+        return( published.sum() );
+    }
+
+
+    public long getDroppedCount() {
+        return( dropped.sum() );
+    }
+
+
+    public long getWrittenCount() {
+        return( written.sum() );
+    }
+
+
+    /**
+     * @return events the writer failed to write.
+     */
+    public long getFailedCount() {
+        return( failed.sum() );
+    }
+
+
+    /**
+     * @return events buffered and not yet written.
+     */
+    public int getPendingCount() {
+        return( buffer.size() );
+    }
+
+
+    private void drainLoop() {
+
+        List<AuthorizationAuditEvent> batch = new ArrayList<>( batchSize );
+
+        while ( running || (buffer.size() > 0) ) {
+            batch.clear();
+            if ( buffer.drainTo( batch, batchSize ) == 0 ) {
+                if ( running ) {
+                    LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+                }
+                continue;
+            }
+
+            try {
+                writer.write( batch );
+                written.add( batch.size() );
+            }
+            catch( IOException | RuntimeException ex ) {
+                failed.add( batch.size() );
+                LOGGER.debug( "Audit batch write failed", ex );
+            }
+
+            reportLosses();
+        }
+
+        reportLosses();
+    }
+
+
+    /**
+     * Warn, at most once per interval, about events dropped or not written since the last warning.
+     */
+    private void reportLosses() {
+
+        long lost = dropped.sum() + failed.sum();
+        long now = System.nanoTime();
+        if ( (lost > lostReported) && ((now - lastWarnNanos >= WARN_INTERVAL_NANOS) || ! running) ) {
+            LOGGER.warn( "Authorization audit lost {} events (dropped {}, write failures {} in total)",
+                         lost - lostReported, dropped.sum(), failed.sum() );
+            lostReported = lost;
+            lastWarnNanos = now;
+        }
+    }
+
+
+}
@@ -0,0 +1,135 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+
+/**
+ * {@link AuditEventWriter} appending one JSON object per line to a file, rotated by size:
+ * once the file reaches its limit it becomes {@code <file>.1}, the older files shift up
+ * one, and the oldest beyond {@code maxFiles} is deleted.  Each batch is encoded into one
+ * buffer and written with one call.
+ */
+public class JsonLinesAuditWriter implements AuditEventWriter {
+
+    private final Path          file;
+    private final long          maxFileBytes;
+    private final int           maxFiles;
+    private final StringBuilder batch = new StringBuilder( 64 * 1024 );
+
+    private OutputStream        out;
+    private long                fileBytes;
+
+
+    /**
+     * @param file         file currently written to; its directory is created if missing
+     * @param maxFileBytes size at which the file is rotated
+     * @param maxFiles     rotated files kept besides the current one; 0 keeps none
+     */
+    public JsonLinesAuditWriter( Path file, long maxFileBytes, int maxFiles ) {
+
+        Preconditions.checkArgument( file != null, "No Path object provided (null)" );
+        Preconditions.checkArgument( maxFileBytes > 0L, "Audit file size limit must be positive: %s", maxFileBytes );
+        Preconditions.checkArgument( maxFiles >= 0, "Rotated audit files kept must not be negative: %s", maxFiles );
+
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+
+    @Override
+    public void write( List<AuthorizationAuditEvent> events )
+        throws IOException {
+
+        batch.setLength( 0 );
+        for ( AuthorizationAuditEvent event : events ) {
+            event.appendJson( batch );
+            batch.append( '\n' );
+        }
+        byte[] bytes = batch.toString().getBytes( StandardCharsets.UTF_8 );
+
+        if ( (out != null) && (fileBytes > 0L) && (fileBytes + bytes.length > maxFileBytes) ) {
+            rotate();
+        }
+        if ( out == null ) {
+            open();
+        }
+
+        out.write( bytes );
+        out.flush();
+        fileBytes += bytes.length;
+    }
+
+
+    @Override
+    public void close()
+        throws IOException {
+
+        if ( out != null ) {
+            try {
+                out.close();
+            }
+            finally {
+                out = null;
+            }
+        }
+    }
+
+
+    public Path getFile() {
+        return( file );
+    }
+
+
+    private void open()
+        throws IOException {
+
+        Path dir = file.toAbsolutePath().getParent();
+        if ( dir != null ) {
+            Files.createDirectories( dir );
+        }
+        out = Files.newOutputStream( file, StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+        fileBytes = Files.size( file );
+    }
+
+
+    private void rotate()
+        throws IOException {
+
+        close();
+
+        if ( maxFiles == 0 ) {
+            Files.deleteIfExists( file );
+            return;
+        }
+
+        Files.deleteIfExists( rotated( maxFiles ) );
+        for ( int n = maxFiles - 1; n >= 1; n-- ) {
+            Path older = rotated( n );
+            if ( Files.exists( older ) ) {
+                Files.move( older, rotated( n + 1 ), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        Files.move( file, rotated( 1 ), StandardCopyOption.REPLACE_EXISTING );
+    }
+
+
+    private Path rotated( int n ) {
+        return( file.resolveSibling( file.getFileName().toString() + "." + n ) );
+    }
+
+
+}
@@ -0,0 +1,88 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+
+/**
+ * Stands in for a session token in the audit log: a keyed hash (HMAC-SHA256) of the token,
+ * truncated to 16 hex digits.  Under one key a session always has the same fingerprint, so
+ * its decisions can be followed through the file, but the token can't be read back from it
+ * or replayed.  Instances sharing a key produce the same fingerprints; a {@link #randomKey()
+ * random key} makes them comparable only within one run.
+ */
+public final class SessionFingerprint {
+
+    private static final String     ALGORITHM = "HmacSHA256";
+    private static final int        FINGERPRINT_BYTES = 8;
+    private static final char[]     HEX = "0123456789abcdef".toCharArray();
+
+
+    private final byte[]            key;
+    private final ThreadLocal<Mac>  macs;
+
+
+    public SessionFingerprint( byte[] key ) {
+
+        Preconditions.checkArgument( (key != null) && (key.length > 0), "No fingerprint key provided (null or empty)" );
+
+        this.key = Arrays.copyOf( key, key.length );
+        this.macs = ThreadLocal.withInitial( this::newMac );
+        newMac();                                                   // fail now, not on the first audited check
+    }
+
+
+    /**
+     * @return fingerprints under a key drawn at random, known to no one.
+     */
+    public static SessionFingerprint randomKey() {
+
+        byte[] key = new byte[ 32 ];
+        new SecureRandom().nextBytes( key );
+        return( new SessionFingerprint( key ) );
+    }
+
+
+    /**
+     * @return the fingerprint of the session token, or null if there is none.
+     */
+    public String of( String sessionId ) {
+
+        if ( sessionId == null ) {
+            return( null );
+        }
+
+        byte[]  hash = macs.get().doFinal( sessionId.getBytes( StandardCharsets.UTF_8 ) );
+        char[]  hex = new char[ FINGERPRINT_BYTES * 2 ];
+        for ( int i = 0; i < FINGERPRINT_BYTES; i++ ) {
+            hex[ 2 * i ] = HEX[ (hash[ i ] >> 4) & 0x0f ];
+            hex[ 2 * i + 1 ] = HEX[ hash[ i ] & 0x0f ];
+        }
+        return( new String( hex ) );
+    }
+
+
+    private Mac newMac() {
+
+        try {
+            Mac mac = Mac.getInstance( ALGORITHM );
+            mac.init( new SecretKeySpec( key, ALGORITHM ) );
+            return( mac );
+        }
+        catch( GeneralSecurityException ex ) {
+            throw new IllegalStateException( ALGORITHM + " not available for session fingerprints", ex );
+        }
+    }
+
+
+}
@@ -7,10 +7,42 @@ package org.familysearch.cmp.authorization.beans;
 
 import com.sun.jersey.api.client.Client;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
 import jersey.repackaged.com.google.common.base.Preconditions;
+import org.aspectj.lang.Aspects;
+import org.aspectj.lang.NoAspectBoundException;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.AuthorizationAspect;
 import org.familysearch.cmp.authorization.ValidSessionOnlyAuthorizationFilter;
 import org.familysearch.cmp.authorization.CASAuthorizationFilter;
+import org.familysearch.cmp.authorization.audit.AuthorizationAuditLog;
+import org.familysearch.cmp.authorization.audit.JsonLinesAuditWriter;
+import org.familysearch.cmp.authorization.audit.SessionFingerprint;
+import org.familysearch.cmp.authorization.cache.NegativeResultCache;
+import org.familysearch.cmp.authorization.cache.NoOpPermissionDecisionCache;
+import org.familysearch.cmp.authorization.cache.PermissionDecisionCache;
+import org.familysearch.cmp.authorization.cache.TtlPermissionDecisionCache;
+import org.familysearch.cmp.authorization.cas.BatchingPermissionLoader;
+import org.familysearch.cmp.authorization.cas.CircuitBreaker;
+import org.familysearch.cmp.authorization.cas.FutureBridge;
+import org.familysearch.cmp.authorization.cas.IdentityServicePermissionLoader;
+import org.familysearch.cmp.authorization.cas.PermissionSetLoader;
+import org.familysearch.cmp.authorization.cas.SingleFlightPermissionLoader;
+import org.familysearch.cmp.authorization.delegation.DelegationRules;
+import org.familysearch.cmp.authorization.metrics.AuthorizationMetrics;
 import org.familysearch.cmp.authorization.permissions.CmpPermission;
+import org.familysearch.cmp.authorization.permissions.PermissionImplications;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanRegistry;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanWarmup;
+import org.familysearch.cmp.authorization.reporting.RejectionReporter;
+import org.familysearch.cmp.authorization.simulation.LatencyDistribution;
+import org.familysearch.cmp.authorization.simulation.SimulatedIdentityService;
+import org.familysearch.cmp.authorization.util.NamedDaemonThreadFactory;
+import org.familysearch.cmp.authorization.util.StringUtils;
+import org.familysearch.cmp.authorization.web.CasPrefetchInterceptor;
 import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
 import org.familysearch.engage.foundation.security.CISCASClientCachingSecurityManager;
 //import org.familysearch.engage.foundation.security.CISCASClientSecurityManager;
@@ -25,14 +57,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 //import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Arrays.asList;
 import static org.familysearch.identity.api.impl.IdentityServiceImpl.createDefaultClientConfig;
@@ -42,11 +87,20 @@ import static org.familysearch.identity.api.impl.IdentityServiceImpl.createDefau
  * Spring configuration for all security related beans
  */
 @Configuration
-@EnableAspectJAutoProxy
+@EnableConfigurationProperties
 public class AuthorizationBeans {
 
     private final Logger logger = LoggerFactory.getLogger( getClass());
 
+    @Autowired
+    private Environment environment;
+
+    @Autowired( required = false )
+    private MeterRegistry meterRegistry;
+
+    // filters of the security manager's chain, shared by the asyncAuthorizationFilterChain
+    private volatile List<AsyncAuthorizationFilter> chainFilters;
+
     private static final String CIS_URI = String.format( "%s://cis-public-api.cis.ident.service", ServiceLocationUri.SCHEME );
     private static final String CAS_URI = String.format( "%s://cas-public-api.cas.ident.service", ServiceLocationUri.SCHEME );
 
@@ -83,9 +137,346 @@ public class AuthorizationBeans {
     }
 
 
+    @Bean
+    public AuthorizationProperties authorizationProperties() {
+        return( new AuthorizationProperties() );
+    }
+
+
+    @Bean
+    public PermissionDecisionCache permissionDecisionCache() {
+
+        AuthorizationProperties.Cache   cacheProps = authorizationProperties().getCas().getCache();
+        AuthorizationProperties.Breaker breakerProps = authorizationProperties().getCas().getBreaker();
+
+        if ( ! cacheProps.isEnabled() ) {
+            logger.info( "CAS PermissionDecisionCache disabled ..." );
+            return( NoOpPermissionDecisionCache.INSTANCE );
+        }
+
+        // keep expired entries around only if an open breaker may need to serve them
+        long staleSeconds = breakerProps.isEnabled() ? breakerProps.getMaxStaleSeconds() : 0L;
+
+        logger.info( "CAS PermissionDecisionCache initialized (maxSize={}, ttl={}s, staleRetention={}s, jitter={}, refreshAhead={}) ...",
+                     cacheProps.getMaxSize(), cacheProps.getTtlSeconds(), staleSeconds,
+                     cacheProps.getExpiryJitter(), cacheProps.getRefreshAheadFraction() );
+        return( new TtlPermissionDecisionCache( cacheProps.getMaxSize(), cacheProps.getTtlSeconds(),
+                                                staleSeconds, TimeUnit.SECONDS,
+                                                cacheProps.getExpiryJitter(), cacheProps.getRefreshAheadFraction() ) );
+    }
+
+
+    /**
+     * Threads that reload cached CAS decisions nearing expiry.  Its queue is bounded by the
+     * cache, since each cached entry hands out at most one refresh; threads start on first use.
+     */
+    @Bean( destroyMethod = "shutdownNow" )
+    public ExecutorService casRefreshExecutor() {
+
+        AuthorizationProperties.Cache cacheProps = authorizationProperties().getCas().getCache();
+
+        logger.info( "CAS refresh-ahead executor initialized ({} threads) ...", cacheProps.getRefreshThreads() );
+        return( Executors.newFixedThreadPool( cacheProps.getRefreshThreads(), new NamedDaemonThreadFactory( "cas-refresh-ahead" ) ) );
+    }
+
+
+    /**
+     * Transitive closure of the configured permission implication graph.
+     */
+    @Bean
+    public PermissionImplications permissionImplications() {
+
+        AuthorizationProperties.Implications implicationProps = authorizationProperties().getImplications();
+
+        if ( ! implicationProps.isEnabled() ) {
+            logger.info( "PermissionImplications disabled ..." );
+            return( PermissionImplications.NONE );
+        }
+
+        PermissionImplications implications = PermissionImplications.ofNames( implicationProps.getGraph() );
+        logger.info( "PermissionImplications initialized: {} ...", implications );
+        return( implications );
+    }
+
+
+    /**
+     * Counts rejections and samples their log lines; picked up by the AuthorizationAspect, the
+     * UserIdEnforcer and the CASAuthorizationFilter.  When disabled it only counts, and every
+     * rejection is logged as before.
+     */
+    @Bean
+    public RejectionReporter rejectionReporter() {
+
+        AuthorizationProperties.Rejections rejectionProps = authorizationProperties().getRejections();
+        RejectionReporter                  reporter = new RejectionReporter();
+
+        if ( rejectionProps.isEnabled() ) {
+            reporter.setExemplarsPerInterval( rejectionProps.getExemplarsPerInterval() );
+            reporter.setDefaultSampleRate( rejectionProps.getDefaultSampleRate() );
+            reporter.setSampleRates( rejectionProps.getSampleRates() );
+            if ( rejectionProps.getSummaryIntervalSeconds() > 0L ) {
+                rejectionSummaryScheduler().scheduleWithFixedDelay( reporter::summarize,
+                                                                    rejectionProps.getSummaryIntervalSeconds(),
+                                                                    rejectionProps.getSummaryIntervalSeconds(),
+                                                                    TimeUnit.SECONDS );
+            }
+            logger.info( "RejectionReporter initialized (summary every {}s, default sample rate {}) ...",
+                         rejectionProps.getSummaryIntervalSeconds(), rejectionProps.getDefaultSampleRate() );
+        }
+
+        return( reporter );
+    }
+
+
+    /**
+     * Timers and counters for the aspect's checks, the filters and the CAS lookups, in the
+     * application's MeterRegistry when it has one.  Otherwise they go to a composite registry
+     * that discards them until a registry is added to it.
+     */
+    @Bean
+    public AuthorizationMetrics authorizationMetrics() {
+
+        AuthorizationProperties.Metrics metricsProps = authorizationProperties().getMetrics();
+
+        if ( ! metricsProps.isEnabled() ) {
+            return( AuthorizationMetrics.NONE );
+        }
+
+        AuthorizationMetrics metrics = new AuthorizationMetrics( ( meterRegistry != null ) ? meterRegistry : new CompositeMeterRegistry() );
+        metrics.setPercentileHistogram( metricsProps.isPercentileHistogram() );
+
+        logger.info( "AuthorizationMetrics initialized ({}) ...", metrics.getRegistry().getClass().getSimpleName() );
+        return( metrics );
+    }
+
+
+    /**
+     * Audit log of grant and deny decisions, picked up by the AuthorizationAspect; written to
+     * rotating JSON-lines files by a background thread.  Registered only if enabled.
+     */
+    @Bean( destroyMethod = "close" )
+    @ConditionalOnProperty( prefix = "cmp.auth.audit", name = "enabled" )
+    public AuthorizationAuditLog authorizationAuditLog() {
+
+        AuthorizationProperties.Audit auditProps = authorizationProperties().getAudit();
+        JsonLinesAuditWriter          writer = new JsonLinesAuditWriter( Paths.get( auditProps.getFile() ),
+                                                                         auditProps.getMaxFileSizeMb() * 1024L * 1024L,
+                                                                         auditProps.getMaxFiles() );
+        AuthorizationAuditLog         auditLog = new AuthorizationAuditLog( auditProps.getBufferCapacity(), writer,
+                                                                            new NamedDaemonThreadFactory( "authorization-audit-writer" ) );
+        auditLog.setBatchSize( auditProps.getBatchSize() );
+        if ( ! StringUtils.isNullorEmpty( auditProps.getSessionKey() ) ) {
+            auditLog.setSessionFingerprint( new SessionFingerprint( auditProps.getSessionKey().getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+
+        logger.info( "AuthorizationAuditLog initialized (file {}, buffer {}) ...", writer.getFile(), auditProps.getBufferCapacity() );
+        return( auditLog );
+    }
+
+
+    /**
+     * Writes the RejectionReporter's periodic summaries; its thread starts on first use.
+     */
+    @Bean( destroyMethod = "shutdownNow" )
+    public ScheduledExecutorService rejectionSummaryScheduler() {
+        return( Executors.newSingleThreadScheduledExecutor( new NamedDaemonThreadFactory( "authorization-rejection-summary" ) ) );
+    }
+
+
+    /**
+     * Configured User-ID delegation rules, compiled for the UserIdEnforcer.
+     */
+    @Bean
+    public DelegationRules delegationRules() {
+
+        AuthorizationProperties.Delegation delegationProps = authorizationProperties().getDelegation();
+
+        if ( ! delegationProps.isEnabled() ) {
+            logger.info( "DelegationRules disabled ..." );
+            return( DelegationRules.NONE );
+        }
+
+        DelegationRules rules = DelegationRules.of( delegationProps.getRules() );
+        logger.info( "DelegationRules initialized: {} ...", rules );
+        return( rules );
+    }
+
+
+    @Bean
+    public CircuitBreaker identityServiceCircuitBreaker() {
+
+        AuthorizationProperties.Breaker breakerProps = authorizationProperties().getCas().getBreaker();
+
+        logger.info( "IdentityService CircuitBreaker initialized ..." );
+        return( new CircuitBreaker( "IdentityService",
+                                    breakerProps.getWindowSize(),
+                                    breakerProps.getMinimumCalls(),
+                                    breakerProps.getFailureRateThreshold(),
+                                    breakerProps.getSlowCallRateThreshold(),
+                                    breakerProps.getSlowCallMillis(),
+                                    breakerProps.getOpenDurationMillis(),
+                                    breakerProps.getHalfOpenTrials() ) );
+    }
+
+
+    @Bean
+    public PermissionSetLoader permissionSetLoader() {
+
+        AuthorizationProperties.Cas casProps = authorizationProperties().getCas();
+
+        PermissionSetLoader loader = new IdentityServicePermissionLoader( identityService() );
+
+        if ( casProps.getBatch().isEnabled() ) {
+            AuthorizationProperties.Batch batchProps = casProps.getBatch();
+            BatchingPermissionLoader      batchingLoader = new BatchingPermissionLoader( loader,
+                                                                                         batchProps.getMaxBatchSize(),
+                                                                                         batchProps.getMaxLingerMillis(),
+                                                                                         TimeUnit.MILLISECONDS,
+                                                                                         batchProps.getCompleterThreads() );
+            if ( casProps.getTimeoutMillis() > 0L ) {
+                batchingLoader.setCallTimeout( casProps.getTimeoutMillis(), TimeUnit.MILLISECONDS );
+            }
+            loader = batchingLoader;
+        }
+
+        if ( casProps.isSingleFlightEnabled() ) {
+            loader = new SingleFlightPermissionLoader( loader, casFutureBridge() );
+        }
+
+        logger.info( "CAS PermissionSetLoader initialized ..." );
+        return( loader );
+    }
+
+
+    @Bean
+    public FutureBridge casFutureBridge() {
+
+        logger.info( "CAS FutureBridge initialized ..." );
+        return( new FutureBridge( authorizationProperties().getCas().getAsyncWaiterThreads(),
+                                  authorizationProperties().getCas().getAsyncWaiterQueueCapacity() ) );
+    }
+
+
+    /**
+     * Non-blocking chain over the same filter instances the security manager's chain uses; picked
+     * up by the AuthorizationAspect for methods returning CompletableFuture.  Taking the security
+     * manager as a parameter makes the container build it, and with it the filters, first.
+     */
+    @Bean
+    @Autowired
+    public AsyncAuthorizationFilterChain asyncAuthorizationFilterChain( FoundationSecurityManager securityManager ) {
+
+        Preconditions.checkState( chainFilters != null, "The security manager's filter chain has not been built" );
+
+        logger.info( "AsyncAuthorizationFilterChain initialized ..." );
+        return( new AsyncAuthorizationFilterChain( chainFilters ) );
+    }
+
+
+    /**
+     * Runs CompletableFuture methods advised by the AuthorizationAspect once their decision is in,
+     * so they run neither on the threads answering CAS nor on the servlet pool.
+     */
+    @Bean( name = AuthorizationAspect.CONTINUATION_EXECUTOR, destroyMethod = "shutdownNow" )
+    public ExecutorService authorizationContinuationExecutor() {
+
+        AuthorizationProperties.Async asyncProps = authorizationProperties().getAsync();
+
+        logger.info( "Authorization continuation executor initialized ({} threads) ...", asyncProps.getContinuationThreads() );
+        return( Executors.newFixedThreadPool( asyncProps.getContinuationThreads(), new NamedDaemonThreadFactory( "authorization-continuation" ) ) );
+    }
+
+
+    /**
+     * Precompiled per-method authorization plans used by the AuthorizationAspect.
+     */
+    @Bean
+    @Autowired
+    public AuthorizationPlanRegistry authorizationPlanRegistry( AsyncAuthorizationFilterChain asyncAuthorizationFilterChain ) {
+
+        AuthorizationPlanRegistry registry = new AuthorizationPlanRegistry( asyncAuthorizationFilterChain );
+
+        registry.setMetrics( authorizationMetrics() );
+        return( registry );
+    }
+
+
+    /**
+     * Compiles every {@code @PermissionRequired} method's plan once the singletons exist, and
+     * fails startup if one requires a permission no filter handles.
+     */
+    @Bean
+    @Autowired
+    public AuthorizationPlanWarmup authorizationPlanWarmup( AuthorizationPlanRegistry     authorizationPlanRegistry,
+                                                            AsyncAuthorizationFilterChain asyncAuthorizationFilterChain ) {
+
+        AuthorizationProperties.Warmup  warmupProps = authorizationProperties().getWarmup();
+        AuthorizationPlanWarmup         warmup = new AuthorizationPlanWarmup( authorizationPlanRegistry, asyncAuthorizationFilterChain );
+
+        warmup.setEnabled( warmupProps.isEnabled() );
+        warmup.setFailOnUnhandledPermission( warmupProps.isFailOnUnhandledPermission() );
+        return( warmup );
+    }
+
+
+    /**
+     * Registers the MVC interceptor starting CAS lookups once the handler is resolved; only
+     * when {@code cmp.auth.cas.prefetch-enabled} is set.
+     */
+    @Bean
+    @Autowired
+    @ConditionalOnProperty( prefix = "cmp.auth.cas", name = "prefetch-enabled" )
+    public WebMvcConfigurerAdapter casPrefetchConfigurer( FoundationSecurityManager     securityManager,
+                                                          AuthorizationPlanRegistry     authorizationPlanRegistry,
+                                                          AsyncAuthorizationFilterChain asyncAuthorizationFilterChain ) {
+
+        final CasPrefetchInterceptor interceptor = new CasPrefetchInterceptor( securityManager,
+                                                                               authorizationPlanRegistry,
+                                                                               asyncAuthorizationFilterChain );
+
+        logger.info( "CasPrefetchInterceptor initialized ..." );
+        return( new WebMvcConfigurerAdapter() {
+            @Override
+            public void addInterceptors( InterceptorRegistry registry ) {
+                registry.addInterceptor( interceptor );
+            }
+        } );
+    }
+
+
+    /**
+     * In-process identity service for load testing; only under the
+     * {@value SimulatedIdentityService#PROFILE} profile.
+     */
+    @Bean
+    @Profile( SimulatedIdentityService.PROFILE )
+    public SimulatedIdentityService simulatedIdentityService() {
+
+        AuthorizationProperties.Simulation simProps = authorizationProperties().getSimulation();
+
+        SimulatedIdentityService simulated = new SimulatedIdentityService( LatencyDistribution.of( simProps.getLatencyShape(),
+                                                                                                  simProps.getLatencyMillis(),
+                                                                                                  simProps.getLatencyParameter() ),
+                                                                           simProps.getErrorRate(),
+                                                                           simProps.getResponderThreads() );
+        simulated.grantByDefault( simProps.getDefaultPermissions() );
+        for ( Map.Entry<String, List<String>> session : simProps.getSessionPermissions().entrySet() ) {
+            simulated.grant( session.getKey(), session.getValue() );
+        }
+
+        logger.warn( "SimulatedIdentityService bean initialized; CAS lookups will NOT reach the identity service ..." );
+        return( simulated );
+    }
+
+
     @Bean
     public IdentityService identityService() {
 
+        // environment is absent when the configuration is used outside a Spring context
+        if ( (environment != null) && environment.acceptsProfiles( SimulatedIdentityService.PROFILE ) ) {
+            return( simulatedIdentityService().asIdentityService() );
+        }
+
         IdentityService idService;
         ServiceLocatorConfig serviceLocatorConfig = new ServiceLocatorConfig();
         ServiceLocator serviceLocator = new ServiceLocator( serviceLocatorConfig );
@@ -108,27 +499,46 @@ public class AuthorizationBeans {
                                                               String                       sessionPermName,
                                                               List<CmpPermission>          validCasRoleLst,
                                                               String                       casAuthContextID ) {
+        final ValidSessionOnlyAuthorizationFilter sessionFilter = sessionOnlyAuthorizationFilter( fsMgr, sessionPermName );
+        final CASAuthorizationFilter              casFilter = cascAuthorizationFilter( fsMgr, validCasRoleLst, casAuthContextID );
+
         final AuthorizationFilterChain authorizationFilterChain = new AuthorizationFilterChain();
-        authorizationFilterChain.setFilters( asList( sessionOnlyAuthorizationFilter( fsMgr, sessionPermName ),
-                                                     cascAuthorizationFilter( fsMgr, validCasRoleLst, casAuthContextID ) ) );
+        authorizationFilterChain.setFilters( asList( sessionFilter, casFilter ) );
+        chainFilters = asList( sessionFilter, casFilter );
 
         logger.info( "AuthorizationFilterChain initialized ..." );
         return authorizationFilterChain;
     }
 
 
+    /**
+     * Created by {@link #securityManager} for its chain, with that security manager; not a bean,
+     * since its parameters are not.  The {@link #asyncAuthorizationFilterChain} shares the instance.
+     */
 //    @Bean
     public ValidSessionOnlyAuthorizationFilter sessionOnlyAuthorizationFilter( FoundationSecurityManager    fsMgr,
                                                                                String                       sessionPermissionName ) {
 
         ValidSessionOnlyAuthorizationFilter sessionFilter;
         sessionFilter = new ValidSessionOnlyAuthorizationFilter( fsMgr, sessionPermissionName );
+        sessionFilter.setMetrics( authorizationMetrics() );
+
+        AuthorizationProperties.NegativeCache negativeProps = authorizationProperties().getNegativeCache();
+        if ( negativeProps.isEnabled() ) {
+            sessionFilter.setUnauthenticatedSessionCache( new NegativeResultCache<>( negativeProps.getMaxSize(),
+                                                                                     negativeProps.getTtlSeconds(),
+                                                                                     TimeUnit.SECONDS ) );
+        }
 
         logger.info( "CASAuthorizationFilter initialized ..." );
         return( sessionFilter );
     }
 
 
+    /**
+     * Created by {@link #securityManager} for its chain, with that security manager; not a bean,
+     * since its parameters are not.  The {@link #asyncAuthorizationFilterChain} shares the instance.
+     */
 //    @Bean
     public CASAuthorizationFilter cascAuthorizationFilter( FoundationSecurityManager    fsMgr,
                                                            List<CmpPermission>          validCasRoleLst,
@@ -146,9 +556,32 @@ public class AuthorizationBeans {
 //        validCasRoles.add( CmpPermission.FSMessagingAdminApiModifyThread.name() );
 
         casFilter = new CASAuthorizationFilter( fsMgr,
-                                                identityService(),
+                                                permissionSetLoader(),
                                                 casAuthContextID,  // "FSMessagingDefaultContext",
-                                                validCasRoles );
+                                                validCasRoles,
+                                                permissionDecisionCache() );
+
+        AuthorizationProperties.Cas casProps = authorizationProperties().getCas();
+        casFilter.setLookupTimeout( casProps.getTimeoutMillis(), TimeUnit.MILLISECONDS );
+        casFilter.setTimeoutFallback( casProps.getTimeoutFallback() );
+        casFilter.setSnapshotEnabled( casProps.isSnapshotEnabled() );
+        casFilter.setImplications( permissionImplications() );
+        casFilter.setRejectionReporter( rejectionReporter() );
+        casFilter.setMetrics( authorizationMetrics() );
+        if ( casProps.getBreaker().isEnabled() ) {
+            casFilter.setCircuitBreaker( identityServiceCircuitBreaker() );
+        }
+        casFilter.setFutureBridge( casFutureBridge() );
+        if ( casProps.getCache().isEnabled() && (casProps.getCache().getRefreshAheadFraction() < 1.0) ) {
+            casFilter.setRefreshExecutor( casRefreshExecutor() );
+        }
+
+        AuthorizationProperties.NegativeCache negativeProps = authorizationProperties().getNegativeCache();
+        if ( negativeProps.isEnabled() ) {
+            casFilter.setDenialCache( new NegativeResultCache<>( negativeProps.getMaxSize(),
+                                                                 negativeProps.getTtlSeconds(),
+                                                                 TimeUnit.SECONDS ) );
+        }
 
         logger.info( "CASAuthorizationFilter initialized ..." );
         return( casFilter );
@@ -170,5 +603,45 @@ public class AuthorizationBeans {
 //    }
 
 
+    /**
+     * Default: the AuthorizationAspect is applied through Spring AOP proxies.
+     */
+    @Configuration
+    @Profile( "!" + AuthorizationAspect.WEAVING_PROFILE )
+    @EnableAspectJAutoProxy
+    static class ProxiedAuthorizationAspect {
+
+        @Bean
+        public AuthorizationAspect authorizationAspect() {
+            return( new AuthorizationAspect() );
+        }
+    }
+
+
+    /**
+     * Under the {@value AuthorizationAspect#WEAVING_PROFILE} profile the classes are woven with the
+     * AuthorizationAspect at build or load time; no proxies are created, and the aspect
+     * singleton AspectJ advises with is handed to Spring for its dependencies.
+     */
+    @Configuration
+    @Profile( AuthorizationAspect.WEAVING_PROFILE )
+    static class WovenAuthorizationAspect {
+
+        @Bean
+        public AuthorizationAspect authorizationAspect() {
+
+            try {
+                return( Aspects.aspectOf( AuthorizationAspect.class ) );
+            }
+            catch( NoAspectBoundException ex ) {
+                throw new IllegalStateException( String.format( "Profile %s is active but AuthorizationAspect was not woven; "
+                                                                + "build with the aspectj-ctw Maven profile or run with the "
+                                                                + "AspectJ weaver agent", AuthorizationAspect.WEAVING_PROFILE ),
+                                                 ex );
+            }
+        }
+    }
+
+
 }
 
@@ -0,0 +1,871 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.beans;
+
+import org.familysearch.cmp.authorization.cas.CasTimeoutFallback;
+import org.familysearch.cmp.authorization.simulation.LatencyDistribution;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Tuning knobs for the authorization beans, bound from the {@code cmp.auth.*} properties.
+ * Every setting has a default so a consuming service only lists what it wants to change.
+ */
+@ConfigurationProperties( prefix = "cmp.auth" )
+public class AuthorizationProperties {
+
+    private final Async async = new Async();
+
+    private final Cas cas = new Cas();
+
+    private final NegativeCache negativeCache = new NegativeCache();
+
+    private final Implications implications = new Implications();
+
+    private final Warmup warmup = new Warmup();
+
+    private final Delegation delegation = new Delegation();
+
+    private final Rejections rejections = new Rejections();
+
+    private final Metrics metrics = new Metrics();
+
+    private final Audit audit = new Audit();
+
+    private final Simulation simulation = new Simulation();
+
+
+    public Async getAsync() {
+        return( async );
+    }
+
+
+    public Cas getCas() {
+        return( cas );
+    }
+
+
+    public NegativeCache getNegativeCache() {
+        return( negativeCache );
+    }
+
+
+    public Rejections getRejections() {
+        return( rejections );
+    }
+
+
+    public Metrics getMetrics() {
+        return( metrics );
+    }
+
+
+    public Audit getAudit() {
+        return( audit );
+    }
+
+
+    public Delegation getDelegation() {
+        return( delegation );
+    }
+
+
+    public Warmup getWarmup() {
+        return( warmup );
+    }
+
+
+    public Implications getImplications() {
+        return( implications );
+    }
+
+
+    public Simulation getSimulation() {
+        return( simulation );
+    }
+
+
+    /**
+     * Non-blocking authorization of methods returning CompletableFuture ({@code cmp.auth.async.*}).
+     */
+    public static class Async {
+
+        private int continuationThreads = 16;
+
+
+        /**
+         * @return threads that invoke CompletableFuture methods once their decision is in.
+         */
+        public int getContinuationThreads() {
+            return( continuationThreads );
+        }
+
+        public void setContinuationThreads( int continuationThreads ) {
+            this.continuationThreads = continuationThreads;
+        }
+    }
+
+
+    /**
+     * Settings for the CASAuthorizationFilter ({@code cmp.auth.cas.*}).
+     */
+    public static class Cas {
+
+        private final Cache cache = new Cache();
+
+        private final Batch batch = new Batch();
+
+        private final Breaker breaker = new Breaker();
+
+        private boolean     singleFlightEnabled = true;
+
+        private boolean     snapshotEnabled = false;
+
+        private boolean     prefetchEnabled = false;
+
+        private long        timeoutMillis = 2000L;
+
+        private CasTimeoutFallback timeoutFallback = CasTimeoutFallback.CHAIN;
+
+        private int         asyncWaiterThreads = 16;
+
+        private int         asyncWaiterQueueCapacity = 1000;
+
+
+        public Cache getCache() {
+            return( cache );
+        }
+
+        public Batch getBatch() {
+            return( batch );
+        }
+
+        public Breaker getBreaker() {
+            return( breaker );
+        }
+
+        /**
+         * @return true if concurrent identical CAS lookups should share one outstanding call.
+         */
+        public boolean isSingleFlightEnabled() {
+            return( singleFlightEnabled );
+        }
+
+        public void setSingleFlightEnabled( boolean singleFlightEnabled ) {
+            this.singleFlightEnabled = singleFlightEnabled;
+        }
+
+        /**
+         * @return true if CAS should be asked for all handled permissions at once, and the
+         *         answer reused as the session's snapshot for every later check.
+         */
+        public boolean isSnapshotEnabled() {
+            return( snapshotEnabled );
+        }
+
+        public void setSnapshotEnabled( boolean snapshotEnabled ) {
+            this.snapshotEnabled = snapshotEnabled;
+        }
+
+        /**
+         * @return true if a request's CAS lookup should be started by an MVC interceptor as soon
+         *         as the handler is resolved, rather than when the authorization aspect runs.
+         */
+        public boolean isPrefetchEnabled() {
+            return( prefetchEnabled );
+        }
+
+        public void setPrefetchEnabled( boolean prefetchEnabled ) {
+            this.prefetchEnabled = prefetchEnabled;
+        }
+
+        /**
+         * @return default latency budget for a CAS lookup; zero or less waits without limit.
+         */
+        public long getTimeoutMillis() {
+            return( timeoutMillis );
+        }
+
+        public void setTimeoutMillis( long timeoutMillis ) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public CasTimeoutFallback getTimeoutFallback() {
+            return( timeoutFallback );
+        }
+
+        public void setTimeoutFallback( CasTimeoutFallback timeoutFallback ) {
+            this.timeoutFallback = timeoutFallback;
+        }
+
+        /**
+         * @return threads that wait on CAS answers for the non-blocking authorization path.
+         */
+        public int getAsyncWaiterThreads() {
+            return( asyncWaiterThreads );
+        }
+
+        public void setAsyncWaiterThreads( int asyncWaiterThreads ) {
+            this.asyncWaiterThreads = asyncWaiterThreads;
+        }
+
+        /**
+         * @return CAS answers that may wait for a free waiter thread; beyond that they fail at once.
+         */
+        public int getAsyncWaiterQueueCapacity() {
+            return( asyncWaiterQueueCapacity );
+        }
+
+        public void setAsyncWaiterQueueCapacity( int asyncWaiterQueueCapacity ) {
+            this.asyncWaiterQueueCapacity = asyncWaiterQueueCapacity;
+        }
+    }
+
+
+    /**
+     * CAS permission decision cache ({@code cmp.auth.cas.cache.*}).
+     */
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        private int     maxSize = 10000;
+
+        private long    ttlSeconds = 5L;
+
+        private double  expiryJitter = 0.1;
+
+        private double  refreshAheadFraction = 0.8;
+
+        private int     refreshThreads = 2;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return( maxSize );
+        }
+
+        public void setMaxSize( int maxSize ) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return how long a cached decision is trusted; also the longest a revoked permission
+         *         keeps being granted while the identity service is reachable.
+         */
+        public long getTtlSeconds() {
+            return( ttlSeconds );
+        }
+
+        public void setTtlSeconds( long ttlSeconds ) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        /**
+         * @return largest fraction by which an entry's TTL is randomly shortened, in [0, 1).
+         */
+        public double getExpiryJitter() {
+            return( expiryJitter );
+        }
+
+        public void setExpiryJitter( double expiryJitter ) {
+            this.expiryJitter = expiryJitter;
+        }
+
+        /**
+         * @return fraction of an entry's TTL after which it is refreshed in the background; 1 turns it off.
+         */
+        public double getRefreshAheadFraction() {
+            return( refreshAheadFraction );
+        }
+
+        public void setRefreshAheadFraction( double refreshAheadFraction ) {
+            this.refreshAheadFraction = refreshAheadFraction;
+        }
+
+        public int getRefreshThreads() {
+            return( refreshThreads );
+        }
+
+        public void setRefreshThreads( int refreshThreads ) {
+            this.refreshThreads = refreshThreads;
+        }
+    }
+
+
+    /**
+     * Micro-batching of CAS lookups ({@code cmp.auth.cas.batch.*}).  Off by default; it trades
+     * up to {@code maxLingerMillis} of added latency for fewer calls to the identity tier.
+     */
+    public static class Batch {
+
+        private boolean enabled = false;
+
+        private int     maxBatchSize = 64;
+
+        private long    maxLingerMillis = 2L;
+
+        private int     completerThreads = 8;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxBatchSize() {
+            return( maxBatchSize );
+        }
+
+        public void setMaxBatchSize( int maxBatchSize ) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public long getMaxLingerMillis() {
+            return( maxLingerMillis );
+        }
+
+        public void setMaxLingerMillis( long maxLingerMillis ) {
+            this.maxLingerMillis = maxLingerMillis;
+        }
+
+        public int getCompleterThreads() {
+            return( completerThreads );
+        }
+
+        public void setCompleterThreads( int completerThreads ) {
+            this.completerThreads = completerThreads;
+        }
+    }
+
+
+    /**
+     * Identity service circuit breaker ({@code cmp.auth.cas.breaker.*}).  While open, cached
+     * decisions up to {@code maxStaleSeconds} past their TTL are served instead of calling CAS.
+     */
+    public static class Breaker {
+
+        private boolean enabled = true;
+
+        private int     windowSize = 100;
+
+        private int     minimumCalls = 20;
+
+        private double  failureRateThreshold = 0.5;
+
+        private double  slowCallRateThreshold = 0.8;
+
+        private long    slowCallMillis = 1000L;
+
+        private long    openDurationMillis = 10000L;
+
+        private int     halfOpenTrials = 3;
+
+        private long    maxStaleSeconds = 300L;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return( windowSize );
+        }
+
+        public void setWindowSize( int windowSize ) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return( minimumCalls );
+        }
+
+        public void setMinimumCalls( int minimumCalls ) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public double getFailureRateThreshold() {
+            return( failureRateThreshold );
+        }
+
+        public void setFailureRateThreshold( double failureRateThreshold ) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public double getSlowCallRateThreshold() {
+            return( slowCallRateThreshold );
+        }
+
+        public void setSlowCallRateThreshold( double slowCallRateThreshold ) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public long getSlowCallMillis() {
+            return( slowCallMillis );
+        }
+
+        public void setSlowCallMillis( long slowCallMillis ) {
+            this.slowCallMillis = slowCallMillis;
+        }
+
+        public long getOpenDurationMillis() {
+            return( openDurationMillis );
+        }
+
+        public void setOpenDurationMillis( long openDurationMillis ) {
+            this.openDurationMillis = openDurationMillis;
+        }
+
+        public int getHalfOpenTrials() {
+            return( halfOpenTrials );
+        }
+
+        public void setHalfOpenTrials( int halfOpenTrials ) {
+            this.halfOpenTrials = halfOpenTrials;
+        }
+
+        public long getMaxStaleSeconds() {
+            return( maxStaleSeconds );
+        }
+
+        public void setMaxStaleSeconds( long maxStaleSeconds ) {
+            this.maxStaleSeconds = maxStaleSeconds;
+        }
+    }
+
+
+    /**
+     * Short-lived caches of negative results ({@code cmp.auth.negative-cache.*}): denied CAS
+     * lookups, and session IDs with no authenticated user.  Each cache gets its own bound.
+     */
+    public static class NegativeCache {
+
+        private boolean enabled = true;
+
+        private int     maxSize = 10000;
+
+        private long    ttlSeconds = 5L;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return( maxSize );
+        }
+
+        public void setMaxSize( int maxSize ) {
+            this.maxSize = maxSize;
+        }
+
+        public long getTtlSeconds() {
+            return( ttlSeconds );
+        }
+
+        public void setTtlSeconds( long ttlSeconds ) {
+            this.ttlSeconds = ttlSeconds;
+        }
+    }
+
+
+    /**
+     * Sampled logging of rejections, with periodic count summaries ({@code cmp.auth.rejections.*}).
+     */
+    public static class Rejections {
+
+        private boolean             enabled = true;
+
+        private long                summaryIntervalSeconds = 60L;
+
+        private int                 exemplarsPerInterval = 5;
+
+        private double              defaultSampleRate = 1.0;
+
+        private Map<String, Double> sampleRates = new HashMap<>();
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public long getSummaryIntervalSeconds() {
+            return( summaryIntervalSeconds );
+        }
+
+        public void setSummaryIntervalSeconds( long summaryIntervalSeconds ) {
+            this.summaryIntervalSeconds = summaryIntervalSeconds;
+        }
+
+        /**
+         * @return rejections of each endpoint and reason logged in full per summary interval.
+         */
+        public int getExemplarsPerInterval() {
+            return( exemplarsPerInterval );
+        }
+
+        public void setExemplarsPerInterval( int exemplarsPerInterval ) {
+            this.exemplarsPerInterval = exemplarsPerInterval;
+        }
+
+        /**
+         * @return fraction of the further rejections logged, for loggers without a rate in
+         *         {@link #getSampleRates()}.
+         */
+        public double getDefaultSampleRate() {
+            return( defaultSampleRate );
+        }
+
+        public void setDefaultSampleRate( double defaultSampleRate ) {
+            this.defaultSampleRate = defaultSampleRate;
+        }
+
+        public Map<String, Double> getSampleRates() {
+            return( sampleRates );
+        }
+
+        public void setSampleRates( Map<String, Double> sampleRates ) {
+            this.sampleRates = sampleRates;
+        }
+    }
+
+
+    /**
+     * User-ID delegation rules for the UserIdEnforcer ({@code cmp.auth.delegation.*}).  Entries
+     * under {@code rules} map an actor pattern to the target patterns it may act for; a pattern
+     * is a User-ID, or a prefix ending in {@code *}.
+     */
+    public static class Delegation {
+
+        private boolean                     enabled = true;
+
+        private Map<String, List<String>>   rules = new HashMap<>();
+
+
+        public Delegation() {
+            rules.put( "cis.proc*", new ArrayList<>( Collections.singletonList( "cis.wkca*" ) ) );
+        }
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public Map<String, List<String>> getRules() {
+            return( rules );
+        }
+
+        public void setRules( Map<String, List<String>> rules ) {
+            this.rules = rules;
+        }
+    }
+
+
+    /**
+     * Asynchronous audit log of authorization decisions ({@code cmp.auth.audit.*}).
+     */
+    public static class Audit {
+
+        private boolean enabled = false;
+
+        private String  file = "logs/authorization-audit.jsonl";
+
+        private int     bufferCapacity = 8192;
+
+        private int     batchSize = 256;
+
+        private long    maxFileSizeMb = 100L;
+
+        private int     maxFiles = 10;
+
+        private String  sessionKey;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public String getFile() {
+            return( file );
+        }
+
+        public void setFile( String file ) {
+            this.file = file;
+        }
+
+        /**
+         * @return events buffered before new ones are dropped.
+         */
+        public int getBufferCapacity() {
+            return( bufferCapacity );
+        }
+
+        public void setBufferCapacity( int bufferCapacity ) {
+            this.bufferCapacity = bufferCapacity;
+        }
+
+        public int getBatchSize() {
+            return( batchSize );
+        }
+
+        public void setBatchSize( int batchSize ) {
+            this.batchSize = batchSize;
+        }
+
+        public long getMaxFileSizeMb() {
+            return( maxFileSizeMb );
+        }
+
+        public void setMaxFileSizeMb( long maxFileSizeMb ) {
+            this.maxFileSizeMb = maxFileSizeMb;
+        }
+
+        /**
+         * @return rotated files kept besides the current one.
+         */
+        public int getMaxFiles() {
+            return( maxFiles );
+        }
+
+        public void setMaxFiles( int maxFiles ) {
+            this.maxFiles = maxFiles;
+        }
+
+        /**
+         * @return key of the session fingerprints written instead of session tokens; null for
+         *         a random key, so fingerprints only match within one run.
+         */
+        public String getSessionKey() {
+            return( sessionKey );
+        }
+
+        public void setSessionKey( String sessionKey ) {
+            this.sessionKey = sessionKey;
+        }
+    }
+
+
+    /**
+     * Micrometer timers and counters for the authorization stages ({@code cmp.auth.metrics.*}).
+     */
+    public static class Metrics {
+
+        private boolean enabled = true;
+
+        private boolean percentileHistogram = false;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * @return true if the timers should publish latency histograms; each adds dozens of
+         *         bucket series per endpoint, so it is off unless asked for.
+         */
+        public boolean isPercentileHistogram() {
+            return( percentileHistogram );
+        }
+
+        public void setPercentileHistogram( boolean percentileHistogram ) {
+            this.percentileHistogram = percentileHistogram;
+        }
+    }
+
+
+    /**
+     * Startup compilation and validation of the authorization plans ({@code cmp.auth.warmup.*}).
+     */
+    public static class Warmup {
+
+        private boolean enabled = true;
+
+        private boolean failOnUnhandledPermission = true;
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * @return true if startup should fail when a method requires a permission no filter handles.
+         */
+        public boolean isFailOnUnhandledPermission() {
+            return( failOnUnhandledPermission );
+        }
+
+        public void setFailOnUnhandledPermission( boolean failOnUnhandledPermission ) {
+            this.failOnUnhandledPermission = failOnUnhandledPermission;
+        }
+    }
+
+
+    /**
+     * Permission implication graph ({@code cmp.auth.implications.*}).  Entries under
+     * {@code graph} name a CmpPermission and the permissions it directly implies.  Off and
+     * empty by default: a permission is only satisfied by its own grant until a service
+     * configures the edges it wants.
+     */
+    public static class Implications {
+
+        private boolean                     enabled = false;
+
+        private Map<String, List<String>>   graph = new HashMap<>();
+
+
+        public boolean isEnabled() {
+            return( enabled );
+        }
+
+        public void setEnabled( boolean enabled ) {
+            this.enabled = enabled;
+        }
+
+        public Map<String, List<String>> getGraph() {
+            return( graph );
+        }
+
+        public void setGraph( Map<String, List<String>> graph ) {
+            this.graph = graph;
+        }
+    }
+
+
+    /**
+     * Simulated identity service used under the {@code cmp-auth-simulated-identity} profile
+     * ({@code cmp.auth.simulation.*}).  For load testing only.
+     */
+    public static class Simulation {
+
+        private LatencyDistribution.Shape   latencyShape = LatencyDistribution.Shape.LOG_NORMAL;
+
+        private double                      latencyMillis = 20.0;
+
+        private double                      latencyParameter = 0.5;
+
+        private double                      errorRate = 0.0;
+
+        private int                         responderThreads = 4;
+
+        private List<String>                defaultPermissions = new ArrayList<>();
+
+        private Map<String, List<String>>   sessionPermissions = new HashMap<>();
+
+
+        public LatencyDistribution.Shape getLatencyShape() {
+            return( latencyShape );
+        }
+
+        public void setLatencyShape( LatencyDistribution.Shape latencyShape ) {
+            this.latencyShape = latencyShape;
+        }
+
+        /**
+         * @return fixed latency, uniform minimum, exponential mean or log-normal median.
+         */
+        public double getLatencyMillis() {
+            return( latencyMillis );
+        }
+
+        public void setLatencyMillis( double latencyMillis ) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        /**
+         * @return uniform maximum (millis) or log-normal sigma; unused by the other shapes.
+         */
+        public double getLatencyParameter() {
+            return( latencyParameter );
+        }
+
+        public void setLatencyParameter( double latencyParameter ) {
+            this.latencyParameter = latencyParameter;
+        }
+
+        public double getErrorRate() {
+            return( errorRate );
+        }
+
+        public void setErrorRate( double errorRate ) {
+            this.errorRate = errorRate;
+        }
+
+        public int getResponderThreads() {
+            return( responderThreads );
+        }
+
+        public void setResponderThreads( int responderThreads ) {
+            this.responderThreads = responderThreads;
+        }
+
+        /**
+         * @return permissions granted to sessions not listed in {@link #getSessionPermissions()}.
+         */
+        public List<String> getDefaultPermissions() {
+            return( defaultPermissions );
+        }
+
+        public void setDefaultPermissions( List<String> defaultPermissions ) {
+            this.defaultPermissions = defaultPermissions;
+        }
+
+        /**
+         * @return permissions granted per session ID.
+         */
+        public Map<String, List<String>> getSessionPermissions() {
+            return( sessionPermissions );
+        }
+
+        public void setSessionPermissions( Map<String, List<String>> sessionPermissions ) {
+            this.sessionPermissions = sessionPermissions;
+        }
+    }
+
+
+}
@@ -0,0 +1,299 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+
+/**
+ * A small concurrent cache with a fixed time-to-live per entry and an upper
+ * bound on the number of entries.
+ * <p>
+ * Reads are lock free.  When a write pushes the cache over its bound a single
+ * writer sweeps it: expired entries go first, then arbitrary live entries until
+ * the cache is back under {@link #EVICTION_LOW_WATER_MARK} of its bound, so the
+ * sweep cost is amortized over many writes rather than paid on each one.
+ * <p>
+ * An optional stale retention keeps entries around for a while after they
+ * expire.  They are invisible to {@link #getIfPresent} but can still be read
+ * through {@link #getStale} when the source of truth is unavailable.
+ * <p>
+ * Two further options keep popular entries from all rolling over at once.  An expiry
+ * jitter shortens each entry's TTL by a random fraction, so entries written together
+ * expire at different times.  A refresh-ahead fraction marks the point in an entry's
+ * life after which {@link #claimRefresh} hands out, once, the job of reloading it while
+ * the old value is still being served.
+ */
+public class BoundedTtlCache<K, V> {
+
+    static final double EVICTION_LOW_WATER_MARK = 0.9;
+
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock                  sweepLock = new ReentrantLock();
+
+    private final int           maxSize;
+    private final long          ttlNanos;
+    private final long          staleRetentionNanos;
+    private final double        expiryJitter;
+    private final double        refreshAheadFraction;
+    private final LongSupplier  nanoClock;
+    private final DoubleSupplier random;
+
+    private final LongAdder     hits = new LongAdder();
+    private final LongAdder     misses = new LongAdder();
+    private final LongAdder     evictions = new LongAdder();
+    private final LongAdder     expirations = new LongAdder();
+    private final LongAdder     refreshes = new LongAdder();
+
+
+    public BoundedTtlCache( int maxSize, long ttl, TimeUnit ttlUnit ) {
+        this( maxSize, ttl, 0L, ttlUnit, System::nanoTime );
+    }
+
+
+    /**
+     * @param staleRetention how long past its TTL an entry stays readable through {@link #getStale}
+     */
+    public BoundedTtlCache( int maxSize, long ttl, long staleRetention, TimeUnit unit ) {
+        this( maxSize, ttl, staleRetention, unit, System::nanoTime );
+    }
+
+
+    /**
+     * @param staleRetention       how long past its TTL an entry stays readable through {@link #getStale}
+     * @param expiryJitter         largest fraction, in [0, 1), by which an entry's TTL is randomly shortened
+     * @param refreshAheadFraction fraction of an entry's (jittered) TTL after which it is due for a
+     *                             refresh; 1 turns refresh-ahead off
+     */
+    public BoundedTtlCache( int maxSize, long ttl, long staleRetention, TimeUnit unit,
+                            double expiryJitter, double refreshAheadFraction ) {
+
+        this( maxSize, ttl, staleRetention, unit, expiryJitter, refreshAheadFraction,
+              System::nanoTime, () -> ThreadLocalRandom.current().nextDouble() );
+    }
+
+
+    BoundedTtlCache( int maxSize, long ttl, TimeUnit ttlUnit, LongSupplier nanoClock ) {
+        this( maxSize, ttl, 0L, ttlUnit, nanoClock );
+    }
+
+
+    BoundedTtlCache( int maxSize, long ttl, long staleRetention, TimeUnit unit, LongSupplier nanoClock ) {
+        this( maxSize, ttl, staleRetention, unit, 0.0, 1.0, nanoClock, () -> 0.0 );
+    }
+
+
+    BoundedTtlCache( int             maxSize,
+                     long            ttl,
+                     long            staleRetention,
+                     TimeUnit        unit,
+                     double          expiryJitter,
+                     double          refreshAheadFraction,
+                     LongSupplier    nanoClock,
+                     DoubleSupplier  random ) {
+
+        Preconditions.checkArgument( maxSize > 0, "Cache size bound must be positive" );
+        Preconditions.checkArgument( ttl > 0L, "Cache TTL must be positive" );
+        Preconditions.checkArgument( staleRetention >= 0L, "Stale retention must not be negative" );
+        Preconditions.checkArgument( unit != null, "No TTL TimeUnit provided (null)" );
+        Preconditions.checkArgument( (expiryJitter >= 0.0) && (expiryJitter < 1.0), "Expiry jitter must be in [0, 1)" );
+        Preconditions.checkArgument( (refreshAheadFraction > 0.0) && (refreshAheadFraction <= 1.0),
+                                     "Refresh-ahead fraction must be in (0, 1]" );
+
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos( ttl );
+        this.staleRetentionNanos = unit.toNanos( staleRetention );
+        this.expiryJitter = expiryJitter;
+        this.refreshAheadFraction = refreshAheadFraction;
+        this.nanoClock = nanoClock;
+        this.random = random;
+    }
+
+
+    /**
+     * @return the cached value, or null if there is none or it has expired.
+     */
+    public V getIfPresent( K key ) {
+
+        Entry<V> entry = entries.get( key );
+
+        if ( entry == null ) {
+            misses.increment();
+            return( null );
+        }
+
+        long now = nanoClock.getAsLong();
+        if ( entry.isExpired( now ) ) {
+            if ( entry.isPastRetention( now, staleRetentionNanos ) && entries.remove( key, entry ) ) {
+                expirations.increment();
+            }
+            misses.increment();
+            return( null );
+        }
+
+        hits.increment();
+        return( entry.value );
+    }
+
+
+    /**
+     * Read an entry even if its TTL has elapsed, as long as it is still within the stale
+     * retention window.  Does not count towards the hit/miss statistics.
+     *
+     * @return the cached value, fresh or stale, or null if there is none.
+     */
+    public V getStale( K key ) {
+
+        Entry<V> entry = entries.get( key );
+
+        if ( (entry == null) || entry.isPastRetention( nanoClock.getAsLong(), staleRetentionNanos ) ) {
+            return( null );
+        }
+
+        return( entry.value );
+    }
+
+
+    public void put( K key, V value ) {
+
+        Preconditions.checkArgument( value != null, "Cannot cache a null value" );
+
+        long now = nanoClock.getAsLong();
+        long lifeNanos = ( expiryJitter > 0.0 ) ? (long) (ttlNanos * (1.0 - (expiryJitter * random.getAsDouble()))) : ttlNanos;
+        long refreshAtNanos = ( refreshAheadFraction < 1.0 ) ? now + (long) (lifeNanos * refreshAheadFraction) : now + lifeNanos;
+
+        entries.put( key, new Entry<>( value, refreshAtNanos, now + lifeNanos ) );
+
+        if ( entries.size() > maxSize ) {
+            sweep();
+        }
+    }
+
+
+    /**
+     * Claim the refresh of an entry that is past its refresh-ahead point but not yet expired.
+     * Only the first caller per entry gets true; it is then expected to load a new value and
+     * {@link #put} it.  Until it does, the current value keeps being served.
+     *
+     * @return true if the caller should refresh the entry.
+     */
+    public boolean claimRefresh( K key ) {
+
+        Entry<V> entry = entries.get( key );
+
+        if ( (entry == null) || (refreshAheadFraction >= 1.0) ) {
+            return( false );
+        }
+
+        long now = nanoClock.getAsLong();
+        if ( ((now - entry.refreshAtNanos) < 0L) || entry.isExpired( now ) || ! entry.refreshClaimed.compareAndSet( false, true ) ) {
+            return( false );
+        }
+
+        refreshes.increment();
+        return( true );
+    }
+
+
+    /**
+     * @return number of refreshes handed out by {@link #claimRefresh}.
+     */
+    public long refreshCount() {
+        return( refreshes.sum() );
+    }
+
+
+    public void invalidate( K key ) {
+        entries.remove( key );
+    }
+
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+
+    public int size() {
+        return( entries.size() );
+    }
+
+
+    public CacheStats stats() {
+        return( new CacheStats( hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), entries.size() ) );
+    }
+
+
+    private void sweep() {
+
+        // Only one writer needs to do this; everyone else can carry on.
+        if ( ! sweepLock.tryLock() ) {
+            return;
+        }
+
+        try {
+            long now = nanoClock.getAsLong();
+            int  target = (int) (maxSize * EVICTION_LOW_WATER_MARK);
+
+            // expired entries go first, even if still inside the stale retention window
+            Iterator<Map.Entry<K, Entry<V>>> iter = entries.entrySet().iterator();
+            while ( iter.hasNext() ) {
+                if ( iter.next().getValue().isExpired( now ) ) {
+                    iter.remove();
+                    expirations.increment();
+                }
+            }
+
+            iter = entries.entrySet().iterator();
+            while ( (entries.size() > target) && iter.hasNext() ) {
+                iter.next();
+                iter.remove();
+                evictions.increment();
+            }
+        }
+        finally {
+            sweepLock.unlock();
+        }
+    }
+
+
+    private static final class Entry<V> {
+
+        private final V             value;
+        private final long          refreshAtNanos;
+        private final long          expiresAtNanos;
+        private final AtomicBoolean refreshClaimed = new AtomicBoolean();
+
+
+        Entry( V value, long refreshAtNanos, long expiresAtNanos ) {
+            this.value = value;
+            this.refreshAtNanos = refreshAtNanos;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+
+        boolean isExpired( long nowNanos ) {
+            return( (nowNanos - expiresAtNanos) >= 0L );
+        }
+
+
+        boolean isPastRetention( long nowNanos, long retentionNanos ) {
+            return( (nowNanos - expiresAtNanos) >= retentionNanos );
+        }
+    }
+
+
+}
@@ -0,0 +1,78 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+
+/**
+ * Immutable point-in-time snapshot of the statistics kept by a {@link BoundedTtlCache}.
+ */
+public final class CacheStats {
+
+    public static final CacheStats EMPTY = new CacheStats( 0L, 0L, 0L, 0L, 0L );
+
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long size;
+
+
+    public CacheStats( long hitCount, long missCount, long evictionCount, long expirationCount, long size ) {
+
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+    }
+
+
+    public long getHitCount() {
+        return( hitCount );
+    }
+
+
+    public long getMissCount() {
+        return( missCount );
+    }
+
+
+    /**
+     * @return number of live entries removed to keep the cache within its size bound.
+     */
+    public long getEvictionCount() {
+        return( evictionCount );
+    }
+
+
+    /**
+     * @return number of entries dropped because their TTL had elapsed.
+     */
+    public long getExpirationCount() {
+        return( expirationCount );
+    }
+
+
+    public long getSize() {
+        return( size );
+    }
+
+
+    public double getHitRate() {
+
+        long requests = hitCount + missCount;
+        return( (requests == 0L) ? 0.0 : ((double) hitCount / requests) );
+    }
+
+
+    @Override
+    public String toString() {
+        return( String.format( "CacheStats[hits=%d, misses=%d, evictions=%d, expirations=%d, size=%d]",
+                               hitCount, missCount, evictionCount, expirationCount, size ) );
+    }
+
+
+}
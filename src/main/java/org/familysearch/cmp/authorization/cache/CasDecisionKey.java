@@ -0,0 +1,96 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * Immutable cache key for a CAS permission lookup: the session ID, the CAS
+ * context the lookup is made in, and the permissions requested as a
+ * {@link CmpPermissionMask} bitmask.
+ */
+public final class CasDecisionKey {
+
+    private final String        sessionId;
+    private final String        casContext;
+    private final long          permissionMask;
+    private final int           hash;
+
+
+    public CasDecisionKey( String sessionId, String casContext, long permissionMask ) {
+
+        this.sessionId = sessionId;
+        this.casContext = casContext;
+        this.permissionMask = permissionMask;
+        this.hash = (31 * Objects.hash( sessionId, casContext )) + Long.hashCode( permissionMask );
+    }
+
+
+    /**
+     * @param permissions CmpPermission names; names that are not CmpPermissions are ignored.
+     */
+    public CasDecisionKey( String sessionId, String casContext, List<String> permissions ) {
+        this( sessionId, casContext, CmpPermissionMask.ofNames( permissions ) );
+    }
+
+
+    public String getSessionId() {
+        return( sessionId );
+    }
+
+
+    public String getCasContext() {
+        return( casContext );
+    }
+
+
+    public long getPermissionMask() {
+        return( permissionMask );
+    }
+
+
+    /**
+     * @return the requested permission names, as sent to CAS (a shared, immutable list).
+     */
+    public List<String> getPermissions() {
+        return( CmpPermissionMask.names( permissionMask ) );
+    }
+
+
+    @Override
+    public boolean equals( Object other ) {
+
+        if ( this == other ) {
+            return( true );
+        }
+        if ( !(other instanceof CasDecisionKey) ) {
+            return( false );
+        }
+
+        CasDecisionKey that = (CasDecisionKey) other;
+        return( (hash == that.hash)
+                && (permissionMask == that.permissionMask)
+                && Objects.equals( sessionId, that.sessionId )
+                && Objects.equals( casContext, that.casContext ) );
+    }
+
+
+    @Override
+    public int hashCode() {
+        return( hash );
+    }
+
+
+    @Override
+    public String toString() {
+        return( String.format( "CasDecisionKey[casContext=%s, permissions=%s]", casContext, getPermissions() ) );
+    }
+
+
+}
@@ -0,0 +1,61 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Short-lived memory of negative results (denied CAS lookups, unauthenticated sessions),
+ * so a client retrying a forbidden request is answered locally instead of driving
+ * identity service load.  Kept apart from the grant cache, with its own size bound and a
+ * shorter TTL, so a burst of denials can neither evict grants nor outlive a grant made
+ * shortly afterwards by much.
+ */
+public class NegativeResultCache<K> {
+
+    private final BoundedTtlCache<K, Boolean> cache;
+
+
+    public NegativeResultCache( int maxSize, long ttl, TimeUnit ttlUnit ) {
+        this.cache = new BoundedTtlCache<>( maxSize, ttl, ttlUnit );
+    }
+
+
+    NegativeResultCache( int maxSize, long ttl, TimeUnit ttlUnit, LongSupplier nanoClock ) {
+        this.cache = new BoundedTtlCache<>( maxSize, ttl, ttlUnit, nanoClock );
+    }
+
+
+    /**
+     * @return true if a negative result for the key was recorded within the TTL.
+     */
+    public boolean contains( K key ) {
+        return( cache.getIfPresent( key ) != null );
+    }
+
+
+    public void add( K key ) {
+        cache.put( key, Boolean.TRUE );
+    }
+
+
+    public void remove( K key ) {
+        cache.invalidate( key );
+    }
+
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+
+    public CacheStats stats() {
+        return( cache.stats() );
+    }
+
+
+}
@@ -0,0 +1,49 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import org.familysearch.identity.api.PermissionSet;
+
+
+/**
+ * {@link PermissionDecisionCache} that never holds anything; every lookup goes to CAS.
+ */
+public final class NoOpPermissionDecisionCache implements PermissionDecisionCache {
+
+    public static final NoOpPermissionDecisionCache INSTANCE = new NoOpPermissionDecisionCache();
+
+
+    private NoOpPermissionDecisionCache() {
+    }
+
+
+    @Override
+    public PermissionSet getIfPresent( CasDecisionKey key ) {
+        return( null );
+    }
+
+
+    @Override
+    public void put( CasDecisionKey key, PermissionSet permissionSet ) {
+    }
+
+
+    @Override
+    public void invalidate( CasDecisionKey key ) {
+    }
+
+
+    @Override
+    public void invalidateAll() {
+    }
+
+
+    @Override
+    public CacheStats stats() {
+        return( CacheStats.EMPTY );
+    }
+
+
+}
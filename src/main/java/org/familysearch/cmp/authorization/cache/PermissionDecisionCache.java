@@ -0,0 +1,53 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import org.familysearch.identity.api.PermissionSet;
+
+
+/**
+ * Cache of {@link PermissionSet} results returned by the CAS identity service,
+ * consulted by the CASAuthorizationFilter before it makes a remote call.
+ * Implementations must be thread-safe.
+ */
+public interface PermissionDecisionCache {
+
+    /**
+     * @return the cached permission set for the key, or null on a miss.
+     */
+    PermissionSet getIfPresent( CasDecisionKey key );
+
+    /**
+     * Read a cached permission set even if it is past its TTL, for use while CAS is
+     * unavailable.  Caches without stale retention just return null.
+     *
+     * @return the cached permission set, fresh or stale, or null if there is none.
+     */
+    default PermissionSet getStale( CasDecisionKey key ) {
+        return( null );
+    }
+
+    /**
+     * Claim the background refresh of an entry nearing its expiry.  At most one caller per
+     * cached entry gets true.  Caches without refresh-ahead just return false.
+     *
+     * @return true if the caller should reload the permission set and {@link #put} it.
+     */
+    default boolean claimRefresh( CasDecisionKey key ) {
+        return( false );
+    }
+
+    void put( CasDecisionKey key, PermissionSet permissionSet );
+
+    /**
+     * Drop the cached permission set for the key, fresh or stale.
+     */
+    void invalidate( CasDecisionKey key );
+
+    void invalidateAll();
+
+    CacheStats stats();
+
+}
@@ -0,0 +1,92 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import org.familysearch.identity.api.PermissionSet;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * {@link PermissionDecisionCache} backed by a {@link BoundedTtlCache}.
+ */
+public class TtlPermissionDecisionCache implements PermissionDecisionCache {
+
+    private final BoundedTtlCache<CasDecisionKey, PermissionSet> cache;
+
+
+    public TtlPermissionDecisionCache( int maxSize, long ttl, TimeUnit ttlUnit ) {
+        this( new BoundedTtlCache<>( maxSize, ttl, ttlUnit ) );
+    }
+
+
+    /**
+     * @param staleRetention how long past its TTL a permission set can still be read via {@link #getStale}
+     */
+    public TtlPermissionDecisionCache( int maxSize, long ttl, long staleRetention, TimeUnit unit ) {
+        this( new BoundedTtlCache<>( maxSize, ttl, staleRetention, unit ) );
+    }
+
+
+    /**
+     * @param staleRetention       how long past its TTL a permission set can still be read via {@link #getStale}
+     * @param expiryJitter         largest fraction by which an entry's TTL is randomly shortened
+     * @param refreshAheadFraction fraction of the TTL after which {@link #claimRefresh} hands out a refresh
+     */
+    public TtlPermissionDecisionCache( int maxSize, long ttl, long staleRetention, TimeUnit unit,
+                                       double expiryJitter, double refreshAheadFraction ) {
+
+        this( new BoundedTtlCache<>( maxSize, ttl, staleRetention, unit, expiryJitter, refreshAheadFraction ) );
+    }
+
+
+    TtlPermissionDecisionCache( BoundedTtlCache<CasDecisionKey, PermissionSet> cache ) {
+        this.cache = cache;
+    }
+
+
+    @Override
+    public PermissionSet getIfPresent( CasDecisionKey key ) {
+        return( cache.getIfPresent( key ) );
+    }
+
+
+    @Override
+    public PermissionSet getStale( CasDecisionKey key ) {
+        return( cache.getStale( key ) );
+    }
+
+
+    @Override
+    public boolean claimRefresh( CasDecisionKey key ) {
+        return( cache.claimRefresh( key ) );
+    }
+
+
+    @Override
+    public void put( CasDecisionKey key, PermissionSet permissionSet ) {
+        cache.put( key, permissionSet );
+    }
+
+
+    @Override
+    public void invalidate( CasDecisionKey key ) {
+        cache.invalidate( key );
+    }
+
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+
+    @Override
+    public CacheStats stats() {
+        return( cache.stats() );
+    }
+
+
+}
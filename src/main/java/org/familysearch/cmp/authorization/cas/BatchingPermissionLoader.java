@@ -0,0 +1,338 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.cmp.authorization.util.NamedDaemonThreadFactory;
+import org.familysearch.identity.api.PermissionSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * {@link PermissionSetLoader} that gathers lookups for a short linger window and
+ * sends them to the identity tier as grouped calls.
+ * <p>
+ * The CAS API answers one session and one CAS context per call, so a batch is
+ * grouped on that pair: every lookup in the batch for the same session and
+ * context is folded into a single call asking for the union of their permission
+ * names, and each waiting caller is handed the shared answer.  Callers only look
+ * at the permissions they asked for, so sharing the wider answer is safe.
+ * <p>
+ * A batch is dispatched when it reaches {@code maxBatchSize} lookups or when the
+ * oldest lookup in it has waited {@code maxLinger}, whichever comes first.
+ * <p>
+ * Grouped calls answered with plain futures are waited on by completer threads, at most
+ * for the {@link #setCallTimeout call timeout}; a call that takes longer fails every
+ * lookup of its group with a {@link TimeoutException}, so a hung identity call can't pin
+ * a completer thread.
+ * <p>
+ * Closing the loader cancels every lookup not yet dispatched: its future completes with a
+ * {@link CancellationException}, so no caller is left waiting on a batch that will never
+ * be sent.
+ */
+public class BatchingPermissionLoader implements PermissionSetLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( BatchingPermissionLoader.class );
+
+
+    private final PermissionSetLoader           delegate;
+    private final int                           maxBatchSize;
+    private final long                          maxLingerNanos;
+
+    private final BlockingQueue<PendingLoad>    pending = new LinkedBlockingQueue<>();
+    private final ExecutorService               dispatcher;
+    private final ExecutorService               completer;
+
+    private final LongAdder                     batches = new LongAdder();
+    private final LongAdder                     groupedCalls = new LongAdder();
+    private final LongAdder                     lookups = new LongAdder();
+
+    private volatile boolean                    running = true;
+    private volatile long                       callTimeoutMillis = TimeUnit.SECONDS.toMillis( 10L );
+
+
+    /**
+     * @param loader           loader that makes the actual (grouped) CAS calls
+     * @param maxBatchSize     most lookups gathered into one batch
+     * @param maxLinger        longest a lookup waits for the batch to fill
+     * @param lingerUnit       unit of {@code maxLinger}
+     * @param completerThreads threads waiting on grouped calls and handing out their results
+     */
+    public BatchingPermissionLoader( PermissionSetLoader  loader,
+                                     int                  maxBatchSize,
+                                     long                 maxLinger,
+                                     TimeUnit             lingerUnit,
+                                     int                  completerThreads ) {
+
+        Preconditions.checkArgument( loader != null, "No PermissionSetLoader object provided (null)" );
+        Preconditions.checkArgument( maxBatchSize > 0, "Batch size must be positive" );
+        Preconditions.checkArgument( maxLinger >= 0L, "Linger time must not be negative" );
+        Preconditions.checkArgument( lingerUnit != null, "No linger TimeUnit provided (null)" );
+        Preconditions.checkArgument( completerThreads > 0, "Completer thread count must be positive" );
+
+        this.delegate = loader;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = lingerUnit.toNanos( maxLinger );
+
+        this.completer = Executors.newFixedThreadPool( completerThreads, new NamedDaemonThreadFactory( "cas-batch-completer" ) );
+        this.dispatcher = Executors.newSingleThreadExecutor( new NamedDaemonThreadFactory( "cas-batch-dispatcher" ) );
+        this.dispatcher.execute( this::dispatchLoop );
+    }
+
+
+    /**
+     * Set the longest a completer thread waits on a grouped call, normally the CAS latency
+     * budget.  Configure before the loader is put into service.
+     *
+     * @param timeout longest wait; must be positive
+     * @param unit    unit of {@code timeout}
+     */
+    public void setCallTimeout( long timeout, TimeUnit unit ) {
+
+        Preconditions.checkArgument( timeout > 0L, "Call timeout must be positive" );
+        Preconditions.checkArgument( unit != null, "No TimeUnit provided (null)" );
+        callTimeoutMillis = unit.toMillis( timeout );
+    }
+
+
+    @Override
+    public Future<PermissionSet> load( CasDecisionKey key ) {
+
+        Preconditions.checkState( running, "BatchingPermissionLoader has been closed" );
+
+        PendingLoad load = new PendingLoad( key );
+        lookups.increment();
+        pending.add( load );
+        if ( ! running && pending.remove( load ) ) {
+            // closed while this was being queued; close() may already have drained the queue
+            cancel( load );
+        }
+        return( load.result );
+    }
+
+
+    @Override
+    public void close() {
+
+        running = false;
+        dispatcher.shutdownNow();
+        completer.shutdown();
+
+        cancelPending();
+        delegate.close();
+    }
+
+
+    /**
+     * @return number of batches dispatched.
+     */
+    public long batchCount() {
+        return( batches.sum() );
+    }
+
+
+    /**
+     * @return number of calls made to the delegate loader.
+     */
+    public long groupedCallCount() {
+        return( groupedCalls.sum() );
+    }
+
+
+    /**
+     * @return number of lookups accepted.
+     */
+    public long lookupCount() {
+        return( lookups.sum() );
+    }
+
+
+    private void dispatchLoop() {
+
+        List<PendingLoad> batch = new ArrayList<>( maxBatchSize );
+
+        while ( running ) {
+            try {
+                batch.add( pending.take() );
+
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while ( batch.size() < maxBatchSize ) {
+                    PendingLoad next = pending.poll( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+                    if ( next == null ) {
+                        break;
+                    }
+                    batch.add( next );
+                }
+
+                dispatch( batch );
+            }
+            catch( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                running = false;
+                for ( PendingLoad load : batch ) {
+                    cancel( load );
+                }
+            }
+            catch( RuntimeException ex ) {
+                // never let the dispatcher die; fail this batch and carry on
+                LOGGER.error( "CAS batch dispatch failed: {}", ex.getMessage() );
+                for ( PendingLoad load : batch ) {
+                    load.result.completeExceptionally( ex );
+                }
+            }
+            finally {
+                batch.clear();
+            }
+        }
+
+        cancelPending();
+    }
+
+
+    private void cancelPending() {
+
+        PendingLoad load;
+        while ( (load = pending.poll()) != null ) {
+            cancel( load );
+        }
+    }
+
+
+    private static void cancel( PendingLoad load ) {
+        load.result.completeExceptionally( new CancellationException( "BatchingPermissionLoader closed" ) );
+    }
+
+
+    private void dispatch( List<PendingLoad> batch ) {
+
+        Map<GroupKey, List<PendingLoad>> groups = new LinkedHashMap<>();
+        for ( PendingLoad load : batch ) {
+            groups.computeIfAbsent( new GroupKey( load.key ), g -> new ArrayList<>() ).add( load );
+        }
+
+        batches.increment();
+
+        for ( Map.Entry<GroupKey, List<PendingLoad>> group : groups.entrySet() ) {
+            List<PendingLoad> waiters = group.getValue();
+
+            long permissionMask = 0L;
+            for ( PendingLoad load : waiters ) {
+                permissionMask |= load.key.getPermissionMask();
+            }
+
+            CasDecisionKey groupKey = new CasDecisionKey( group.getKey().sessionId,
+                                                          group.getKey().casContext,
+                                                          permissionMask );
+            try {
+                groupedCalls.increment();
+                Future<PermissionSet> call = delegate.load( groupKey );
+
+                if ( call instanceof CompletableFuture ) {
+                    ((CompletableFuture<?>) call).whenComplete( ( result, error ) -> complete( waiters, (PermissionSet) result, error ) );
+                }
+                else {
+                    completer.execute( () -> awaitAndComplete( call, waiters ) );
+                }
+            }
+            catch( RuntimeException ex ) {
+                complete( waiters, null, ex );
+            }
+        }
+    }
+
+
+    private void awaitAndComplete( Future<PermissionSet> call, List<PendingLoad> waiters ) {
+
+        try {
+            complete( waiters, call.get( callTimeoutMillis, TimeUnit.MILLISECONDS ), null );
+        }
+        catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            complete( waiters, null, ex );
+        }
+        catch( TimeoutException ex ) {
+            LOGGER.debug( "Grouped CAS call exceeded {} ms; failing {} lookups", callTimeoutMillis, waiters.size() );
+            complete( waiters, null, ex );
+        }
+        catch( Exception ex ) {
+            complete( waiters, null, (ex.getCause() != null) ? ex.getCause() : ex );
+        }
+    }
+
+
+    private static void complete( List<PendingLoad> waiters, PermissionSet result, Throwable error ) {
+
+        for ( PendingLoad load : waiters ) {
+            if ( error != null ) {
+                load.result.completeExceptionally( error );
+            }
+            else {
+                load.result.complete( result );
+            }
+        }
+    }
+
+
+    private static final class PendingLoad {
+
+        private final CasDecisionKey                    key;
+        private final CompletableFuture<PermissionSet>  result = new CompletableFuture<>();
+
+
+        PendingLoad( CasDecisionKey key ) {
+            this.key = key;
+        }
+    }
+
+
+    private static final class GroupKey {
+
+        private final String sessionId;
+        private final String casContext;
+
+
+        GroupKey( CasDecisionKey key ) {
+            this.sessionId = key.getSessionId();
+            this.casContext = key.getCasContext();
+        }
+
+
+        @Override
+        public boolean equals( Object other ) {
+
+            if ( !(other instanceof GroupKey) ) {
+                return( false );
+            }
+            GroupKey that = (GroupKey) other;
+            return( Objects.equals( sessionId, that.sessionId ) && Objects.equals( casContext, that.casContext ) );
+        }
+
+
+        @Override
+        public int hashCode() {
+            return( Objects.hash( sessionId, casContext ) );
+        }
+    }
+
+
+}
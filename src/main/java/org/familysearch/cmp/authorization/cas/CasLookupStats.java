@@ -0,0 +1,89 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Running totals for the time request threads spend waiting on CAS lookups.
+ * Cheap enough to update on every call; read it to tune the latency budget.
+ */
+public class CasLookupStats {
+
+    private final LongAdder        lookups = new LongAdder();
+    private final LongAdder        waitNanos = new LongAdder();
+    private final LongAccumulator  maxWaitNanos = new LongAccumulator( Math::max, 0L );
+    private final LongAdder        timeouts = new LongAdder();
+    private final LongAdder        errors = new LongAdder();
+
+
+    /**
+     * Record a lookup that produced an answer after waiting {@code nanos}.
+     */
+    public void recordWait( long nanos ) {
+
+        lookups.increment();
+        waitNanos.add( nanos );
+        maxWaitNanos.accumulate( nanos );
+    }
+
+
+    /**
+     * Record a lookup abandoned after waiting out its budget of {@code nanos}.
+     */
+    public void recordTimeout( long nanos ) {
+
+        timeouts.increment();
+        recordWait( nanos );
+    }
+
+
+    public void recordError() {
+        errors.increment();
+    }
+
+
+    /**
+     * @return number of lookups waited on, including those that timed out.
+     */
+    public long getLookupCount() {
+        return( lookups.sum() );
+    }
+
+
+    public long getTimeoutCount() {
+        return( timeouts.sum() );
+    }
+
+
+    public long getErrorCount() {
+        return( errors.sum() );
+    }
+
+
+    public long getMaxWait( TimeUnit unit ) {
+        return( unit.convert( maxWaitNanos.get(), TimeUnit.NANOSECONDS ) );
+    }
+
+
+    public double getMeanWaitMillis() {
+
+        long count = lookups.sum();
+        return( (count == 0L) ? 0.0 : (waitNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos( 1L )) );
+    }
+
+
+    @Override
+    public String toString() {
+        return( String.format( "CasLookupStats[lookups=%d, timeouts=%d, errors=%d, meanWaitMs=%.2f, maxWaitMs=%d]",
+                               getLookupCount(), getTimeoutCount(), getErrorCount(),
+                               getMeanWaitMillis(), getMaxWait( TimeUnit.MILLISECONDS ) ) );
+    }
+
+
+}
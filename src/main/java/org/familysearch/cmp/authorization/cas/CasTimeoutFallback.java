@@ -0,0 +1,22 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+
+/**
+ * What the CASAuthorizationFilter decides when CAS does not answer within the latency budget.
+ */
+public enum CasTimeoutFallback {
+
+    // Defer to the next filter in the chain, the same as for any other CAS failure.
+    CHAIN,
+
+    // Deny without consulting the rest of the chain.
+    DENY,
+
+    // Grant without consulting the rest of the chain (fail open).
+    GRANT
+
+}
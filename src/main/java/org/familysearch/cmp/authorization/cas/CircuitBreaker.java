@@ -0,0 +1,292 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Circuit breaker guarding calls to the identity service.
+ * <p>
+ * While CLOSED every call is allowed and its outcome recorded in a sliding window
+ * of the most recent calls.  Once the window holds at least {@code minimumCalls}
+ * outcomes and either the failure rate or the slow-call rate reaches its threshold,
+ * the breaker trips OPEN and refuses calls for {@code openDuration}.  After that it
+ * goes HALF_OPEN and lets {@code halfOpenTrials} calls through: if they all succeed
+ * in time it closes again, otherwise it re-opens.  A trial still outstanding after
+ * the slow-call threshold could only end as a slow call, so once every trial has been
+ * issued and the most recent one is that old, the breaker counts the outstanding
+ * trials as failed and re-opens rather than waiting on them indefinitely.
+ * <p>
+ * Each permit {@link #tryAcquire} hands out names the breaker generation it was issued
+ * in, and a new generation starts whenever the state changes.  An outcome reported
+ * with a permit from an earlier generation, such as the late answer of an abandoned
+ * trial or of a call made before the breaker tripped, is ignored; it cannot be taken
+ * for the outcome of a call made since.
+ * <p>
+ * Only lookups that actually reach CAS pass through the breaker, so the monitor
+ * lock it uses is never on the cache-hit path.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( CircuitBreaker.class );
+
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+
+    /**
+     * Returned by {@link #tryAcquire} when the call must not be made.
+     */
+    public static final long NO_PERMIT = -1L;
+
+
+    private final String        name;
+    private final int           minimumCalls;
+    private final double        failureRateThreshold;
+    private final double        slowCallRateThreshold;
+    private final long          slowCallNanos;
+    private final long          openDurationNanos;
+    private final int           halfOpenTrials;
+    private final LongSupplier  nanoClock;
+
+    // sliding window of recent outcomes, guarded by 'this'
+    private final boolean[]     windowFailed;
+    private final boolean[]     windowSlow;
+    private int                 windowNext;
+    private int                 windowCount;
+    private int                 windowFailures;
+    private int                 windowSlowCalls;
+
+    private volatile State      state = State.CLOSED;
+    private long                generation;
+    private long                openUntilNanos;
+    private int                 trialsIssued;
+    private int                 trialsSucceeded;
+    private long                lastTrialNanos;
+    private long                tripCount;
+
+
+    /**
+     * @param name                  name used in log messages
+     * @param windowSize            number of recent calls the rates are computed over
+     * @param minimumCalls          calls needed in the window before it can trip
+     * @param failureRateThreshold  failure fraction (0..1] that trips the breaker
+     * @param slowCallRateThreshold slow-call fraction (0..1] that trips the breaker
+     * @param slowCallMillis        calls taking at least this long count as slow
+     * @param openDurationMillis    how long the breaker stays open before probing
+     * @param halfOpenTrials        probe calls allowed while half-open
+     */
+    public CircuitBreaker( String   name,
+                           int      windowSize,
+                           int      minimumCalls,
+                           double   failureRateThreshold,
+                           double   slowCallRateThreshold,
+                           long     slowCallMillis,
+                           long     openDurationMillis,
+                           int      halfOpenTrials ) {
+
+        this( name, windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold,
+              slowCallMillis, openDurationMillis, halfOpenTrials, System::nanoTime );
+    }
+
+
+    CircuitBreaker( String          name,
+                    int             windowSize,
+                    int             minimumCalls,
+                    double          failureRateThreshold,
+                    double          slowCallRateThreshold,
+                    long            slowCallMillis,
+                    long            openDurationMillis,
+                    int             halfOpenTrials,
+                    LongSupplier    nanoClock ) {
+
+        Preconditions.checkArgument( windowSize > 0, "Window size must be positive" );
+        Preconditions.checkArgument( (minimumCalls > 0) && (minimumCalls <= windowSize),
+                                     "Minimum calls must be between 1 and the window size" );
+        Preconditions.checkArgument( (failureRateThreshold > 0.0) && (failureRateThreshold <= 1.0),
+                                     "Failure rate threshold must be in (0, 1]" );
+        Preconditions.checkArgument( (slowCallRateThreshold > 0.0) && (slowCallRateThreshold <= 1.0),
+                                     "Slow call rate threshold must be in (0, 1]" );
+        Preconditions.checkArgument( slowCallMillis > 0L, "Slow call threshold must be positive" );
+        Preconditions.checkArgument( openDurationMillis > 0L, "Open duration must be positive" );
+        Preconditions.checkArgument( halfOpenTrials > 0, "Half-open trial count must be positive" );
+
+        this.name = name;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos( slowCallMillis );
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos( openDurationMillis );
+        this.halfOpenTrials = halfOpenTrials;
+        this.nanoClock = nanoClock;
+
+        this.windowFailed = new boolean[ windowSize ];
+        this.windowSlow = new boolean[ windowSize ];
+    }
+
+
+    /**
+     * Ask permission to make a call.  Every call allowed must be followed by exactly one
+     * {@link #onSuccess} or {@link #onFailure}, passing back the permit returned here.
+     *
+     * @return the call's permit, or {@link #NO_PERMIT} if the breaker is open (or out of
+     *         half-open trials) and the call must not be made.
+     */
+    public synchronized long tryAcquire() {
+
+        if ( state == State.OPEN ) {
+            if ( (nanoClock.getAsLong() - openUntilNanos) < 0L ) {
+                return( NO_PERMIT );
+            }
+            state = State.HALF_OPEN;
+            generation++;
+            trialsIssued = 0;
+            trialsSucceeded = 0;
+            LOGGER.info( "Circuit breaker '{}' half-open; probing", name );
+        }
+
+        if ( state == State.HALF_OPEN ) {
+            if ( trialsIssued >= halfOpenTrials ) {
+                if ( (nanoClock.getAsLong() - lastTrialNanos) >= slowCallNanos ) {
+                    trip( "half-open trial timed out" );
+                }
+                return( NO_PERMIT );
+            }
+            trialsIssued++;
+            lastTrialNanos = nanoClock.getAsLong();
+        }
+
+        return( generation );
+    }
+
+
+    /**
+     * Record a call that completed normally.
+     *
+     * @param permit the call's permit from {@link #tryAcquire}
+     */
+    public synchronized void onSuccess( long permit, long elapsedNanos ) {
+
+        if ( permit != generation ) {
+            return;
+        }
+
+        boolean slow = elapsedNanos >= slowCallNanos;
+
+        if ( state == State.HALF_OPEN ) {
+            if ( slow ) {
+                trip( "slow half-open trial" );
+            }
+            else if ( ++trialsSucceeded >= halfOpenTrials ) {
+                state = State.CLOSED;
+                generation++;
+                resetWindow();
+                LOGGER.info( "Circuit breaker '{}' closed", name );
+            }
+        }
+        else if ( state == State.CLOSED ) {
+            record( false, slow );
+        }
+    }
+
+
+    /**
+     * Record a call that failed.
+     *
+     * @param permit the call's permit from {@link #tryAcquire}
+     */
+    public synchronized void onFailure( long permit, long elapsedNanos ) {
+
+        if ( permit != generation ) {
+            return;
+        }
+
+        if ( state == State.HALF_OPEN ) {
+            trip( "failed half-open trial" );
+        }
+        else if ( state == State.CLOSED ) {
+            record( true, elapsedNanos >= slowCallNanos );
+        }
+    }
+
+
+    public State getState() {
+        return( state );
+    }
+
+
+    public synchronized long getTripCount() {
+        return( tripCount );
+    }
+
+
+    private void record( boolean failed, boolean slow ) {
+
+        if ( windowCount == windowFailed.length ) {
+            // overwrite the oldest outcome
+            if ( windowFailed[ windowNext ] ) {
+                windowFailures--;
+            }
+            if ( windowSlow[ windowNext ] ) {
+                windowSlowCalls--;
+            }
+        }
+        else {
+            windowCount++;
+        }
+
+        windowFailed[ windowNext ] = failed;
+        windowSlow[ windowNext ] = slow;
+        windowNext = (windowNext + 1) % windowFailed.length;
+
+        if ( failed ) {
+            windowFailures++;
+        }
+        if ( slow ) {
+            windowSlowCalls++;
+        }
+
+        if ( windowCount >= minimumCalls ) {
+            if ( windowFailures >= (failureRateThreshold * windowCount) ) {
+                trip( "failure rate" );
+            }
+            else if ( windowSlowCalls >= (slowCallRateThreshold * windowCount) ) {
+                trip( "slow call rate" );
+            }
+        }
+    }
+
+
+    private void trip( String reason ) {
+
+        state = State.OPEN;
+        generation++;
+        openUntilNanos = nanoClock.getAsLong() + openDurationNanos;
+        tripCount++;
+        resetWindow();
+        LOGGER.warn( "Circuit breaker '{}' opened ({}); refusing calls for {} ms",
+                     name, reason, TimeUnit.NANOSECONDS.toMillis( openDurationNanos ) );
+    }
+
+
+    private void resetWindow() {
+
+        Arrays.fill( windowFailed, false );
+        Arrays.fill( windowSlow, false );
+        windowNext = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        windowSlowCalls = 0;
+    }
+
+
+}
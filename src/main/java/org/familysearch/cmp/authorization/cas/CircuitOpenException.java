@@ -0,0 +1,18 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+
+/**
+ * Thrown when a CAS lookup is refused because the identity service circuit breaker
+ * is open and no recent enough cached answer is available.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException( String message ) {
+        super( message );
+    }
+
+}
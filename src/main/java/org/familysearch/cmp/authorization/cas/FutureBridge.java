@@ -0,0 +1,144 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.util.NamedDaemonThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Turns the plain {@link Future}s handed out by the identity service into
+ * {@link CompletableFuture}s, with an optional deadline, so request threads never
+ * have to block on them.
+ * <p>
+ * Futures that are also CompletionStages, or are already done, are bridged without
+ * any extra thread.  Anything else is waited on by one of a small pool of waiter
+ * threads; that is the only blocking left, and it is off the servlet pool.
+ * <p>
+ * The deadline is scheduled when the future is handed over, so time spent queued for a
+ * waiter counts against it.  The waiters' queue is bounded: when it is full the bridged
+ * future fails at once with a {@link RejectedExecutionException} instead of queueing
+ * behind work that would outlive its own deadline.
+ */
+public class FutureBridge implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+
+    private final ExecutorService           waiters;
+    private final ScheduledExecutorService  deadlines;
+
+
+    public FutureBridge( int waiterThreads ) {
+        this( waiterThreads, DEFAULT_QUEUE_CAPACITY );
+    }
+
+
+    /**
+     * @param waiterThreads threads that wait on futures which can't call back
+     * @param queueCapacity futures that may wait for a free waiter thread
+     */
+    public FutureBridge( int waiterThreads, int queueCapacity ) {
+
+        Preconditions.checkArgument( waiterThreads > 0, "Waiter thread count must be positive" );
+        Preconditions.checkArgument( queueCapacity > 0, "Waiter queue capacity must be positive" );
+
+        this.waiters = new ThreadPoolExecutor( waiterThreads, waiterThreads, 0L, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>( queueCapacity ),
+                                               new NamedDaemonThreadFactory( "cas-future-waiter" ) );
+        this.deadlines = Executors.newSingleThreadScheduledExecutor( new NamedDaemonThreadFactory( "cas-future-deadline" ) );
+    }
+
+
+    /**
+     * @param future       future to bridge; it is never completed or cancelled by the bridge
+     * @param budgetMillis deadline after which the returned future fails with a
+     *                     {@link TimeoutException}; zero or less waits without limit
+     * @return a CompletableFuture that completes when {@code future} does, at the deadline,
+     *         or at once with a {@link RejectedExecutionException} if no waiter can take it
+     */
+    public <T> CompletableFuture<T> toCompletable( Future<T> future, long budgetMillis ) {
+
+        CompletableFuture<T> bridged = new CompletableFuture<>();
+
+        if ( future.isDone() ) {
+            await( future, 0L, bridged );
+            return( bridged );
+        }
+
+        if ( budgetMillis > 0L ) {
+            ScheduledFuture<?> deadline = deadlines.schedule( () -> bridged.completeExceptionally( new TimeoutException() ),
+                                                              budgetMillis, TimeUnit.MILLISECONDS );
+            bridged.whenComplete( ( value, error ) -> deadline.cancel( false ) );
+        }
+
+        if ( future instanceof CompletionStage ) {
+            // done by the time the callback runs, so reading it doesn't block
+            ((CompletionStage<?>) future).whenComplete( ( value, error ) -> await( future, 0L, bridged ) );
+        }
+        else {
+            final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( budgetMillis );
+            try {
+                waiters.execute( () -> {
+                    long remainingNanos = deadlineNanos - System.nanoTime();
+                    // skip it if the deadline already failed it while it was queued
+                    if ( ! bridged.isDone() && ((budgetMillis <= 0L) || (remainingNanos > 0L)) ) {
+                        await( future, ( budgetMillis > 0L ) ? remainingNanos : 0L, bridged );
+                    }
+                } );
+            }
+            catch( RejectedExecutionException ex ) {
+                bridged.completeExceptionally( ex );
+            }
+        }
+
+        return( bridged );
+    }
+
+
+    @Override
+    public void close() {
+
+        waiters.shutdownNow();
+        deadlines.shutdownNow();
+    }
+
+
+    /**
+     * @param budgetNanos longest to wait; zero waits without limit
+     */
+    private static <T> void await( Future<T> future, long budgetNanos, CompletableFuture<T> bridged ) {
+
+        try {
+            bridged.complete( (budgetNanos > 0L) ? future.get( budgetNanos, TimeUnit.NANOSECONDS ) : future.get() );
+        }
+        catch( ExecutionException ex ) {
+            bridged.completeExceptionally( (ex.getCause() != null) ? ex.getCause() : ex );
+        }
+        catch( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            bridged.completeExceptionally( ex );
+        }
+        catch( TimeoutException | RuntimeException ex ) {
+            bridged.completeExceptionally( ex );
+        }
+    }
+
+
+}
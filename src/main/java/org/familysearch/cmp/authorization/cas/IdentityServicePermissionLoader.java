@@ -0,0 +1,36 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.identity.api.IdentityService;
+import org.familysearch.identity.api.PermissionSet;
+
+import java.util.concurrent.Future;
+
+
+/**
+ * {@link PermissionSetLoader} that makes one {@link IdentityService#isAuthorized} call per load.
+ */
+public class IdentityServicePermissionLoader implements PermissionSetLoader {
+
+    private final IdentityService identityService;
+
+
+    public IdentityServicePermissionLoader( IdentityService identService ) {
+
+        Preconditions.checkArgument( identService != null, "No IdentityService object provided (null)" );
+        this.identityService = identService;
+    }
+
+
+    @Override
+    public Future<PermissionSet> load( CasDecisionKey key ) {
+        return( identityService.isAuthorized( key.getSessionId(), key.getCasContext(), key.getPermissions() ) );
+    }
+
+
+}
@@ -0,0 +1,35 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.identity.api.PermissionSet;
+
+import java.util.concurrent.Future;
+
+
+/**
+ * Source of CAS {@link PermissionSet} lookups used by the CASAuthorizationFilter.
+ * Implementations either call the identity service or decorate another loader.
+ */
+public interface PermissionSetLoader extends AutoCloseable {
+
+    /**
+     * Start (or join) the lookup of the permissions named in the key.
+     *
+     * @param key session ID, CAS context and requested permission names
+     * @return a future holding the CAS answer
+     */
+    Future<PermissionSet> load( CasDecisionKey key );
+
+
+    /**
+     * Release any background resources.  Decorators pass this on to the loader they wrap.
+     */
+    @Override
+    default void close() {
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.identity.api.PermissionSet;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+
+/**
+ * {@link PermissionSetLoader} decorator that coalesces concurrent identical lookups.
+ * <p>
+ * While a lookup for a key is outstanding, every other caller asking for the same
+ * key joins it instead of starting another CAS call.  The entry leaves the in-flight
+ * table as soon as the lookup completes, whether or not anybody is still waiting on
+ * it; from then on the decision cache is the place to find the answer.
+ * <p>
+ * Lookups are tracked as {@link CompletableFuture}s: plain futures from the wrapped
+ * loader are bridged by the {@link FutureBridge}.  Each caller gets its own dependent
+ * CompletableFuture, so one caller cancelling or completing it can't affect the others.
+ */
+public class SingleFlightPermissionLoader implements PermissionSetLoader {
+
+    private final PermissionSetLoader                                                   delegate;
+    private final FutureBridge                                                          futureBridge;
+    private final ConcurrentHashMap<CasDecisionKey, CompletableFuture<PermissionSet>>   inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder  started = new LongAdder();
+    private final LongAdder  joined = new LongAdder();
+
+
+    /**
+     * @param bridge turns the wrapped loader's plain futures into CompletableFutures, so
+     *               entries can be retired when their lookup completes
+     */
+    public SingleFlightPermissionLoader( PermissionSetLoader loader, FutureBridge bridge ) {
+
+        Preconditions.checkArgument( loader != null, "No PermissionSetLoader object provided (null)" );
+        Preconditions.checkArgument( bridge != null, "No FutureBridge object provided (null)" );
+
+        this.delegate = loader;
+        this.futureBridge = bridge;
+    }
+
+
+    @Override
+    public Future<PermissionSet> load( CasDecisionKey key ) {
+
+        CompletableFuture<PermissionSet> current = inFlight.get( key );
+        if ( current != null ) {
+            joined.increment();
+            return( current.thenApply( Function.identity() ) );
+        }
+
+        boolean[] created = new boolean[1];
+        current = inFlight.computeIfAbsent( key, k -> {
+            created[0] = true;
+            return( futureBridge.toCompletable( delegate.load( k ), 0L ) );
+        } );
+
+        if ( created[0] ) {
+            started.increment();
+            // registered outside computeIfAbsent: an already complete lookup runs the action at once
+            CompletableFuture<PermissionSet> lookup = current;
+            lookup.whenComplete( ( permissionSet, error ) -> inFlight.remove( key, lookup ) );
+        }
+        else {
+            joined.increment();
+        }
+        return( current.thenApply( Function.identity() ) );
+    }
+
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+
+    /**
+     * @return number of lookups currently outstanding.
+     */
+    public int inFlightCount() {
+        return( inFlight.size() );
+    }
+
+
+    /**
+     * @return number of lookups that were sent to the delegate loader.
+     */
+    public long startedCount() {
+        return( started.sum() );
+    }
+
+
+    /**
+     * @return number of callers that shared a lookup somebody else started.
+     */
+    public long joinedCount() {
+        return( joined.sum() );
+    }
+
+
+}
@@ -0,0 +1,246 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.delegation;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Which authenticated users may act for which other User-IDs, e.g. the messaging service
+ * account ({@code cis.proc...}) for the well-known contributor account ({@code cis.wkca...}).
+ * <p>
+ * A rule maps an actor pattern to target patterns.  A pattern is either an exact User-ID or
+ * a prefix followed by {@code *}.  The rules are compiled into a trie over actor IDs.  Each
+ * actor node carries a trie over the target IDs that the rules on its path allow.  A check
+ * walks the actor ID, then the target ID, so it costs O(ID length) however many rules there are.
+ */
+public final class DelegationRules {
+
+    private static final char   WILDCARD = '*';
+
+    public static final DelegationRules NONE = of( Collections.<String, Collection<String>>emptyMap() );
+
+
+    private final ActorNode                 actors;
+    private final Map<String, List<String>> rules;
+
+
+    private DelegationRules( ActorNode actors, Map<String, List<String>> rules ) {
+        this.actors = actors;
+        this.rules = rules;
+    }
+
+
+    /**
+     * The service-account rule that was built into UserIdEnforcer: {@code cis.proc*} may act
+     * for {@code cis.wkca*}.
+     */
+    public static DelegationRules defaults() {
+        return( of( Collections.singletonMap( "cis.proc*", Collections.singletonList( "cis.wkca*" ) ) ) );
+    }
+
+
+    /**
+     * @param rules actor patterns mapped to the target patterns they may act for
+     *
+     * @throws IllegalArgumentException if a pattern is empty, is only a wildcard, or has a
+     *                                  wildcard other than at its end
+     */
+    public static DelegationRules of( Map<String, ? extends Collection<String>> rules ) {
+
+        Preconditions.checkArgument( rules != null, "No delegation rules provided (null)" );
+
+        ActorNode                   root = new ActorNode();
+        Map<String, List<String>>   description = new TreeMap<>();
+
+        for ( Map.Entry<String, ? extends Collection<String>> rule : rules.entrySet() ) {
+            String actor = rule.getKey();
+            checkPattern( actor );
+
+            ActorNode node = root.descend( stem( actor ) );
+            List<String> targets = isPrefix( actor ) ? node.prefixRuleTargets : node.exactRuleTargets;
+            for ( String target : rule.getValue() ) {
+                checkPattern( target );
+                targets.add( target );
+            }
+            description.computeIfAbsent( actor, a -> new ArrayList<>() ).addAll( rule.getValue() );
+        }
+
+        compile( root, Collections.<String>emptyList(), null );
+        return( new DelegationRules( root, Collections.unmodifiableMap( description ) ) );
+    }
+
+
+    /**
+     * @return true if a rule lets {@code actorId} act for {@code targetId}.
+     */
+    public boolean mayActFor( String actorId, String targetId ) {
+
+        if ( (actorId == null) || (targetId == null) ) {
+            return( false );
+        }
+
+        TargetNode node = targetsOf( actorId );
+        if ( node == null ) {
+            return( false );
+        }
+
+        for ( int i = 0; i < targetId.length(); i++ ) {
+            node = node.children.get( targetId.charAt( i ) );
+            if ( node == null ) {
+                return( false );
+            }
+            if ( node.prefixEnd ) {
+                return( true );
+            }
+        }
+        return( node.exactEnd );
+    }
+
+
+    /**
+     * @return true if some rule lets {@code actorId} act for an ID other than its own.
+     */
+    public boolean actsForOthers( String actorId ) {
+        return( (actorId != null) && (targetsOf( actorId ) != null) );
+    }
+
+
+    public boolean isEmpty() {
+        return( rules.isEmpty() );
+    }
+
+
+    @Override
+    public String toString() {
+        return( "DelegationRules" + rules );
+    }
+
+
+    /**
+     * @return the trie of target patterns the rules allow {@code actorId}, or null if none do.
+     */
+    private TargetNode targetsOf( String actorId ) {
+
+        ActorNode node = actors;
+        for ( int i = 0; i < actorId.length(); i++ ) {
+            ActorNode child = node.children.get( actorId.charAt( i ) );
+            if ( child == null ) {
+                // only the prefix rules on the path so far apply
+                return( node.passingTargets );
+            }
+            node = child;
+        }
+        return( node.endingTargets );
+    }
+
+
+    /**
+     * Give every actor node the target tries of the rules that apply to IDs passing through
+     * it (its own and its ancestors' prefix rules) and ending at it (those plus its exact
+     * rules).  Nodes that add no rules share their parent's trie.
+     */
+    private static void compile( ActorNode node, List<String> inherited, TargetNode inheritedTargets ) {
+
+        List<String> passing = inherited;
+        TargetNode   passingTargets = inheritedTargets;
+
+        if ( ! node.prefixRuleTargets.isEmpty() ) {
+            passing = new ArrayList<>( inherited );
+            passing.addAll( node.prefixRuleTargets );
+            passingTargets = TargetNode.of( passing );
+        }
+
+        node.passingTargets = passingTargets;
+        if ( node.exactRuleTargets.isEmpty() ) {
+            node.endingTargets = passingTargets;
+        }
+        else {
+            List<String> ending = new ArrayList<>( passing );
+            ending.addAll( node.exactRuleTargets );
+            node.endingTargets = TargetNode.of( ending );
+        }
+
+        for ( ActorNode child : node.children.values() ) {
+            compile( child, passing, passingTargets );
+        }
+    }
+
+
+    private static void checkPattern( String pattern ) {
+
+        Preconditions.checkArgument( (pattern != null) && ! stem( pattern ).isEmpty(),
+                                     "Delegation pattern must name an ID or ID prefix: '%s'", pattern );
+        Preconditions.checkArgument( stem( pattern ).indexOf( WILDCARD ) < 0,
+                                     "Delegation pattern may only end with '%s': '%s'", WILDCARD, pattern );
+    }
+
+
+    private static boolean isPrefix( String pattern ) {
+        return( ! pattern.isEmpty() && (pattern.charAt( pattern.length() - 1 ) == WILDCARD) );
+    }
+
+
+    private static String stem( String pattern ) {
+        return( isPrefix( pattern ) ? pattern.substring( 0, pattern.length() - 1 ) : pattern );
+    }
+
+
+    private static final class ActorNode {
+
+        final Map<Character, ActorNode> children = new HashMap<>();
+        final List<String>              prefixRuleTargets = new ArrayList<>();
+        final List<String>              exactRuleTargets = new ArrayList<>();
+
+        TargetNode                      passingTargets;
+        TargetNode                      endingTargets;
+
+        ActorNode descend( String path ) {
+
+            ActorNode node = this;
+            for ( int i = 0; i < path.length(); i++ ) {
+                node = node.children.computeIfAbsent( path.charAt( i ), c -> new ActorNode() );
+            }
+            return( node );
+        }
+    }
+
+
+    private static final class TargetNode {
+
+        final Map<Character, TargetNode> children = new HashMap<>();
+        boolean                          prefixEnd;
+        boolean                          exactEnd;
+
+        static TargetNode of( List<String> patterns ) {
+
+            TargetNode root = new TargetNode();
+            for ( String pattern : patterns ) {
+                String     path = stem( pattern );
+                TargetNode node = root;
+                for ( int i = 0; i < path.length(); i++ ) {
+                    node = node.children.computeIfAbsent( path.charAt( i ), c -> new TargetNode() );
+                }
+                if ( isPrefix( pattern ) ) {
+                    node.prefixEnd = true;
+                }
+                else {
+                    node.exactEnd = true;
+                }
+            }
+            return( root );
+        }
+    }
+
+
+}
@@ -0,0 +1,244 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.exception.UnauthenticatedException;
+import org.familysearch.cmp.authorization.exception.UnauthorizedException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Micrometer meters for the stages of an authorization check:
+ * <ul>
+ *     <li>{@value #CHECK_TIMER}: each check by the AuthorizationAspect, tagged by
+ *         {@code endpoint} and {@code outcome} (allowed, denied, unauthenticated, error);</li>
+ *     <li>{@value #FILTER_COUNTER}: each filter's answers, tagged by {@code filter} and
+ *         {@code result} (hit, pass, throw);</li>
+ *     <li>{@value #CAS_LOOKUP_TIMER}: each identity service round-trip, tagged by
+ *         {@code outcome} (success, timeout, error).</li>
+ * </ul>
+ * Meters are registered up front, when a plan is compiled or a filter configured, and the
+ * callers keep the handles; recording is then a timer or counter update with no lookup and
+ * no tag allocation.  {@link #NONE} records into a {@link CompositeMeterRegistry} with no
+ * registries added, which discards everything.
+ */
+public class AuthorizationMetrics {
+
+    public static final String CHECK_TIMER = "cmp.auth.check";
+    public static final String FILTER_COUNTER = "cmp.auth.filter";
+    public static final String CAS_LOOKUP_TIMER = "cmp.auth.cas.lookup";
+
+    /**
+     * Metrics that record nothing; the default wherever none are configured.
+     */
+    public static final AuthorizationMetrics NONE = new AuthorizationMetrics( new CompositeMeterRegistry() );
+
+
+    private final MeterRegistry registry;
+
+    private volatile boolean    percentileHistogram = false;
+
+
+    public AuthorizationMetrics( MeterRegistry meterRegistry ) {
+
+        Preconditions.checkArgument( meterRegistry != null, "No MeterRegistry object provided (null)" );
+        this.registry = meterRegistry;
+    }
+
+
+    /**
+     * @param enabled true to publish latency histograms with the timers, for percentiles and
+     *                SLOs computed by the monitoring system.  Configure before use.
+     */
+    public void setPercentileHistogram( boolean enabled ) {
+        percentileHistogram = enabled;
+    }
+
+
+    public MeterRegistry getRegistry() {
+        return( registry );
+    }
+
+
+    /**
+     * @param endpoint {@code Class.method} of an advised method
+     * @return handles for the endpoint's check timers.
+     */
+    public EndpointMeters endpointMeters( String endpoint ) {
+
+        Preconditions.checkArgument( endpoint != null, "No endpoint object provided (null)" );
+
+        return( new EndpointMeters( timer( CHECK_TIMER, "endpoint", endpoint, "outcome", "allowed" ),
+                                    timer( CHECK_TIMER, "endpoint", endpoint, "outcome", "denied" ),
+                                    timer( CHECK_TIMER, "endpoint", endpoint, "outcome", "unauthenticated" ),
+                                    timer( CHECK_TIMER, "endpoint", endpoint, "outcome", "error" ) ) );
+    }
+
+
+    /**
+     * @param filter name of the filter, e.g. its simple class name
+     * @return handles for the filter's answer counters.
+     */
+    public FilterMeters filterMeters( String filter ) {
+
+        Preconditions.checkArgument( filter != null, "No filter object provided (null)" );
+
+        return( new FilterMeters( counter( FILTER_COUNTER, "filter", filter, "result", "hit" ),
+                                  counter( FILTER_COUNTER, "filter", filter, "result", "pass" ),
+                                  counter( FILTER_COUNTER, "filter", filter, "result", "throw" ) ) );
+    }
+
+
+    /**
+     * @return handles for the identity service round-trip timers.
+     */
+    public LookupMeters casLookupMeters() {
+
+        return( new LookupMeters( timer( CAS_LOOKUP_TIMER, "outcome", "success" ),
+                                  timer( CAS_LOOKUP_TIMER, "outcome", "timeout" ),
+                                  timer( CAS_LOOKUP_TIMER, "outcome", "error" ) ) );
+    }
+
+
+    private Timer timer( String name, String... tags ) {
+        return( Timer.builder( name ).tags( tags ).publishPercentileHistogram( percentileHistogram ).register( registry ) );
+    }
+
+
+    private Counter counter( String name, String... tags ) {
+        return( Counter.builder( name ).tags( tags ).register( registry ) );
+    }
+
+
+    private static Throwable unwrap( Throwable failure ) {
+
+        Throwable ex = failure;
+        while ( ((ex instanceof CompletionException) || (ex instanceof ExecutionException)) && (ex.getCause() != null) ) {
+            ex = ex.getCause();
+        }
+        return( ex );
+    }
+
+
+    /**
+     * Check timers of one endpoint, by outcome.
+     */
+    public static final class EndpointMeters {
+
+        private final Timer allowed;
+        private final Timer denied;
+        private final Timer unauthenticated;
+        private final Timer error;
+
+
+        EndpointMeters( Timer allowed, Timer denied, Timer unauthenticated, Timer error ) {
+
+            this.allowed = allowed;
+            this.denied = denied;
+            this.unauthenticated = unauthenticated;
+            this.error = error;
+        }
+
+
+        /**
+         * @param failure how the check failed, or null if it allowed the call
+         */
+        public void record( long elapsedNanos, Throwable failure ) {
+
+            Throwable ex = unwrap( failure );
+            Timer     timer = ( ex == null ) ? allowed
+                            : ( ex instanceof UnauthorizedException ) ? denied
+                            : ( ex instanceof UnauthenticatedException ) ? unauthenticated
+                            : error;
+            timer.record( elapsedNanos, TimeUnit.NANOSECONDS );
+        }
+    }
+
+
+    /**
+     * Answer counters of one filter.
+     */
+    public static final class FilterMeters {
+
+        private final Counter hit;
+        private final Counter pass;
+        private final Counter thrown;
+
+
+        FilterMeters( Counter hit, Counter pass, Counter thrown ) {
+
+            this.hit = hit;
+            this.pass = pass;
+            this.thrown = thrown;
+        }
+
+
+        /**
+         * The filter decided the check.
+         */
+        public void hit() {
+            hit.increment();
+        }
+
+
+        /**
+         * The filter passed the check on to the rest of the chain.
+         */
+        public void pass() {
+            pass.increment();
+        }
+
+
+        /**
+         * The filter rejected the check with an exception.
+         */
+        public void thrown() {
+            thrown.increment();
+        }
+    }
+
+
+    /**
+     * Identity service round-trip timers, by outcome.
+     */
+    public static final class LookupMeters {
+
+        private final Timer success;
+        private final Timer timeout;
+        private final Timer error;
+
+
+        LookupMeters( Timer success, Timer timeout, Timer error ) {
+
+            this.success = success;
+            this.timeout = timeout;
+            this.error = error;
+        }
+
+
+        /**
+         * @param failure why the lookup failed, or null if it answered
+         */
+        public void record( long elapsedNanos, Throwable failure ) {
+
+            Throwable ex = unwrap( failure );
+            Timer     timer = ( ex == null ) ? success
+                            : ( ex instanceof TimeoutException ) ? timeout
+                            : error;
+            timer.record( elapsedNanos, TimeUnit.NANOSECONDS );
+        }
+    }
+
+
+}
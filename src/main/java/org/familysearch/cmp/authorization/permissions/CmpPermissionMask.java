@@ -0,0 +1,179 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.permissions;
+
+import org.familysearch.engage.foundation.security.Permission;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Compact {@code long} bitmask form of a set of {@link CmpPermission}s: bit {@code n}
+ * stands for the permission with ordinal {@code n}.
+ * <p>
+ * The name-to-ordinal table and the permission-name list for every possible mask are
+ * built once when the class loads, so intersecting required, handled and granted
+ * permissions on the request path is plain word arithmetic with no garbage.
+ */
+public final class CmpPermissionMask {
+
+    public static final long NONE = 0L;
+
+    private static final CmpPermission[]        PERMISSIONS = CmpPermission.values();
+    private static final Map<String, Integer>   ORDINALS_BY_NAME = new HashMap<>();
+    private static final List<String>[]         NAMES_BY_MASK;
+
+    static {
+        if ( PERMISSIONS.length > Long.SIZE ) {
+            throw new IllegalStateException( "CmpPermission has more values than fit in a long bitmask" );
+        }
+
+        for ( CmpPermission permission : PERMISSIONS ) {
+            ORDINALS_BY_NAME.put( permission.name(), permission.ordinal() );
+        }
+
+        // 2^n immutable name lists; cheap while the enum stays small, computed on demand otherwise
+        NAMES_BY_MASK = precomputeNames( PERMISSIONS.length );
+    }
+
+
+    private CmpPermissionMask() {
+    }
+
+
+    public static long bit( CmpPermission permission ) {
+        return( 1L << permission.ordinal() );
+    }
+
+
+    /**
+     * @return the permission's bit, or {@link #NONE} if the name is not a CmpPermission.
+     */
+    public static long bit( String permissionName ) {
+
+        Integer ordinal = ORDINALS_BY_NAME.get( permissionName );
+        return( (ordinal == null) ? NONE : (1L << ordinal) );
+    }
+
+
+    public static boolean isDefined( String permissionName ) {
+        return( ORDINALS_BY_NAME.containsKey( permissionName ) );
+    }
+
+
+    public static long of( CmpPermission... permissions ) {
+
+        long mask = NONE;
+        for ( CmpPermission permission : permissions ) {
+            mask |= bit( permission );
+        }
+        return( mask );
+    }
+
+
+    /**
+     * Mask of a list of foundation {@link Permission}s; entries that are not CmpPermissions
+     * are matched by name.
+     */
+    public static long ofPermissions( List<? extends Permission> permissions ) {
+
+        long mask = NONE;
+        for ( int i = 0, size = permissions.size(); i < size; i++ ) {
+            Permission permission = permissions.get( i );
+            mask |= ( permission instanceof CmpPermission )
+                        ? bit( (CmpPermission) permission )
+                        : bit( permission.getName() );
+        }
+        return( mask );
+    }
+
+
+    /**
+     * Mask of a collection of permission names; names that are not CmpPermissions are ignored.
+     */
+    public static long ofNames( Iterable<String> permissionNames ) {
+
+        long mask = NONE;
+        for ( String name : permissionNames ) {
+            mask |= bit( name );
+        }
+        return( mask );
+    }
+
+
+    public static boolean intersects( long mask, long other ) {
+        return( (mask & other) != NONE );
+    }
+
+
+    /**
+     * @return true if any of the permissions in {@code mask} is named in {@code grantedNames}.
+     *         Probes the collection once per bit set, without allocating.
+     */
+    public static boolean anyGranted( long mask, Collection<String> grantedNames ) {
+
+        for ( long remaining = mask; remaining != NONE; remaining &= (remaining - 1L) ) {
+            if ( grantedNames.contains( PERMISSIONS[ Long.numberOfTrailingZeros( remaining ) ].name() ) ) {
+                return( true );
+            }
+        }
+        return( false );
+    }
+
+
+    /**
+     * @return immutable list of the permission names in the mask, in ordinal order.
+     */
+    public static List<String> names( long mask ) {
+
+        if ( (NAMES_BY_MASK != null) && (mask >= 0L) && (mask < NAMES_BY_MASK.length) ) {
+            return( NAMES_BY_MASK[ (int) mask ] );
+        }
+        return( computeNames( mask ) );
+    }
+
+
+    public static CmpPermission[] permissions( long mask ) {
+
+        CmpPermission[] result = new CmpPermission[ Long.bitCount( mask ) ];
+        int next = 0;
+        for ( long remaining = mask; remaining != NONE; remaining &= (remaining - 1L) ) {
+            result[ next++ ] = PERMISSIONS[ Long.numberOfTrailingZeros( remaining ) ];
+        }
+        return( result );
+    }
+
+
+    @SuppressWarnings( "unchecked" )
+    private static List<String>[] precomputeNames( int permissionCnt ) {
+
+        if ( permissionCnt > 12 ) {
+            return( null );
+        }
+
+        List<String>[] table = new List[ 1 << permissionCnt ];
+        for ( int mask = 0; mask < table.length; mask++ ) {
+            table[ mask ] = computeNames( mask );
+        }
+        return( table );
+    }
+
+
+    private static List<String> computeNames( long mask ) {
+
+        List<String> names = new ArrayList<>( Long.bitCount( mask ) );
+        for ( long remaining = mask; remaining != NONE; remaining &= (remaining - 1L) ) {
+            names.add( PERMISSIONS[ Long.numberOfTrailingZeros( remaining ) ].name() );
+        }
+        return( Collections.unmodifiableList( names ) );
+    }
+
+
+}
@@ -0,0 +1,198 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.permissions;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+
+/**
+ * Which {@link CmpPermission}s imply which others, e.g. a grant of
+ * {@code FSMessagingAdminApiModifyThread} also satisfies a check for
+ * {@code FSMessagingAdminApiViewThread}.
+ * <p>
+ * The declared graph is closed transitively when the instance is built, into two
+ * tables of {@link CmpPermissionMask} bitmasks indexed by ordinal: the permissions each
+ * one implies, and the permissions each one is implied by.  Both include the permission
+ * itself, so a graph with no edges behaves like plain permission matching.
+ */
+public final class PermissionImplications {
+
+    private static final CmpPermission[] PERMISSIONS = CmpPermission.values();
+
+    public static final PermissionImplications NONE = of( Collections.<CmpPermission, Collection<CmpPermission>>emptyMap() );
+
+
+    private final long[]    impliedBy;      // [i] = permissions that permission i implies
+    private final long[]    satisfiedBy;    // [i] = permissions that imply permission i
+
+
+    private PermissionImplications( long[] impliedBy, long[] satisfiedBy ) {
+        this.impliedBy = impliedBy;
+        this.satisfiedBy = satisfiedBy;
+    }
+
+
+    /**
+     * The recommended hierarchy of the CMP roles: modifying a thread implies viewing it, and
+     * a full-time admin has everything a full-access user has.  Not applied unless configured.
+     */
+    public static PermissionImplications recommended() {
+
+        Map<CmpPermission, Collection<CmpPermission>> graph = new EnumMap<>( CmpPermission.class );
+        graph.put( CmpPermission.FSMessagingAdminApiModifyThread,
+                   Collections.singleton( CmpPermission.FSMessagingAdminApiViewThread ) );
+        graph.put( CmpPermission.FSMessagingFullTimeAdminRole,
+                   Collections.singleton( CmpPermission.FSMessagingFullAccessUserRole ) );
+        return( of( graph ) );
+    }
+
+
+    /**
+     * @param graph permissions mapped to the permissions they directly imply; cycles are allowed
+     */
+    public static PermissionImplications of( Map<CmpPermission, ? extends Collection<CmpPermission>> graph ) {
+
+        Preconditions.checkArgument( graph != null, "No implication graph provided (null)" );
+
+        long[] direct = new long[ PERMISSIONS.length ];
+        for ( Map.Entry<CmpPermission, ? extends Collection<CmpPermission>> edge : graph.entrySet() ) {
+            for ( CmpPermission implied : edge.getValue() ) {
+                direct[ edge.getKey().ordinal() ] |= CmpPermissionMask.bit( implied );
+            }
+        }
+        return( close( direct ) );
+    }
+
+
+    /**
+     * Build from configuration, where permissions are named.
+     *
+     * @throws IllegalArgumentException if a name is not a CmpPermission
+     */
+    public static PermissionImplications ofNames( Map<String, ? extends Collection<String>> graph ) {
+
+        Preconditions.checkArgument( graph != null, "No implication graph provided (null)" );
+
+        Set<String> undefined = new TreeSet<>();
+        long[]      direct = new long[ PERMISSIONS.length ];
+
+        for ( Map.Entry<String, ? extends Collection<String>> edge : graph.entrySet() ) {
+            if ( ! CmpPermissionMask.isDefined( edge.getKey() ) ) {
+                undefined.add( edge.getKey() );
+                continue;
+            }
+            int from = Long.numberOfTrailingZeros( CmpPermissionMask.bit( edge.getKey() ) );
+            for ( String implied : edge.getValue() ) {
+                if ( CmpPermissionMask.isDefined( implied ) ) {
+                    direct[ from ] |= CmpPermissionMask.bit( implied );
+                }
+                else {
+                    undefined.add( implied );
+                }
+            }
+        }
+
+        Preconditions.checkArgument( undefined.isEmpty(), "Implied permissions are not CmpPermissions: %s", undefined );
+        return( close( direct ) );
+    }
+
+
+    /**
+     * @return mask of every permission that the granted ones imply, the granted ones included.
+     */
+    public long implied( long grantedMask ) {
+
+        long result = grantedMask;
+        for ( long remaining = grantedMask; remaining != CmpPermissionMask.NONE; remaining &= (remaining - 1L) ) {
+            result |= impliedBy[ Long.numberOfTrailingZeros( remaining ) ];
+        }
+        return( result );
+    }
+
+
+    /**
+     * @return mask of every permission whose grant would satisfy a check for any of the
+     *         required ones, the required ones included.
+     */
+    public long satisfying( long requiredMask ) {
+
+        long result = requiredMask;
+        for ( long remaining = requiredMask; remaining != CmpPermissionMask.NONE; remaining &= (remaining - 1L) ) {
+            result |= satisfiedBy[ Long.numberOfTrailingZeros( remaining ) ];
+        }
+        return( result );
+    }
+
+
+    /**
+     * @return true if no permission implies any other.
+     */
+    public boolean isEmpty() {
+
+        for ( int i = 0; i < impliedBy.length; i++ ) {
+            if ( impliedBy[ i ] != (1L << i) ) {
+                return( false );
+            }
+        }
+        return( true );
+    }
+
+
+    @Override
+    public String toString() {
+
+        StringBuilder text = new StringBuilder( "PermissionImplications{" );
+        String        separator = "";
+        for ( int i = 0; i < impliedBy.length; i++ ) {
+            long others = impliedBy[ i ] & ~(1L << i);
+            if ( others != CmpPermissionMask.NONE ) {
+                text.append( separator ).append( PERMISSIONS[ i ].name() ).append( "=" ).append( CmpPermissionMask.names( others ) );
+                separator = ", ";
+            }
+        }
+        return( text.append( "}" ).toString() );
+    }
+
+
+    private static PermissionImplications close( long[] direct ) {
+
+        int    permissionCnt = direct.length;
+        long[] impliedBy = new long[ permissionCnt ];
+        long[] satisfiedBy = new long[ permissionCnt ];
+
+        for ( int i = 0; i < permissionCnt; i++ ) {
+            // grow the reachable set until no new permission turns up
+            long reached = (1L << i);
+            long previous;
+            do {
+                previous = reached;
+                for ( long remaining = previous; remaining != CmpPermissionMask.NONE; remaining &= (remaining - 1L) ) {
+                    reached |= direct[ Long.numberOfTrailingZeros( remaining ) ];
+                }
+            } while ( reached != previous );
+            impliedBy[ i ] = reached;
+        }
+
+        for ( int i = 0; i < permissionCnt; i++ ) {
+            satisfiedBy[ i ] = (1L << i);
+        }
+        for ( int i = 0; i < permissionCnt; i++ ) {
+            for ( long remaining = impliedBy[ i ]; remaining != CmpPermissionMask.NONE; remaining &= (remaining - 1L) ) {
+                satisfiedBy[ Long.numberOfTrailingZeros( remaining ) ] |= (1L << i);
+            }
+        }
+
+        return( new PermissionImplications( impliedBy, satisfiedBy ) );
+    }
+
+
+}
@@ -0,0 +1,163 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.plan;
+
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.CASAuthorizationFilter;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.metrics.AuthorizationMetrics;
+import org.familysearch.cmp.authorization.permissions.CmpPermission;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+
+import java.lang.reflect.Method;
+
+
+/**
+ * Immutable, precompiled form of a method's {@link PermissionRequired} annotation: what
+ * the annotation asks for, resolved once, plus the async filter chain narrowed to the
+ * filters that can possibly match those permissions.
+ * <p>
+ * Per call, only the parts that depend on the request (the session and, if required,
+ * its CAS context) remain to be done.  The plan also holds the endpoint's pre-registered
+ * check timers.
+ */
+public final class AuthorizationPlan {
+
+    /**
+     * AuthorizationContext key under which the plan that built the context is stored.
+     */
+    public static final String KEY_AUTHORIZATION_PLAN = "cmp.authorization.plan";
+
+    /**
+     * AuthorizationContext key under which the filter that decided a check puts its name,
+     * for the audit log.
+     */
+    public static final String KEY_DECIDED_BY = "cmp.authorization.decidedBy";
+
+
+    private final Method                              method;
+    private final String                              endpoint;
+    private final PermissionRequired                  annotation;
+    private final CmpPermission[]                     permissions;
+    private final long                                permissionMask;
+    private final boolean                             requireCheckSessionCasContext;
+    private final long                                casTimeoutMillis;
+    private final AsyncAuthorizationFilterChain       asyncFilterChain;
+    private final AuthorizationMetrics.EndpointMeters meters;
+
+
+    AuthorizationPlan( Method                           method,
+                       PermissionRequired               annotation,
+                       AsyncAuthorizationFilterChain    asyncFilterChain,
+                       AuthorizationMetrics             metrics ) {
+
+        this( method, method.getDeclaringClass().getSimpleName() + "." + method.getName(), annotation, asyncFilterChain, metrics );
+    }
+
+
+    private AuthorizationPlan( Method                           method,
+                               String                           endpoint,
+                               PermissionRequired               annotation,
+                               AsyncAuthorizationFilterChain    asyncFilterChain,
+                               AuthorizationMetrics             metrics ) {
+
+        this( method, endpoint, annotation, asyncFilterChain, metrics.endpointMeters( endpoint ) );
+    }
+
+
+    private AuthorizationPlan( Method                               method,
+                               String                               endpoint,
+                               PermissionRequired                   annotation,
+                               AsyncAuthorizationFilterChain        asyncFilterChain,
+                               AuthorizationMetrics.EndpointMeters  meters ) {
+
+        this.method = method;
+        this.endpoint = endpoint;
+        this.annotation = annotation;
+        this.permissions = annotation.value();
+        this.permissionMask = CmpPermissionMask.of( permissions );
+        this.requireCheckSessionCasContext = annotation.requireCheckSessionCasContext();
+        this.casTimeoutMillis = annotation.casTimeoutMillis();
+        this.asyncFilterChain = asyncFilterChain;
+        this.meters = meters;
+    }
+
+
+    /**
+     * Create the context for one check of this plan.  The session CAS context, when
+     * {@link #isRequireCheckSessionCasContext() required}, is left for the caller to add.
+     */
+    public AuthorizationContext newContext() {
+
+        final AuthorizationContext authContext = new AuthorizationContext( permissions );
+
+        authContext.put( KEY_AUTHORIZATION_PLAN, this );
+        if ( casTimeoutMillis > 0L ) {
+            authContext.put( CASAuthorizationFilter.KEY_CAS_TIMEOUT_MILLIS, casTimeoutMillis );
+        }
+
+        return( authContext );
+    }
+
+
+    public Method getMethod() {
+        return( method );
+    }
+
+
+    /**
+     * @return {@code Class.method} of the advised method, for logs and counters.
+     */
+    public String getEndpoint() {
+        return( endpoint );
+    }
+
+
+    /**
+     * @return the endpoint's check timers, registered when the plan was compiled.
+     */
+    public AuthorizationMetrics.EndpointMeters getMeters() {
+        return( meters );
+    }
+
+
+    PermissionRequired getAnnotation() {
+        return( annotation );
+    }
+
+
+    public long getPermissionMask() {
+        return( permissionMask );
+    }
+
+
+    public boolean isRequireCheckSessionCasContext() {
+        return( requireCheckSessionCasContext );
+    }
+
+
+    public long getCasTimeoutMillis() {
+        return( casTimeoutMillis );
+    }
+
+
+    /**
+     * @return the async chain holding only the filters that can match this plan's
+     *         permissions, or null when no async chain is configured.
+     */
+    public AsyncAuthorizationFilterChain getAsyncFilterChain() {
+        return( asyncFilterChain );
+    }
+
+
+    @Override
+    public String toString() {
+        return( String.format( "AuthorizationPlan[method=%s, permissions=%s]",
+                               endpoint, CmpPermissionMask.names( permissionMask ) ) );
+    }
+
+
+}
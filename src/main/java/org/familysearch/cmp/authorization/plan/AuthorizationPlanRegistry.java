@@ -0,0 +1,192 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.plan;
+
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.PermissionScopedFilter;
+import org.familysearch.cmp.authorization.metrics.AuthorizationMetrics;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.MethodClassKey;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+
+/**
+ * Method-keyed table of {@link AuthorizationPlan}s.  A method's plan is compiled the first
+ * time it is checked; every later check is a single map lookup.  Plans looked up by method
+ * alone take their annotation from the {@link PermissionRequiredResolver}, so class-level
+ * and composed annotations are resolved once, at compile time; methods found to be
+ * unprotected are remembered too.
+ * <p>
+ * Each plan's async chain is the registry's chain without the {@link PermissionScopedFilter}s
+ * that cannot match the plan's permissions.  The remaining filters keep their wired order;
+ * the session filter, which also authenticates, has to stay ahead of the remote CAS step.
+ */
+public class AuthorizationPlanRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( AuthorizationPlanRegistry.class );
+    private static final String NULL_REQUIRED_ARG = "No %s object provided (null)";
+
+
+    private final ConcurrentMap<Method, AuthorizationPlan>  plans = new ConcurrentHashMap<>();
+    private final Set<Method>                               unprotected = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<MethodClassKey, Method>     implementations = new ConcurrentHashMap<>();
+    private final AsyncAuthorizationFilterChain             asyncFilterChain;
+
+    private volatile AuthorizationMetrics                   metrics = AuthorizationMetrics.NONE;
+
+
+    public AuthorizationPlanRegistry() {
+        this( null );
+    }
+
+
+    /**
+     * @param asyncFilterChain chain the plans' async chains are narrowed from; may be null.
+     */
+    public AuthorizationPlanRegistry( AsyncAuthorizationFilterChain asyncFilterChain ) {
+        this.asyncFilterChain = asyncFilterChain;
+    }
+
+
+    /**
+     * @param method     the advised method, used as the table key
+     * @param permission the method's annotation, compiled on the first call
+     */
+    public AuthorizationPlan planFor( Method method, PermissionRequired permission ) {
+
+        Preconditions.checkArgument( method != null, String.format( NULL_REQUIRED_ARG, "Method" ) );
+        Preconditions.checkArgument( permission != null, String.format( NULL_REQUIRED_ARG, "PermissionRequired" ) );
+
+        AuthorizationPlan plan = plans.get( method );
+        if ( plan == null ) {
+            plan = plans.computeIfAbsent( method, m -> compile( m, permission ) );
+        }
+
+        if ( plan.getAnnotation() != permission ) {
+            // Called through an interface method whose implementations are annotated
+            // differently; the key can't tell them apart, so don't cache this one.
+            LOGGER.debug( "Uncached authorization plan for {}; annotation differs from {}", method, plan );
+            return( compile( method, permission ) );
+        }
+
+        return( plan );
+    }
+
+
+    /**
+     * @param method the advised method, used as the table key
+     * @return the plan of the method's effective {@link PermissionRequired}, or null if it
+     *         has none.
+     */
+    public AuthorizationPlan planFor( Method method ) {
+
+        Preconditions.checkArgument( method != null, String.format( NULL_REQUIRED_ARG, "Method" ) );
+
+        AuthorizationPlan plan = plans.get( method );
+        if ( (plan != null) || unprotected.contains( method ) ) {
+            return( plan );
+        }
+
+        PermissionRequired permission = PermissionRequiredResolver.resolve( method );
+        if ( permission == null ) {
+            unprotected.add( method );
+            return( null );
+        }
+        return( plans.computeIfAbsent( method, m -> compile( m, permission ) ) );
+    }
+
+
+    /**
+     * Plan for a method called on an instance of {@code targetClass}.  An interface method,
+     * as seen through a JDK proxy, is first mapped to the target's implementation of it.
+     *
+     * @param targetClass the instance's class, or null if unknown
+     * @return the plan, or null if the method is not protected.
+     */
+    public AuthorizationPlan planFor( Method method, Class<?> targetClass ) {
+
+        Preconditions.checkArgument( method != null, String.format( NULL_REQUIRED_ARG, "Method" ) );
+
+        if ( (targetClass == null) || ! method.getDeclaringClass().isInterface() ) {
+            return( planFor( method ) );
+        }
+
+        Method implementation = implementations.computeIfAbsent( new MethodClassKey( method, targetClass ),
+                                                                 key -> ClassUtils.getMostSpecificMethod( method,
+                                                                                                          ClassUtils.getUserClass( targetClass ) ) );
+        return( planFor( implementation ) );
+    }
+
+
+    /**
+     * Register each plan's check timers here as the plan is compiled.  Configure before
+     * plans are compiled.
+     */
+    public void setMetrics( AuthorizationMetrics metrics ) {
+
+        Preconditions.checkArgument( metrics != null, String.format( NULL_REQUIRED_ARG, "AuthorizationMetrics" ) );
+        this.metrics = metrics;
+    }
+
+
+    public int size() {
+        return( plans.size() );
+    }
+
+
+    public Collection<AuthorizationPlan> getPlans() {
+        return( Collections.unmodifiableCollection( plans.values() ) );
+    }
+
+
+    private AuthorizationPlan compile( Method method, PermissionRequired permission ) {
+
+        AuthorizationPlan plan = new AuthorizationPlan( method, permission,
+                                                        narrowedChain( CmpPermissionMask.of( permission.value() ) ),
+                                                        metrics );
+        LOGGER.debug( "Compiled {}", plan );
+        return( plan );
+    }
+
+
+    /**
+     * @return the async chain without the filters that cannot match {@code permissionMask}.
+     */
+    private AsyncAuthorizationFilterChain narrowedChain( long permissionMask ) {
+
+        if ( asyncFilterChain == null ) {
+            return( null );
+        }
+
+        List<AsyncAuthorizationFilter> candidates = new ArrayList<>();
+        for ( AsyncAuthorizationFilter filter : asyncFilterChain.getFilters() ) {
+            if ( !(filter instanceof PermissionScopedFilter)
+                 || CmpPermissionMask.intersects( permissionMask, ((PermissionScopedFilter) filter).getHandledPermissionMask() ) ) {
+                candidates.add( filter );
+            }
+        }
+
+        return( (candidates.size() == asyncFilterChain.getFilters().size())
+                    ? asyncFilterChain
+                    : new AsyncAuthorizationFilterChain( candidates ) );
+    }
+
+
+}
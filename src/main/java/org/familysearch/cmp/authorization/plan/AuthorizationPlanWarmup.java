@@ -0,0 +1,207 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.plan;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.PermissionScopedFilter;
+import org.familysearch.cmp.authorization.ValidSessionOnlyAuthorizationFilter;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Startup pass over the application context that compiles the {@link AuthorizationPlan} of
+ * every {@link PermissionRequired} method up front, so the first request to each endpoint
+ * doesn't pay for it.
+ * <p>
+ * The same pass checks that every permission named by an annotation can be decided by
+ * some filter in the chain; one that can't would make the endpoint unreachable.  By
+ * default such a misconfiguration stops the application from starting.
+ */
+public class AuthorizationPlanWarmup implements SmartInitializingSingleton, BeanFactoryAware {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( AuthorizationPlanWarmup.class );
+    private static final String NULL_REQUIRED_ARG = "No %s object provided (null)";
+
+
+    private final AuthorizationPlanRegistry     planRegistry;
+    private final AsyncAuthorizationFilterChain filterChain;
+
+    private ListableBeanFactory                 beanFactory;
+    private boolean                             enabled = true;
+    private boolean                             failOnUnhandledPermission = true;
+
+    private volatile int                        warmedUpPlanCount;
+    private volatile long                       warmupMillis;
+
+
+    /**
+     * @param filterChain chain whose filters decide the plans' permissions
+     */
+    public AuthorizationPlanWarmup( AuthorizationPlanRegistry planRegistry, AsyncAuthorizationFilterChain filterChain ) {
+
+        Preconditions.checkArgument( planRegistry != null, String.format( NULL_REQUIRED_ARG, "AuthorizationPlanRegistry" ) );
+        Preconditions.checkArgument( filterChain != null, String.format( NULL_REQUIRED_ARG, "AsyncAuthorizationFilterChain" ) );
+
+        this.planRegistry = planRegistry;
+        this.filterChain = filterChain;
+    }
+
+
+    /**
+     * @param enabled false to skip the startup pass; plans are then compiled on first use
+     */
+    public void setEnabled( boolean enabled ) {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * @param fail true to stop startup when a method requires a permission no filter handles;
+     *             false to only log it
+     */
+    public void setFailOnUnhandledPermission( boolean fail ) {
+        failOnUnhandledPermission = fail;
+    }
+
+
+    @Override
+    public void setBeanFactory( BeanFactory factory )
+        throws BeansException {
+
+        if ( factory instanceof ListableBeanFactory ) {
+            beanFactory = (ListableBeanFactory) factory;
+        }
+    }
+
+
+    @Override
+    public void afterSingletonsInstantiated() {
+
+        if ( ! enabled ) {
+            return;
+        }
+        if ( beanFactory == null ) {
+            LOGGER.warn( "Authorization warm-up skipped; bean factory cannot list its beans" );
+            return;
+        }
+        warmUp( annotatedMethods( beanFactory ) );
+    }
+
+
+    /**
+     * Compile and validate the plans of the given methods.
+     *
+     * @throws IllegalStateException if a method requires a permission no filter handles,
+     *                               and the warm-up is set to fail on that
+     */
+    public void warmUp( Set<Method> methods ) {
+
+        long          start = System.nanoTime();
+        long          handledMask = handledPermissionMask();
+        List<String>  unhandled = new ArrayList<>();
+
+        for ( Method method : methods ) {
+            AuthorizationPlan plan = planRegistry.planFor( method );
+
+            long unhandledMask = plan.getPermissionMask() & ~handledMask;
+            if ( unhandledMask != CmpPermissionMask.NONE ) {
+                unhandled.add( String.format( "%s.%s requires %s", method.getDeclaringClass().getName(), method.getName(),
+                                              CmpPermissionMask.names( unhandledMask ) ) );
+            }
+        }
+
+        warmedUpPlanCount = methods.size();
+        warmupMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        if ( ! unhandled.isEmpty() ) {
+            String message = String.format( "No authorization filter handles the permissions: %s", unhandled );
+            if ( failOnUnhandledPermission ) {
+                throw new IllegalStateException( message );
+            }
+            LOGGER.warn( message );
+        }
+
+        LOGGER.info( "Authorization warm-up compiled {} @PermissionRequired plans in {} ms", warmedUpPlanCount, warmupMillis );
+    }
+
+
+    public int getWarmedUpPlanCount() {
+        return( warmedUpPlanCount );
+    }
+
+
+    public long getWarmupMillis() {
+        return( warmupMillis );
+    }
+
+
+    /**
+     * @return the methods of the beans' classes with an effective {@link PermissionRequired}.
+     */
+    static Set<Method> annotatedMethods( ListableBeanFactory beanFactory ) {
+
+        Set<Method> methods = new LinkedHashSet<>();
+
+        for ( String beanName : beanFactory.getBeanNamesForType( Object.class, false, false ) ) {
+            Class<?> beanType = beanFactory.getType( beanName );
+            if ( beanType == null ) {
+                continue;
+            }
+            if ( Proxy.isProxyClass( beanType ) ) {
+                // JDK proxies don't carry the target's annotations
+                beanType = AopUtils.getTargetClass( beanFactory.getBean( beanName ) );
+            }
+
+            for ( Method method : ReflectionUtils.getUniqueDeclaredMethods( ClassUtils.getUserClass( beanType ) ) ) {
+                if ( PermissionRequiredResolver.resolve( method ) != null ) {
+                    methods.add( method );
+                }
+            }
+        }
+
+        return( methods );
+    }
+
+
+    /**
+     * @return mask of every permission some filter in the chain can decide.
+     */
+    private long handledPermissionMask() {
+
+        long handled = CmpPermissionMask.NONE;
+        for ( AsyncAuthorizationFilter filter : filterChain.getFilters() ) {
+            if ( filter instanceof PermissionScopedFilter ) {
+                handled |= ((PermissionScopedFilter) filter).getHandledPermissionMask();
+            }
+            if ( filter instanceof ValidSessionOnlyAuthorizationFilter ) {
+                handled |= ((ValidSessionOnlyAuthorizationFilter) filter).getSessionRequiredMask();
+            }
+        }
+        return( handled );
+    }
+
+
+}
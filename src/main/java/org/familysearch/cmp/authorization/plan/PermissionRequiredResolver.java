@@ -0,0 +1,58 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.plan;
+
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+
+/**
+ * Finds the {@link PermissionRequired} in effect for a method.  In order of precedence:
+ * <ol>
+ *     <li>on the method, directly or through a composed annotation, including the methods
+ *         it overrides;</li>
+ *     <li>for a controller handler method (public, and mapped with {@link RequestMapping} or a
+ *         composed mapping such as {@code @GetMapping}), on its declaring class, directly or
+ *         through a composed annotation, including the class's superclasses and interfaces.</li>
+ * </ol>
+ * A class-level annotation thus never covers the class's other methods: setters, lifecycle
+ * callbacks such as {@code afterPropertiesSet}, {@code toString} and the like run without a
+ * session, e.g. while the context starts, and must not be checked.
+ * This walks the annotation hierarchy reflectively, so it is only done when a plan is
+ * compiled; see {@link AuthorizationPlanRegistry#planFor(Method)}.
+ */
+public final class PermissionRequiredResolver {
+
+    private PermissionRequiredResolver() {
+    }
+
+
+    /**
+     * @return the method's effective annotation, or null if the method is not protected.
+     */
+    public static PermissionRequired resolve( Method method ) {
+
+        PermissionRequired permission = AnnotatedElementUtils.findMergedAnnotation( method, PermissionRequired.class );
+
+        if ( (permission == null) && isHandlerMethod( method ) ) {
+            permission = AnnotatedElementUtils.findMergedAnnotation( method.getDeclaringClass(), PermissionRequired.class );
+        }
+
+        return( permission );
+    }
+
+
+    private static boolean isHandlerMethod( Method method ) {
+
+        return( Modifier.isPublic( method.getModifiers() ) && ! Modifier.isStatic( method.getModifiers() )
+                && AnnotatedElementUtils.hasAnnotation( method, RequestMapping.class ) );
+    }
+
+
+}
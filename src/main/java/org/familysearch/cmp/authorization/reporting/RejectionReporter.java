@@ -0,0 +1,212 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.reporting;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+
+/**
+ * Counts rejections (denied checks, User-ID mismatches, failed CAS lookups) per endpoint and
+ * reason, and writes only a sample of them as log lines, so a flood of rejections, e.g. a
+ * credential-stuffing spike or a CAS outage, doesn't turn into a flood of log formatting
+ * and I/O.
+ * <p>
+ * Counts are kept on striped {@link LongAdder}s.  In each summary interval, the first
+ * {@link #setExemplarsPerInterval exemplars} of each endpoint and reason are logged as
+ * usual.  After that an event is logged only with its logger's sample rate.  Callers ask
+ * {@link #record} before building their message, so nothing is formatted for the events
+ * that are skipped:
+ * <pre>
+ *     if ( reporter.record( LOGGER, Level.WARN, endpoint, "denied" ) ) {
+ *         LOGGER.warn( ... );
+ *     }
+ * </pre>
+ * {@link #summarize()}, run periodically, logs one line with the interval's counts.
+ */
+public class RejectionReporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( RejectionReporter.class );
+
+
+    /**
+     * Rejection counts of one endpoint and reason.
+     */
+    static final class Counter {
+
+        final LongAdder     total = new LongAdder();
+        final LongAdder     interval = new LongAdder();
+        final AtomicInteger exemplars = new AtomicInteger();
+    }
+
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Counter>> counters = new ConcurrentHashMap<>();
+    private final DoubleSupplier                                        random;
+
+    private volatile Map<String, Double>    sampleRates = Collections.emptyMap();
+    private volatile double                 defaultSampleRate = 1.0;
+    private volatile int                    exemplarsPerInterval = 5;
+
+
+    public RejectionReporter() {
+        this( () -> ThreadLocalRandom.current().nextDouble() );
+    }
+
+
+    RejectionReporter( DoubleSupplier random ) {
+        this.random = random;
+    }
+
+
+    /**
+     * @param rate fraction, between 0 and 1, of the events beyond the exemplars that are logged
+     *             for loggers without a rate of their own
+     */
+    public void setDefaultSampleRate( double rate ) {
+
+        Preconditions.checkArgument( (rate >= 0.0) && (rate <= 1.0), "Sample rate must be between 0 and 1: %s", rate );
+
+        defaultSampleRate = rate;
+    }
+
+
+    /**
+     * @param rates logger names mapped to their sample rates, between 0 and 1
+     */
+    public void setSampleRates( Map<String, Double> rates ) {
+
+        Preconditions.checkArgument( rates != null, "No sample rates provided (null)" );
+        for ( Map.Entry<String, Double> rate : rates.entrySet() ) {
+            Preconditions.checkArgument( (rate.getValue() != null) && (rate.getValue() >= 0.0) && (rate.getValue() <= 1.0),
+                                         "Sample rate of %s must be between 0 and 1: %s", rate.getKey(), rate.getValue() );
+        }
+
+        sampleRates = Collections.unmodifiableMap( new HashMap<>( rates ) );
+    }
+
+
+    /**
+     * @param exemplars events of each endpoint and reason logged in full per summary interval
+     */
+    public void setExemplarsPerInterval( int exemplars ) {
+
+        Preconditions.checkArgument( exemplars >= 0, "Exemplars per interval must not be negative: %s", exemplars );
+
+        exemplarsPerInterval = exemplars;
+    }
+
+
+    /**
+     * Count a rejection, and decide whether the caller should log it.
+     *
+     * @param logger   logger the event would be written to, and whose sample rate applies;
+     *                 may be null to only count it
+     * @param level    level the event would be written at
+     * @param endpoint what was rejected, e.g. a protected method; keep the set of values small
+     * @param reason   why, e.g. {@code denied} or an exception type
+     * @return true if the event is sampled and the logger is enabled for the level.
+     */
+    public boolean record( Logger logger, Level level, String endpoint, String reason ) {
+
+        Counter counter = counter( endpoint, reason );
+        counter.total.increment();
+        counter.interval.increment();
+
+        return( (logger != null) && isEnabled( logger, level ) && sampled( logger, counter ) );
+    }
+
+
+    /**
+     * Log the counts since the previous summary, one line for all endpoints and reasons, and
+     * start a new interval.
+     *
+     * @return the counts that were logged, by {@code endpoint/reason}.
+     */
+    public Map<String, Long> summarize() {
+
+        Map<String, Long> counts = new TreeMap<>();
+
+        for ( Map.Entry<String, ConcurrentMap<String, Counter>> endpoint : counters.entrySet() ) {
+            for ( Map.Entry<String, Counter> reason : endpoint.getValue().entrySet() ) {
+                Counter counter = reason.getValue();
+                long    count = counter.interval.sumThenReset();
+                counter.exemplars.set( 0 );
+                if ( count > 0L ) {
+                    counts.put( endpoint.getKey() + "/" + reason.getKey(), count );
+                }
+            }
+        }
+
+        if ( ! counts.isEmpty() ) {
+            LOGGER.warn( "Rejections since last summary: {}", counts );
+        }
+        return( counts );
+    }
+
+
+    /**
+     * @return rejections of the endpoint and reason since startup.
+     */
+    public long getTotal( String endpoint, String reason ) {
+
+        Map<String, Counter> reasons = counters.get( endpoint );
+        Counter              counter = ( reasons != null ) ? reasons.get( reason ) : null;
+        return( ( counter != null ) ? counter.total.sum() : 0L );
+    }
+
+
+    private Counter counter( String endpoint, String reason ) {
+
+        ConcurrentMap<String, Counter> reasons = counters.get( endpoint );
+        if ( reasons == null ) {
+            reasons = counters.computeIfAbsent( endpoint, e -> new ConcurrentHashMap<>() );
+        }
+
+        Counter counter = reasons.get( reason );
+        if ( counter == null ) {
+            counter = reasons.computeIfAbsent( reason, r -> new Counter() );
+        }
+        return( counter );
+    }
+
+
+    private boolean sampled( Logger logger, Counter counter ) {
+
+        if ( (counter.exemplars.get() < exemplarsPerInterval) && (counter.exemplars.incrementAndGet() <= exemplarsPerInterval) ) {
+            return( true );
+        }
+
+        Double rate = sampleRates.get( logger.getName() );
+        double sampleRate = ( rate != null ) ? rate : defaultSampleRate;
+        return( (sampleRate > 0.0) && (random.getAsDouble() < sampleRate) );
+    }
+
+
+    private static boolean isEnabled( Logger logger, Level level ) {
+
+        switch ( level ) {
+            case ERROR:     return( logger.isErrorEnabled() );
+            case WARN:      return( logger.isWarnEnabled() );
+            case INFO:      return( logger.isInfoEnabled() );
+            case DEBUG:     return( logger.isDebugEnabled() );
+            default:        return( logger.isTraceEnabled() );
+        }
+    }
+
+
+}
@@ -0,0 +1,85 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.simulation;
+
+import java.util.Random;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+
+/**
+ * Distribution that simulated call latencies are drawn from.
+ */
+public interface LatencyDistribution {
+
+    /**
+     * Shapes selectable from configuration; see {@link #of}.
+     */
+    enum Shape {
+        FIXED,
+        UNIFORM,
+        EXPONENTIAL,
+        LOG_NORMAL
+    }
+
+
+    /**
+     * @return one latency sample, in microseconds (never negative).
+     */
+    long sampleMicros( Random random );
+
+
+    static LatencyDistribution fixed( double millis ) {
+
+        Preconditions.checkArgument( millis >= 0.0, "Negative latency: %s", millis );
+        final long micros = Math.round( millis * 1000.0 );
+        return( random -> micros );
+    }
+
+
+    static LatencyDistribution uniform( double minMillis, double maxMillis ) {
+
+        Preconditions.checkArgument( (minMillis >= 0.0) && (maxMillis >= minMillis),
+                                     "Invalid uniform latency range [%s, %s]", minMillis, maxMillis );
+        return( random -> Math.round( (minMillis + (random.nextDouble() * (maxMillis - minMillis))) * 1000.0 ) );
+    }
+
+
+    static LatencyDistribution exponential( double meanMillis ) {
+
+        Preconditions.checkArgument( meanMillis >= 0.0, "Negative latency: %s", meanMillis );
+        return( random -> Math.round( -Math.log( 1.0 - random.nextDouble() ) * meanMillis * 1000.0 ) );
+    }
+
+
+    /**
+     * Long-tailed latencies: half the samples fall below {@code medianMillis}, and
+     * {@code sigma} widens the tail (around 0.5 is typical of a busy remote service).
+     */
+    static LatencyDistribution logNormal( double medianMillis, double sigma ) {
+
+        Preconditions.checkArgument( (medianMillis >= 0.0) && (sigma >= 0.0),
+                                     "Invalid log-normal latency: median=%s, sigma=%s", medianMillis, sigma );
+        return( random -> Math.round( medianMillis * Math.exp( sigma * random.nextGaussian() ) * 1000.0 ) );
+    }
+
+
+    /**
+     * @param millis     the fixed latency, uniform minimum, exponential mean or log-normal median
+     * @param parameter  the uniform maximum (millis) or log-normal sigma; ignored otherwise
+     */
+    static LatencyDistribution of( Shape shape, double millis, double parameter ) {
+
+        Preconditions.checkArgument( shape != null, "No LatencyDistribution.Shape object provided (null)" );
+
+        switch ( shape ) {
+            case UNIFORM:       return( uniform( millis, parameter ) );
+            case EXPONENTIAL:   return( exponential( millis ) );
+            case LOG_NORMAL:    return( logNormal( millis, parameter ) );
+            default:            return( fixed( millis ) );
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.simulation;
+
+import org.familysearch.cmp.authorization.util.NamedDaemonThreadFactory;
+import org.familysearch.identity.api.IdentityService;
+import org.familysearch.identity.api.PermissionSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+
+
+/**
+ * In-process stand-in for the CIS/CAS identity service, for load testing on one machine
+ * with no network.  CAS permission lookups ({@code isAuthorized}) are answered from
+ * per-session permission tables after a latency drawn from a {@link LatencyDistribution},
+ * failing at a configurable rate; call counters record what the simulated service saw.
+ * <p>
+ * Other identity service calls are passed to an optional delegate, and are otherwise
+ * unsupported.  Use {@link #asIdentityService()} wherever an IdentityService is wanted,
+ * e.g. in AuthorizationBeans under the {@link #PROFILE} Spring profile.
+ */
+public class SimulatedIdentityService implements AutoCloseable {
+
+    /**
+     * Spring profile under which AuthorizationBeans uses a simulated identity service.
+     */
+    public static final String PROFILE = "cmp-auth-simulated-identity";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SimulatedIdentityService.class );
+    private static final String NULL_REQUIRED_ARG = "No %s object provided (null)";
+
+
+    private final LatencyDistribution                   latency;
+    private final double                                errorRate;
+    private final ScheduledExecutorService              responder;
+    private final Map<String, Set<String>>              sessionPermissions = new ConcurrentHashMap<>();
+    private final IdentityService                       delegate;
+    private final IdentityService                       proxy;
+
+    private volatile Set<String>                        defaultPermissions = Collections.emptySet();
+
+    private final LongAdder                             calls = new LongAdder();
+    private final LongAdder                             failures = new LongAdder();
+    private final LongAdder                             permissionsRequested = new LongAdder();
+    private final LongAdder                             permissionsGranted = new LongAdder();
+    private final Map<String, LongAdder>                callsBySession = new ConcurrentHashMap<>();
+
+
+    public SimulatedIdentityService( LatencyDistribution latency, double errorRate, int responderThreads ) {
+        this( latency, errorRate, responderThreads, null );
+    }
+
+
+    /**
+     * @param latency          distribution each lookup's response delay is drawn from
+     * @param errorRate        fraction (0..1) of lookups that fail
+     * @param responderThreads threads completing delayed responses
+     * @param delegate         identity service for calls other than {@code isAuthorized}; may be null
+     */
+    public SimulatedIdentityService( LatencyDistribution    latency,
+                                     double                 errorRate,
+                                     int                    responderThreads,
+                                     IdentityService        delegate ) {
+
+        Preconditions.checkArgument( latency != null, String.format( NULL_REQUIRED_ARG, "LatencyDistribution" ) );
+        Preconditions.checkArgument( (errorRate >= 0.0) && (errorRate <= 1.0), "Error rate must be within 0..1: %s", errorRate );
+        Preconditions.checkArgument( responderThreads > 0, "Responder threads must be positive: %s", responderThreads );
+
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.delegate = delegate;
+        this.responder = Executors.newScheduledThreadPool( responderThreads, new NamedDaemonThreadFactory( "simulated-identity" ) );
+        this.proxy = (IdentityService) Proxy.newProxyInstance( IdentityService.class.getClassLoader(),
+                                                               new Class<?>[] { IdentityService.class },
+                                                               ( target, method, args ) -> invoke( method, args ) );
+    }
+
+
+    public IdentityService asIdentityService() {
+        return( proxy );
+    }
+
+
+    /**
+     * Grant {@code permissions} to {@code sessionId}, replacing what it had.
+     */
+    public SimulatedIdentityService grant( String sessionId, Collection<String> permissions ) {
+
+        Preconditions.checkArgument( sessionId != null, String.format( NULL_REQUIRED_ARG, "SessionId" ) );
+        sessionPermissions.put( sessionId, Collections.unmodifiableSet( new HashSet<>( permissions ) ) );
+        return( this );
+    }
+
+
+    /**
+     * Permissions granted to sessions without an entry of their own.
+     */
+    public SimulatedIdentityService grantByDefault( Collection<String> permissions ) {
+
+        defaultPermissions = Collections.unmodifiableSet( new HashSet<>( permissions ) );
+        return( this );
+    }
+
+
+    public long getCallCount() {
+        return( calls.sum() );
+    }
+
+
+    public long getFailureCount() {
+        return( failures.sum() );
+    }
+
+
+    public long getPermissionsRequestedCount() {
+        return( permissionsRequested.sum() );
+    }
+
+
+    public long getPermissionsGrantedCount() {
+        return( permissionsGranted.sum() );
+    }
+
+
+    public long getCallCount( String sessionId ) {
+
+        LongAdder sessionCalls = callsBySession.get( sessionId );
+        return( (sessionCalls == null) ? 0L : sessionCalls.sum() );
+    }
+
+
+    public void resetCounters() {
+
+        calls.reset();
+        failures.reset();
+        permissionsRequested.reset();
+        permissionsGranted.reset();
+        callsBySession.clear();
+    }
+
+
+    @Override
+    public void close() {
+        responder.shutdownNow();
+    }
+
+
+    @Override
+    public String toString() {
+        return( String.format( "SimulatedIdentityService[calls=%d, failures=%d, sessions=%d]",
+                               getCallCount(), getFailureCount(), sessionPermissions.size() ) );
+    }
+
+
+    private Object invoke( Method method, Object[] args ) throws Throwable {
+
+        if ( method.getDeclaringClass() == Object.class ) {
+            switch ( method.getName() ) {
+                case "hashCode":    return( System.identityHashCode( proxy ) );
+                case "equals":      return( proxy == args[0] );
+                default:            return( toString() );
+            }
+        }
+
+        if ( "isAuthorized".equals( method.getName() ) && (args != null) && (args.length == 3) ) {
+            @SuppressWarnings( "unchecked" )
+            List<String> requested = (List<String>) args[2];
+            return( isAuthorized( (String) args[0], (String) args[1], requested ) );
+        }
+
+        if ( delegate == null ) {
+            throw new UnsupportedOperationException( "Simulated identity service does not support " + method.getName() );
+        }
+
+        try {
+            return( method.invoke( delegate, args ) );
+        }
+        catch( InvocationTargetException ex ) {
+            throw ex.getCause();
+        }
+    }
+
+
+    private CompletableFuture<PermissionSet> isAuthorized( String sessionId, String casContext, List<String> requested ) {
+
+        calls.increment();
+        callsBySession.computeIfAbsent( String.valueOf( sessionId ), s -> new LongAdder() ).increment();
+        permissionsRequested.add( requested.size() );
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean           fail = (errorRate > 0.0) && (random.nextDouble() < errorRate);
+        long              delayMicros = latency.sampleMicros( random );
+
+        CompletableFuture<PermissionSet> response = new CompletableFuture<>();
+        Runnable respond = () -> {
+            if ( fail ) {
+                failures.increment();
+                response.completeExceptionally( new IllegalStateException( "Simulated identity service failure" ) );
+            }
+            else {
+                response.complete( permissionSet( sessionId, casContext, requested ) );
+            }
+        };
+
+        if ( delayMicros <= 0L ) {
+            respond.run();
+        }
+        else {
+            responder.schedule( respond, delayMicros, TimeUnit.MICROSECONDS );
+        }
+
+        LOGGER.trace( "Simulated CAS lookup: context={}, permissions={}, delay={}us, fail={}", casContext, requested, delayMicros, fail );
+        return( response );
+    }
+
+
+    private PermissionSet permissionSet( String sessionId, String casContext, List<String> requested ) {
+
+        Set<String> held = ( sessionId == null ) ? null : sessionPermissions.get( sessionId );
+        if ( held == null ) {
+            held = defaultPermissions;
+        }
+
+        Set<String> authorized = new HashSet<>();
+        Set<String> denied = new HashSet<>();
+        for ( String permission : requested ) {
+            if ( held.contains( permission ) ) {
+                authorized.add( permission );
+            }
+            else {
+                denied.add( permission );
+            }
+        }
+
+        permissionsGranted.add( authorized.size() );
+        return( new PermissionSet( casContext, authorized, denied ) );
+    }
+
+
+}
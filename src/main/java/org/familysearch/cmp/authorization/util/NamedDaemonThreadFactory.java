@@ -0,0 +1,32 @@
+package org.familysearch.cmp.authorization.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * ThreadFactory for the library's background workers: daemon threads named
+ * {@code <prefix>-<n>} so they show up clearly in thread dumps and never keep
+ * the JVM alive on their own.
+ */
+public class NamedDaemonThreadFactory implements ThreadFactory {
+
+    private final String        namePrefix;
+    private final AtomicInteger threadCnt = new AtomicInteger();
+
+
+    public NamedDaemonThreadFactory( String namePrefix ) {
+        this.namePrefix = namePrefix;
+    }
+
+
+    @Override
+    public Thread newThread( Runnable task ) {
+
+        Thread thread = new Thread( task, namePrefix + '-' + threadCnt.incrementAndGet() );
+        thread.setDaemon( true );
+        return( thread );
+    }
+
+
+}
@@ -0,0 +1,102 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.web;
+
+import jersey.repackaged.com.google.common.base.Preconditions;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.PrefetchingFilter;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanRegistry;
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * MVC interceptor that starts a request's CAS lookup as soon as the handler is known, so
+ * the remote call overlaps body parsing and argument binding instead of starting only when
+ * the {@link org.familysearch.cmp.authorization.AuthorizationAspect} runs.
+ * <p>
+ * The interceptor takes the handler method the dispatcher has already resolved, fetches
+ * its compiled {@link AuthorizationPlan}, and hands the plan and the session ID to every
+ * {@link PrefetchingFilter} in the authorization chain.  It never fails a request: if
+ * anything goes wrong, the check simply does the lookup itself.
+ */
+public class CasPrefetchInterceptor extends HandlerInterceptorAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( CasPrefetchInterceptor.class );
+    private static final String NULL_REQUIRED_ARG = "No %s object provided (null)";
+
+
+    private final FoundationSecurityManager     securityManager;
+    private final AuthorizationPlanRegistry     planRegistry;
+    private final List<PrefetchingFilter>       prefetchingFilters;
+
+
+    public CasPrefetchInterceptor( FoundationSecurityManager        securityManager,
+                                   AuthorizationPlanRegistry        planRegistry,
+                                   AsyncAuthorizationFilterChain    filterChain ) {
+
+        Preconditions.checkArgument( securityManager != null, String.format( NULL_REQUIRED_ARG, "FoundationSecurityManager" ) );
+        Preconditions.checkArgument( planRegistry != null, String.format( NULL_REQUIRED_ARG, "AuthorizationPlanRegistry" ) );
+        Preconditions.checkArgument( filterChain != null, String.format( NULL_REQUIRED_ARG, "AsyncAuthorizationFilterChain" ) );
+
+        this.securityManager = securityManager;
+        this.planRegistry = planRegistry;
+
+        List<PrefetchingFilter> prefetching = new ArrayList<>();
+        for ( AsyncAuthorizationFilter filter : filterChain.getFilters() ) {
+            if ( filter instanceof PrefetchingFilter ) {
+                prefetching.add( (PrefetchingFilter) filter );
+            }
+        }
+        this.prefetchingFilters = Collections.unmodifiableList( prefetching );
+    }
+
+
+    @Override
+    public boolean preHandle( HttpServletRequest request, HttpServletResponse response, Object handler ) {
+
+        if ( ! prefetchingFilters.isEmpty() && (handler instanceof HandlerMethod) ) {
+            try {
+                prefetch( (HandlerMethod) handler );
+            }
+            catch( RuntimeException ex ) {
+                LOGGER.debug( "CAS prefetch skipped", ex );
+            }
+        }
+
+        return( true );
+    }
+
+
+    private void prefetch( HandlerMethod handler ) {
+
+        AuthorizationPlan plan = planRegistry.planFor( handler.getMethod() );
+        if ( plan == null ) {
+            return;
+        }
+
+        String sessionID = securityManager.authenticatedSessionID();
+        if ( sessionID == null ) {
+            return;
+        }
+
+        for ( PrefetchingFilter filter : prefetchingFilters ) {
+            filter.prefetch( sessionID, plan );
+        }
+    }
+
+
+}
@@ -5,9 +5,13 @@
 
 package org.familysearch.cmp.authorization;
 
+import org.familysearch.cmp.authorization.audit.AuditEventWriter;
+import org.familysearch.cmp.authorization.audit.AuthorizationAuditEvent;
+import org.familysearch.cmp.authorization.audit.AuthorizationAuditLog;
 import org.familysearch.cmp.authorization.exception.UnauthenticatedException;
 import org.familysearch.cmp.authorization.exception.UnauthorizedException;
 import org.familysearch.cmp.authorization.permissions.CmpPermission;
+import org.familysearch.cmp.authorization.util.NamedDaemonThreadFactory;
 import org.familysearch.engage.foundation.security.AuthorizationContext;
 import org.familysearch.engage.foundation.security.FoundationSecurityManager;
 
@@ -22,7 +26,25 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
-
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -59,6 +81,11 @@ public class AuthorizationAspectCT {
             return new TestResourceHttpController();
         }
 
+        @Bean
+        TestTypeLevelHttpController typeLevelController() {
+            return new TestTypeLevelHttpController();
+        }
+
         @Bean
         AuthorizationAspect authorizationAspect() {
             System.out.println( "AuthorizationAspect BEAN initialized ..." );
@@ -70,6 +97,66 @@ public class AuthorizationAspectCT {
             System.out.println( "FoundationSecurityManager BEAN initialized ..." );
             return mock( FoundationSecurityManager.class );
         }
+
+        @Bean
+        CollectingAuditWriter auditWriter() {
+            return new CollectingAuditWriter();
+        }
+
+        @Bean( destroyMethod = "close" )
+        AuthorizationAuditLog auditLog() {
+            return new AuthorizationAuditLog( 1024, auditWriter(), new NamedDaemonThreadFactory( "test-audit-writer" ) );
+        }
+
+        @Bean
+        PendingAsyncFilter asyncFilter() {
+            return new PendingAsyncFilter();
+        }
+
+        @Bean
+        AsyncAuthorizationFilterChain asyncFilterChain() {
+            return new AsyncAuthorizationFilterChain( Collections.singletonList( asyncFilter() ) );
+        }
+
+        @Bean( name = AuthorizationAspect.CONTINUATION_EXECUTOR, destroyMethod = "shutdownNow" )
+        ExecutorService continuationExecutor() {
+            return Executors.newFixedThreadPool( 1, new NamedDaemonThreadFactory( "test-continuation" ) );
+        }
+    }
+
+
+    /**
+     * Async filter whose decision the tests complete by hand.
+     */
+    static class PendingAsyncFilter implements AsyncAuthorizationFilter {
+
+        volatile CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        volatile int                        calls;
+
+        @Override
+        public CompletableFuture<Boolean> isAuthorizedAsync( AsyncAuthorizationFilterChain filterChain,
+                                                             AuthorizationContext          context ) {
+            ++calls;
+            return decision;
+        }
+    }
+
+
+    /**
+     * Keeps the audited events for the tests to inspect.
+     */
+    static class CollectingAuditWriter implements AuditEventWriter {
+
+        final BlockingQueue<AuthorizationAuditEvent> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void write( List<AuthorizationAuditEvent> batch ) {
+            events.addAll( batch );
+        }
+
+        @Override
+        public void close() {
+        }
     }
 
 
@@ -86,9 +173,18 @@ public class AuthorizationAspectCT {
     @Autowired
     private TestResourceHttpController advisedController;
 
+    @Autowired
+    private TestTypeLevelHttpController typeLevelController;
+
     @Autowired
     private FoundationSecurityManager securityManager;
 
+    @Autowired
+    private CollectingAuditWriter auditWriter;
+
+    @Autowired
+    private PendingAsyncFilter asyncFilter;
+
 
 
     @Before
@@ -99,6 +195,9 @@ public class AuthorizationAspectCT {
         ++testCnt;
 
         reset( securityManager );
+        auditWriter.events.clear();
+        asyncFilter.decision = new CompletableFuture<>();
+        asyncFilter.calls = 0;
 
         System.out.println( String.format( "\nTest %d Setup", testCnt ) );
         System.out.flush();
@@ -185,6 +284,66 @@ public class AuthorizationAspectCT {
     }
 
 
+    @Test
+    public void testUnauthenticated_NullSessionId_Audited()
+        throws Exception {
+
+        System.out.println( "  No Session Available Test (Audited)" );
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( null );
+        try {
+            advisedController.protectedResourceMethod( TEST_ARG );
+            throw new AssertionError( "Expected an UnauthenticatedException" );
+        }
+        catch( UnauthenticatedException ex ) {
+            // expected
+        }
+
+        AuthorizationAuditEvent event = awaitAuditedError( "UnauthenticatedException" );
+        assertThat( event.getEndpoint(), equalTo( "TestResourceHttpController.protectedResourceMethod" ) );
+        assertThat( event.isGranted(), is( false ) );
+        assertThat( event.getSessionFingerprint(), nullValue() );
+    }
+
+
+    @Test
+    public void testUnauthenticated_SessionFilterRejects_AuditedWithoutToken()
+        throws Exception {
+
+        System.out.println( "  Expired Session Test (Audited Without Token)" );
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.isAuthorized( Mockito.any( AuthorizationContext.class ) ) )
+            .thenThrow( new UnauthenticatedException( "Session expired" ) );
+        try {
+            advisedController.protectedResourceMethod( TEST_ARG );
+            throw new AssertionError( "Expected an UnauthenticatedException" );
+        }
+        catch( UnauthenticatedException ex ) {
+            // expected
+        }
+
+        AuthorizationAuditEvent event = awaitAuditedError( "UnauthenticatedException" );
+        assertThat( event.isGranted(), is( false ) );
+        assertThat( event.getSessionFingerprint(), notNullValue() );
+        assertThat( event.getSessionFingerprint().contains( TEST_VALID_SESSION ), is( false ) );
+        assertThat( event.toString().contains( TEST_VALID_SESSION ), is( false ) );
+    }
+
+
+    private AuthorizationAuditEvent awaitAuditedError( String error )
+        throws InterruptedException {
+
+        AuthorizationAuditEvent event;
+        while ( (event = auditWriter.events.poll( 5L, TimeUnit.SECONDS )) != null ) {
+            if ( error.equals( event.getError() ) ) {
+                return event;
+            }
+        }
+        throw new AssertionError( "No audit event recorded for " + error );
+    }
+
+
     @Test( expected = UnauthorizedException.class )
     public void testAdvise_unauthorized() {
 
@@ -199,6 +358,201 @@ public class AuthorizationAspectCT {
 
 
 
+    @Test
+    public void test_Authorized_AsyncResult_BlockingFallback()
+        throws Exception {
+
+        System.out.println( "  Async Result Without Async Chain Test (OK)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.isAuthorized( Mockito.any( AuthorizationContext.class ) ) ).thenReturn( true );
+
+        CompletableFuture<String> output = advisedController.protectedAsyncResourceMethod( TEST_ARG );
+
+        assertThat( output.get(), equalTo( TEST_ARG ) );
+        verify( securityManager, times(1 ) ).isAuthorized( any( AuthorizationContext.class ) );
+    }
+
+
+    @Test
+    public void test_Authorized_AsyncHandler_DecidedOffTheCallingThread()
+        throws Exception {
+
+        System.out.println( "  Async Handler Test (OK)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+
+        CompletableFuture<String> output = advisedController.protectedAsyncHandlerMethod( TEST_ARG );
+
+        assertThat( output.isDone(), is( false ) );
+        asyncFilter.decision.complete( true );
+        assertThat( output.get( 5L, TimeUnit.SECONDS ), equalTo( TEST_ARG ) );
+        assertThat( asyncFilter.calls, equalTo( 1 ) );
+        verify( securityManager, times(0) ).isAuthorized( any( AuthorizationContext.class ) );
+    }
+
+
+    @Test
+    public void test_Authorized_AsyncResult_NotAHandler_CheckedBeforeItRuns()
+        throws Exception {
+
+        System.out.println( "  Async Result Outside a Handler Test (OK)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.isAuthorized( Mockito.any( AuthorizationContext.class ) ) ).thenReturn( true );
+
+        CompletableFuture<String> output = advisedController.protectedAsyncResourceMethod( TEST_ARG );
+
+        assertThat( output.isDone(), is( true ) );
+        assertThat( asyncFilter.calls, equalTo( 0 ) );
+        verify( securityManager, times(1) ).isAuthorized( any( AuthorizationContext.class ) );
+    }
+
+
+    @Test( expected = UnauthorizedException.class )
+    public void testAdvise_AsyncResult_unauthorized() {
+
+        System.out.println( "  Async Result Unauthorized Test (Unauthorized Exception)" );
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.isAuthorized( Mockito.any( AuthorizationContext.class ) ) ).thenReturn( false );
+
+        advisedController.protectedAsyncResourceMethod( TEST_ARG );
+    }
+
+
+
+
+    @Test
+    public void test_TypeLevelAnnotation_AppliesToHandlerMethods() {
+
+        System.out.println( "  Type-Level Annotation Test (OK)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        final ArgumentCaptor<AuthorizationContext> captor = ArgumentCaptor.forClass( AuthorizationContext.class );
+        when( securityManager.isAuthorized( captor.capture() ) ).thenReturn( true );
+
+        assertThat( typeLevelController.typeLevelMethod( TEST_ARG ), equalTo( TEST_ARG ) );
+        assertThat( captor.getValue().getPermissions().get(0), equalTo( CmpPermission.SessionRequired ) );
+        verify( securityManager, times(0) ).casContext();
+    }
+
+
+    @Test
+    public void test_ComposedAnnotation_OverridesTypeLevel() {
+
+        System.out.println( "  Composed Annotation Test (OK)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.casContext() ).thenReturn( TEST_CAS_CONTEXT );
+        final ArgumentCaptor<AuthorizationContext> captor = ArgumentCaptor.forClass( AuthorizationContext.class );
+        when( securityManager.isAuthorized( captor.capture() ) ).thenReturn( true );
+
+        assertThat( typeLevelController.composedAnnotationMethod( TEST_ARG ), equalTo( TEST_ARG ) );
+        assertThat( captor.getValue().getPermissions().get(0), equalTo( CmpPermission.FSMessagingAdminApiViewThread ) );
+        assertThat( captor.getValue().get( AUTH_CAS_CONTEXT_KEY ), equalTo( TEST_CAS_CONTEXT ) );
+        verify( securityManager, times(1) ).casContext();
+    }
+
+
+    @Test
+    public void test_TypeLevelAnnotation_SkipsBeanProperties() {
+
+        System.out.println( "  Type-Level Annotation Bean Property Test (Not Checked)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( null );
+
+        typeLevelController.setName( TEST_ARG );
+        assertThat( typeLevelController.getName(), equalTo( TEST_ARG ) );
+        verify( securityManager, times(0) ).authenticatedSessionID();
+        verify( securityManager, times(0) ).isAuthorized( any( AuthorizationContext.class ) );
+    }
+
+
+    @Test( expected = UnauthorizedException.class )
+    public void testAdvise_TypeLevelAnnotation_unauthorized() {
+
+        System.out.println( "  Type-Level Annotation Unauthorized Test (Unauthorized Exception)" );
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.isAuthorized( Mockito.any( AuthorizationContext.class ) ) ).thenReturn( false );
+
+        typeLevelController.typeLevelMethod( TEST_ARG );
+    }
+
+
+    @Test
+    public void test_RequestMemo_EvaluatesPermissionSetOncePerRequest() {
+
+        System.out.println( "  Request Memo Test (OK)");
+
+        when( securityManager.authenticatedSessionID() ).thenReturn( TEST_VALID_SESSION );
+        when( securityManager.isAuthorized( Mockito.any( AuthorizationContext.class ) ) ).thenReturn( true );
+
+        RequestContextHolder.setRequestAttributes( new MapRequestAttributes() );
+        try {
+            advisedController.protectedResourceMethod( TEST_ARG );
+            advisedController.protectedResourceMethod( TEST_ARG );
+        }
+        finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        verify( securityManager, times(1) ).authenticatedSessionID();
+        verify( securityManager, times(1) ).isAuthorized( any( AuthorizationContext.class ) );
+    }
+
+
+
+
+    /**
+     * Minimal request-scoped attribute store standing in for a servlet request.
+     */
+    static class MapRequestAttributes implements RequestAttributes {
+
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        @Override
+        public Object getAttribute( String name, int scope ) {
+            return attributes.get( name );
+        }
+
+        @Override
+        public void setAttribute( String name, Object value, int scope ) {
+            attributes.put( name, value );
+        }
+
+        @Override
+        public void removeAttribute( String name, int scope ) {
+            attributes.remove( name );
+        }
+
+        @Override
+        public String[] getAttributeNames( int scope ) {
+            return attributes.keySet().toArray( new String[0] );
+        }
+
+        @Override
+        public void registerDestructionCallback( String name, Runnable callback, int scope ) {
+        }
+
+        @Override
+        public Object resolveReference( String key ) {
+            return null;
+        }
+
+        @Override
+        public String getSessionId() {
+            return TEST_VALID_SESSION;
+        }
+
+        @Override
+        public Object getSessionMutex() {
+            return this;
+        }
+    }
+
+
     static class TestResourceHttpController {
 
         @PermissionRequired( value = {CmpPermission.SessionRequired} )
@@ -214,7 +568,54 @@ public class AuthorizationAspectCT {
             return in;
         }
 
+        @PermissionRequired( value = {CmpPermission.SessionRequired} )
+        public CompletableFuture<String> protectedAsyncResourceMethod( String in ) {
+            System.out.println( "  <<< ProtectedAsyncResourceMethod called >>>" );
+            return CompletableFuture.completedFuture( in );
+        }
+
+        @GetMapping( "/async" )
+        @PermissionRequired( value = {CmpPermission.SessionRequired} )
+        public CompletableFuture<String> protectedAsyncHandlerMethod( String in ) {
+            System.out.println( "  <<< ProtectedAsyncHandlerMethod called >>>" );
+            return CompletableFuture.completedFuture( in );
+        }
+
+
+    }
+
+
+    @Retention( RetentionPolicy.RUNTIME )
+    @Target( { ElementType.METHOD, ElementType.TYPE } )
+    @PermissionRequired( value = {CmpPermission.FSMessagingAdminApiViewThread}, requireCheckSessionCasContext = true )
+    @interface AdminThreadAccess {
+    }
 
+
+    @PermissionRequired( value = {CmpPermission.SessionRequired} )
+    static class TestTypeLevelHttpController {
+
+        private String name;
+
+        @RequestMapping( "/type-level" )
+        public String typeLevelMethod( String in ) {
+            System.out.println( "  <<< TypeLevelMethod called >>>" );
+            return in;
+        }
+
+        @AdminThreadAccess
+        public String composedAnnotationMethod( String in ) {
+            System.out.println( "  <<< ComposedAnnotationMethod called >>>" );
+            return in;
+        }
+
+        public void setName( String name ) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
     }
 
 }
@@ -5,6 +5,17 @@
 
 package org.familysearch.cmp.authorization;
 
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.cmp.authorization.cache.NegativeResultCache;
+import org.familysearch.cmp.authorization.cache.PermissionDecisionCache;
+import org.familysearch.cmp.authorization.cache.TtlPermissionDecisionCache;
+import org.familysearch.cmp.authorization.cas.CasTimeoutFallback;
+import org.familysearch.cmp.authorization.cas.CircuitBreaker;
+import org.familysearch.cmp.authorization.cas.FutureBridge;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.familysearch.cmp.authorization.permissions.PermissionImplications;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanRegistry;
 import org.familysearch.engage.foundation.security.AuthorizationContext;
 import org.familysearch.engage.foundation.security.AuthorizationFilterChain;
 import org.familysearch.engage.foundation.security.FoundationSecurityManager;
@@ -14,26 +25,45 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingAdminApiModifyThread;
 import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingAdminApiViewThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.MessagingClientRole;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -125,6 +155,176 @@ public class CASAuthorizationFilterTest {
     }
 
 
+    @Test
+    public void isAuthorized_repeatedDenial_answeredFromDenialCache()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Denial Cache)" );
+
+        TtlPermissionDecisionCache decisionCache = new TtlPermissionDecisionCache( 10, 1L, TimeUnit.MINUTES );
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    Collections.singleton( SessionRequired.name() ), decisionCache );
+        testCasFilter.setDenialCache( new NegativeResultCache<>( 10, 1L, TimeUnit.MINUTES ) );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( false ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( false ) );
+
+        verify( mockIdentityService, times(1) ).isAuthorized( anyString(), anyString(), anyList() );
+        verify( mockFilterChain, times(2) ).isAuthorized( context );
+        assertThat( decisionCache.stats().getSize(), equalTo( 0L ) );
+    }
+
+
+    @Test
+    public void isAuthorized_entryDueForRefresh_reloadedInBackground()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Refresh Ahead)" );
+
+        PermissionDecisionCache decisionCache = mock( PermissionDecisionCache.class );
+        PermissionSet           granted = new PermissionSet( TEST_CAS_CONTEXT, Collections.singleton( SessionRequired.name() ),
+                                                             Collections.<String>emptySet() );
+        List<Runnable>          refreshes = new ArrayList<>();
+
+        when( decisionCache.getIfPresent( any( CasDecisionKey.class ) ) ).thenReturn( granted );
+        when( decisionCache.claimRefresh( any( CasDecisionKey.class ) ) ).thenReturn( true, false );
+
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    Collections.singleton( SessionRequired.name() ), decisionCache );
+        testCasFilter.setRefreshExecutor( refreshes::add );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( true ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( true ) );
+
+        // answered from the cache; the one refresh is queued, not run on the request thread
+        verify( mockIdentityService, times(0) ).isAuthorized( anyString(), anyString(), anyList() );
+        assertThat( refreshes.size(), equalTo( 1 ) );
+
+        refreshes.get( 0 ).run();
+        verify( mockIdentityService, times(1) ).isAuthorized( anyString(), anyString(), anyList() );
+        verify( decisionCache, times(1) ).put( any( CasDecisionKey.class ), eq( permissionSet ) );
+    }
+
+
+    @Test
+    public void isAuthorized_grantRefreshedToDenial_nextCheckRejected()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Refresh Revokes Grant)" );
+
+        PermissionSet   granted = new PermissionSet( TEST_CAS_CONTEXT, Collections.singleton( SessionRequired.name() ),
+                                                     Collections.<String>emptySet() );
+        List<Runnable>  refreshes = new ArrayList<>();
+
+        // due for a refresh almost as soon as it is cached
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    Collections.singleton( SessionRequired.name() ),
+                                                    new TtlPermissionDecisionCache( 10, 1L, 0L, TimeUnit.MINUTES, 0.0, 1.0E-9 ) );
+        testCasFilter.setDenialCache( new NegativeResultCache<>( 10, 1L, TimeUnit.MINUTES ) );
+        testCasFilter.setRefreshExecutor( refreshes::add );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockFuturePermissionSet.get() ).thenReturn( granted, permissionSet );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( true ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( true ) );
+        assertThat( refreshes.size(), equalTo( 1 ) );
+
+        refreshes.get( 0 ).run();                                      // CAS now denies the permission
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( false ) );
+
+        verify( mockIdentityService, times(2) ).isAuthorized( anyString(), anyString(), anyList() );
+    }
+
+
+    @Test
+    public void isAuthorized_snapshot_oneLookupForDifferentPermissionSets()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Permission Snapshot)" );
+
+        Set<String> handled = new HashSet<>();
+        handled.add( SessionRequired.name() );
+        handled.add( FSMessagingAdminApiViewThread.name() );
+        handled.add( MessagingClientRole.name() );
+
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT, handled,
+                                                    new TtlPermissionDecisionCache( 10, 1L, TimeUnit.MINUTES ) );
+        testCasFilter.setSnapshotEnabled( true );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockFuturePermissionSet.get() ).thenReturn( new PermissionSet( TEST_CAS_CONTEXT,
+                                                                             Collections.singleton( FSMessagingAdminApiViewThread.name() ),
+                                                                             Collections.<String>emptySet() ) );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, new AuthorizationContext( FSMessagingAdminApiViewThread ) ), is( true ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, new AuthorizationContext( MessagingClientRole ) ), is( false ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, new AuthorizationContext( SessionRequired,
+                                                                                             FSMessagingAdminApiViewThread ) ), is( true ) );
+
+        ArgumentCaptor<List> requested = ArgumentCaptor.forClass( List.class );
+        verify( mockIdentityService, times(1) ).isAuthorized( anyString(), anyString(), requested.capture() );
+        assertThat( new HashSet<>( requested.getValue() ), equalTo( handled ) );
+    }
+
+
+    @Test
+    public void isAuthorized_impliedPermission_satisfiedByImplyingGrant()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Implied Permission)" );
+
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    Collections.singleton( FSMessagingAdminApiModifyThread.name() ) );
+        testCasFilter.setImplications( PermissionImplications.recommended() );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockFuturePermissionSet.get() ).thenReturn( new PermissionSet( TEST_CAS_CONTEXT,
+                                                                             Collections.singleton( FSMessagingAdminApiModifyThread.name() ),
+                                                                             Collections.<String>emptySet() ) );
+
+        assertThat( testCasFilter.getHandledPermissionMask(),
+                    equalTo( CmpPermissionMask.of( FSMessagingAdminApiModifyThread, FSMessagingAdminApiViewThread ) ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, new AuthorizationContext( FSMessagingAdminApiViewThread ) ), is( true ) );
+
+        verify( mockIdentityService, times(1) ).isAuthorized( TEST_CIS_SESSION_ID, TEST_CAS_CONTEXT,
+                                                              Collections.singletonList( FSMessagingAdminApiModifyThread.name() ) );
+        verify( mockFilterChain, never() ).isAuthorized( any( AuthorizationContext.class ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void construct_undefinedHandledPermission_rejected() {
+
+        System.out.println( "  Test Construct (Undefined Handled Permission)" );
+
+        Set<String> expectedPermissions = new HashSet<>();
+        expectedPermissions.add( "NotACmpPermission" );
+
+        new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT, expectedPermissions );
+    }
+
+
+    @Test
+    public void isAuthorized_requestsOnlyHandledPermissions()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Only Handled Permissions Requested)" );
+
+        permissionSet.getAuthorizedPermissions().add( SessionRequired.name() );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+
+        AuthorizationContext context = new AuthorizationContext( MessagingClientRole, SessionRequired );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( true ) );
+        verify( mockIdentityService )
+            .isAuthorized( eq( TEST_CIS_SESSION_ID ), eq( TEST_CAS_CONTEXT ),
+                           eq( Collections.singletonList( SessionRequired.name() ) ) );
+    }
+
+
     @Test
     public void isAuthorized()
         throws Exception {
@@ -220,5 +420,255 @@ public class CASAuthorizationFilterTest {
         verify( mockFilterChain ).isAuthorized( context );
     }
 
-}
 
+    @Test
+    public void isAuthorized_cachedDecision_skipsIdentityService()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Decision Cache)" );
+
+        Set<String> expectedPermissions = new HashSet<>();
+        expectedPermissions.add( SessionRequired.name() );
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    expectedPermissions,
+                                                    new TtlPermissionDecisionCache( 10, 1L, TimeUnit.MINUTES ) );
+
+        permissionSet.getAuthorizedPermissions().add( SessionRequired.name() );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, new AuthorizationContext( SessionRequired ) ), is( true ) );
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, new AuthorizationContext( SessionRequired ) ), is( true ) );
+
+        verify( mockIdentityService, times(1) ).isAuthorized( anyString(), anyString(), anyList() );
+        assertThat( testCasFilter.getPermissionCache().stats().getHitCount(), equalTo( 1L ) );
+    }
+
+
+    @Test
+    public void isAuthorized_timeout_proceedsWithChain()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Timeout, Chain Fallback)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockFuturePermissionSet.get( anyLong(), any( TimeUnit.class ) ) ).thenThrow( new TimeoutException() );
+        testCasFilter.setLookupTimeout( 50L, TimeUnit.MILLISECONDS );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( false ) );
+        verify( mockFilterChain ).isAuthorized( context );
+        verify( mockFuturePermissionSet ).get( 50L, TimeUnit.MILLISECONDS );
+        assertThat( testCasFilter.getLookupStats().getTimeoutCount(), equalTo( 1L ) );
+    }
+
+
+    @Test
+    public void isAuthorized_timeout_configuredFallback()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Timeout, Deny Fallback)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockFuturePermissionSet.get( anyLong(), any( TimeUnit.class ) ) ).thenThrow( new TimeoutException() );
+        testCasFilter.setLookupTimeout( 50L, TimeUnit.MILLISECONDS );
+        testCasFilter.setTimeoutFallback( CasTimeoutFallback.DENY );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( false ) );
+        verify( mockFilterChain, never() ).isAuthorized( context );
+    }
+
+
+    @Test
+    public void isAuthorized_contextBudget_overridesDefault()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Per-Call Budget)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        permissionSet.getAuthorizedPermissions().add( SessionRequired.name() );
+        when( mockFuturePermissionSet.get( anyLong(), any( TimeUnit.class ) ) ).thenReturn( permissionSet );
+        testCasFilter.setLookupTimeout( 50L, TimeUnit.MILLISECONDS );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+        context.put( CASAuthorizationFilter.KEY_CAS_TIMEOUT_MILLIS, 250L );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( true ) );
+        verify( mockFuturePermissionSet ).get( 250L, TimeUnit.MILLISECONDS );
+    }
+
+
+    @Test
+    public void isAuthorized_breakerOpen_skipsIdentityService()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorized (Circuit Breaker Open)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockIdentityService.isAuthorized( anyString(), anyString(), anyList() ) )
+            .thenThrow( new IllegalStateException( "What Happened?" ) );
+
+        CircuitBreaker breaker = new CircuitBreaker( "test", 2, 2, 0.5, 1.0, 1000L, 60000L, 1 );
+        testCasFilter.setCircuitBreaker( breaker );
+
+        AuthorizationContext context = new AuthorizationContext( SessionRequired );
+        testCasFilter.isAuthorized( mockFilterChain, context );
+        testCasFilter.isAuthorized( mockFilterChain, context );
+        assertThat( breaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+
+        assertThat( testCasFilter.isAuthorized( mockFilterChain, context ), is( false ) );
+        verify( mockIdentityService, times(2) ).isAuthorized( anyString(), anyString(), anyList() );
+        verify( mockFilterChain, times(3) ).isAuthorized( context );
+    }
+
+
+    @Test
+    public void isAuthorizedAsync_casMatch()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorizedAsync (CAS Match)" );
+
+        permissionSet.getAuthorizedPermissions().add( SessionRequired.name() );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockIdentityService.isAuthorized( anyString(), anyString(), anyList() ) )
+            .thenReturn( CompletableFuture.completedFuture( permissionSet ) );
+
+        FutureBridge bridge = new FutureBridge( 1 );
+        try {
+            testCasFilter.setFutureBridge( bridge );
+            AsyncAuthorizationFilterChain chain = new AsyncAuthorizationFilterChain( Collections.singletonList( testCasFilter ) );
+
+            assertThat( chain.isAuthorizedAsync( new AuthorizationContext( SessionRequired ) ).get( 5L, TimeUnit.SECONDS ),
+                        is( true ) );
+        }
+        finally {
+            bridge.close();
+        }
+    }
+
+
+    @Test
+    public void prefetch_checkPicksUpLookupInFlight()
+        throws Exception {
+
+        System.out.println( "  Test Prefetch (Lookup In Flight)" );
+
+        CompletableFuture<PermissionSet> remote = new CompletableFuture<>();
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+        when( mockIdentityService.isAuthorized( anyString(), anyString(), anyList() ) ).thenReturn( (Future) remote );
+
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    Collections.singleton( SessionRequired.name() ),
+                                                    new TtlPermissionDecisionCache( 10, 1L, TimeUnit.MINUTES ) );
+        Method method = PrefetchedResource.class.getMethod( "sessionOnly" );
+        AuthorizationPlan plan = new AuthorizationPlanRegistry().planFor( method, method.getAnnotation( PermissionRequired.class ) );
+
+        FutureBridge bridge = new FutureBridge( 1 );
+        try {
+            testCasFilter.setFutureBridge( bridge );
+
+            assertThat( testCasFilter.prefetch( TEST_CIS_SESSION_ID, plan ), is( true ) );
+            assertThat( testCasFilter.prefetch( TEST_CIS_SESSION_ID, plan ), is( false ) );
+
+            CompletableFuture<Boolean> decision = new AsyncAuthorizationFilterChain( Collections.singletonList( testCasFilter ) )
+                                                      .isAuthorizedAsync( plan.newContext() );
+            assertThat( decision.isDone(), is( false ) );
+
+            remote.complete( new PermissionSet( TEST_CAS_CONTEXT, Collections.singleton( SessionRequired.name() ),
+                                                Collections.<String>emptySet() ) );
+
+            assertThat( decision.get( 5L, TimeUnit.SECONDS ), is( true ) );
+            assertThat( testCasFilter.isAuthorized( mockFilterChain, plan.newContext() ), is( true ) );
+            verify( mockIdentityService, times(1) ).isAuthorized( anyString(), anyString(), anyList() );
+        }
+        finally {
+            bridge.close();
+        }
+    }
+
+
+    @Test
+    public void prefetch_racingPrefetches_takeOneHalfOpenTrial()
+        throws Exception {
+
+        System.out.println( "  Test Prefetch (Racing Prefetches, Half-Open Breaker)" );
+
+        testCasFilter = new CASAuthorizationFilter( mockSecurityManager, mockIdentityService, TEST_CAS_CONTEXT,
+                                                    Collections.singleton( SessionRequired.name() ),
+                                                    new TtlPermissionDecisionCache( 10, 1L, TimeUnit.MINUTES ) );
+        Method method = PrefetchedResource.class.getMethod( "sessionOnly" );
+        AuthorizationPlan plan = new AuthorizationPlanRegistry().planFor( method, method.getAnnotation( PermissionRequired.class ) );
+
+        FutureBridge    bridge = new FutureBridge( 1 );
+        ExecutorService racers = Executors.newFixedThreadPool( 2 );
+        try {
+            testCasFilter.setFutureBridge( bridge );
+
+            for ( int round = 0; round < 100; ++round ) {
+                CompletableFuture<PermissionSet> remote = new CompletableFuture<>();
+                when( mockIdentityService.isAuthorized( anyString(), anyString(), anyList() ) ).thenReturn( (Future) remote );
+
+                // two trials must succeed before the breaker closes
+                CircuitBreaker breaker = new CircuitBreaker( "test", 2, 2, 0.5, 1.0, 1000L, 1L, 2 );
+                breaker.onFailure( breaker.tryAcquire(), 0L );
+                breaker.onFailure( breaker.tryAcquire(), 0L );
+                Thread.sleep( 2L );
+                testCasFilter.setCircuitBreaker( breaker );
+
+                String            sessionID = TEST_CIS_SESSION_ID + round;
+                CyclicBarrier     start = new CyclicBarrier( 2 );
+                Callable<Boolean> prefetch = () -> {
+                    start.await();
+                    return( testCasFilter.prefetch( sessionID, plan ) );
+                };
+                Future<Boolean> first = racers.submit( prefetch );
+                Future<Boolean> second = racers.submit( prefetch );
+
+                assertThat( first.get( 5L, TimeUnit.SECONDS ) ^ second.get( 5L, TimeUnit.SECONDS ), is( true ) );
+
+                remote.complete( new PermissionSet( TEST_CAS_CONTEXT, Collections.singleton( SessionRequired.name() ),
+                                                    Collections.<String>emptySet() ) );
+
+                // the losing prefetch held no trial, so the second one is still there to take
+                long trial = breaker.tryAcquire();
+                assertThat( trial, not( CircuitBreaker.NO_PERMIT ) );
+                breaker.onSuccess( trial, 0L );
+                assertThat( breaker.getState(), equalTo( CircuitBreaker.State.CLOSED ) );
+            }
+
+            verify( mockIdentityService, times(100) ).isAuthorized( anyString(), anyString(), anyList() );
+        }
+        finally {
+            racers.shutdownNow();
+            bridge.close();
+        }
+    }
+
+
+    static class PrefetchedResource {
+
+        @PermissionRequired( SessionRequired )
+        public void sessionOnly() {
+        }
+    }
+
+
+    @Test
+    public void isAuthorizedAsync_neither_fallsOffChain()
+        throws Exception {
+
+        System.out.println( "  Test IsAuthorizedAsync (No CAS Roles)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_CIS_SESSION_ID );
+
+        AsyncAuthorizationFilterChain chain = new AsyncAuthorizationFilterChain( Collections.singletonList( testCasFilter ) );
+
+        assertThat( chain.isAuthorizedAsync( new AuthorizationContext( SessionRequired ) ).get( 5L, TimeUnit.SECONDS ),
+                    is( false ) );
+        verify( mockIdentityService )
+            .isAuthorized( eq( TEST_CIS_SESSION_ID ), eq( TEST_CAS_CONTEXT ), anyList() );
+    }
+
+}
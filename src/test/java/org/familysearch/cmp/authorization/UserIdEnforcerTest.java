@@ -1,7 +1,9 @@
 package org.familysearch.cmp.authorization;
 
 //import org.familysearch.cmp.messages.dal.entity.Participant;
+import org.familysearch.cmp.authorization.delegation.DelegationRules;
 import org.familysearch.cmp.authorization.exception.UnauthorizedException;
+import org.familysearch.cmp.authorization.reporting.RejectionReporter;
 import org.familysearch.engage.foundation.security.FoundationSecurityManager;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,11 +11,21 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -28,7 +40,7 @@ public class UserIdEnforcerTest {
     private static final String serviceAccountId = "cis.proc.MMMM-JJJ";
     private static final String wkcAccountId = "cis.wkca.MERE-ERE";
 
-//    private Set<Participant> testParticipants;
+    private Set<TestParticipant> testParticipants;
 
     // Test object
     private UserIdEnforcer testObject;
@@ -42,12 +54,12 @@ public class UserIdEnforcerTest {
         throws IOException {
         MockitoAnnotations.initMocks( this );
 
-//        testParticipants = new HashSet<>();
-//        testParticipants.add( createParticipantWithId( "participant A" ) );
-//        testParticipants.add( createParticipantWithId( "participant B" ) );
-//        testParticipants.add( createParticipantWithId( "participant C" ) );
-//        testParticipants.add( createParticipantWithId( "participant D" ) );
-//        testParticipants.add( createParticipantWithId( testUserId ) );
+        testParticipants = new HashSet<>();
+        testParticipants.add( createParticipantWithId( "participant A" ) );
+        testParticipants.add( createParticipantWithId( "participant B" ) );
+        testParticipants.add( createParticipantWithId( "participant C" ) );
+        testParticipants.add( createParticipantWithId( "participant D" ) );
+        testParticipants.add( createParticipantWithId( testUserId ) );
 
         when( mockSecurityManager.authenticatedUserID() ).thenReturn( testUserId );
         when( mockSecurityManager.authenticatedSessionID() ).thenReturn( testSessionId );
@@ -59,11 +71,9 @@ public class UserIdEnforcerTest {
   enforceCurrentUserIsParticipant
    */
 
-
-/*
     @Test
     public void enforceCurrentUserIsParticipant_shouldSucceed_whenTheAuthenticatedUserIsInTheParticipantSet() {
-        testObject.enforceCurrentUserIsParticipant( testParticipants, testActivity, LOGGER );
+        testObject.enforceCurrentUserIsParticipant( testParticipants, TestParticipant::getCisUserId, testActivity, LOGGER );
     }
 
 
@@ -72,7 +82,7 @@ public class UserIdEnforcerTest {
         testParticipants.remove( createParticipantWithId( testUserId ) );
 
         String failMsg = assertUnauthorizedException(
-            () -> testObject.enforceCurrentUserIsParticipant( testParticipants, testActivity, LOGGER )
+            () -> testObject.enforceCurrentUserIsParticipant( testParticipants, TestParticipant::getCisUserId, testActivity, LOGGER )
         );
 
         assertThat( failMsg, containsString( "Logged in user is not a participant and does not have access to perform activity" ) );
@@ -84,7 +94,7 @@ public class UserIdEnforcerTest {
         when( mockSecurityManager.authenticatedUserID() ).thenReturn( null );
 
         String failMsg = assertUnauthorizedException(
-            () -> testObject.enforceCurrentUserIsParticipant( testParticipants, testActivity, LOGGER )
+            () -> testObject.enforceCurrentUserIsParticipant( testParticipants, TestParticipant::getCisUserId, testActivity, LOGGER )
         );
 
         assertThat( failMsg, containsString( "Logged in user is not a participant and does not have access to perform activity" ) );
@@ -93,9 +103,79 @@ public class UserIdEnforcerTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void enforceCurrentUserIsParticipant_shouldThrowAnIllegalArgumentException_whenTheParticipantSetIsNull() {
-        testObject.enforceCurrentUserIsParticipant( null, testActivity, LOGGER );
+        testObject.enforceCurrentUserIsParticipant( null, TestParticipant::getCisUserId, testActivity, LOGGER );
+    }
+
+
+    @Test
+    public void enforceCurrentUserIsParticipant_shouldAllowTheServiceAccountForAWkcaParticipant() {
+        when( mockSecurityManager.authenticatedUserID() ).thenReturn( serviceAccountId );
+
+        testObject.enforceCurrentUserIsParticipant( new HashSet<>( Arrays.asList( "participant A", wkcAccountId ) ), testActivity );
+    }
+
+
+    @Test
+    public void enforceCurrentUserIsParticipant_shouldThrowUnauthorizedException_whenTheUserIdIsNotInTheIdSet() {
+
+        String failMsg = assertUnauthorizedException(
+            () -> testObject.enforceCurrentUserIsParticipant( new HashSet<>( Arrays.asList( "participant A", "participant B" ) ),
+                                                              testActivity )
+        );
+
+        assertThat( failMsg, containsString( testActivity ) );
+    }
+
+
+    @Test
+    public void enforceCurrentUserIsParticipant_countsRejectionUnderTheCheckedEndpoint() {
+
+        RejectionReporter reporter = new RejectionReporter();
+        testObject.setRejectionReporter( reporter );
+
+        RequestContextHolder.setRequestAttributes( new ServletRequestAttributes( new MockHttpServletRequest() ) );
+        try {
+            RequestAuthorizationMemo.current().recordEndpoint( "ThreadController.getMessages" );
+
+            assertUnauthorizedException(
+                () -> testObject.enforceCurrentUserIsParticipant( Collections.singleton( "participant A" ), testActivity )
+            );
+        }
+        finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        assertThat( reporter.getTotal( "ThreadController.getMessages", "not-participant" ), is( 1L ) );
+        assertThat( reporter.getTotal( testActivity, "not-participant" ), is( 0L ) );
+    }
+
+
+  /*
+  filterCurrentUserParticipation
+   */
+
+    @Test
+    public void filterCurrentUserParticipation_shouldKeepOnlyTheThreadsOfTheAuthenticatedUser() {
+
+        List<Set<String>> threads = Arrays.asList( new HashSet<>( Arrays.asList( "participant A", testUserId ) ),
+                                                   new HashSet<>( Arrays.asList( "participant A", "participant B" ) ),
+                                                   new HashSet<>( Collections.singletonList( testUserId ) ) );
+
+        List<Set<String>> result = testObject.filterCurrentUserParticipation( threads, thread -> thread );
+
+        assertThat( result, is( Arrays.asList( threads.get( 0 ), threads.get( 2 ) ) ) );
+        verify( mockSecurityManager, times( 1 ) ).authenticatedUserID();
+    }
+
+
+    @Test
+    public void filterCurrentUserParticipation_shouldReturnNothing_whenTheAuthenticatedUserIsNull() {
+        when( mockSecurityManager.authenticatedUserID() ).thenReturn( null );
+
+        List<List<String>> threads = Collections.singletonList( Collections.singletonList( testUserId ) );
+
+        assertThat( testObject.filterCurrentUserParticipation( threads, thread -> thread ).isEmpty(), is( true ) );
     }
-*/
 
 
   /*
@@ -230,6 +310,19 @@ public class UserIdEnforcerTest {
     }
 
 
+    @Test
+    public void test_configuredDelegationShouldMatch()
+        throws Exception {
+
+        // a configured rule replaces the built-in one
+        testObject.setDelegationRules( DelegationRules.of(
+            Collections.singletonMap( "cis.proc.batch*", Collections.singletonList( testUserId ) ) ) );
+
+        assertThat( testObject.userIdsMatch( "cis.proc.batch.7", testUserId ), equalTo( true ) );
+        assertThat( testObject.userIdsMatch( serviceAccountId, wkcAccountId ), equalTo( false ) );
+    }
+
+
     @Test
     public void test_regularAccountsShouldMatch()
         throws Exception {
@@ -243,12 +336,36 @@ public class UserIdEnforcerTest {
   /*
   Helper methods
    */
-/*
-    private Participant createParticipantWithId( String id ) {
-        Participant p = new Participant( id, 0, null );
-        return p;
+    private TestParticipant createParticipantWithId( String id ) {
+        return new TestParticipant( id );
+    }
+
+
+    /**
+     * Stand-in for the messaging service's participant entity; equal by User-ID.
+     */
+    private static class TestParticipant {
+
+        private final String cisUserId;
+
+        TestParticipant( String cisUserId ) {
+            this.cisUserId = cisUserId;
+        }
+
+        String getCisUserId() {
+            return cisUserId;
+        }
+
+        @Override
+        public boolean equals( Object other ) {
+            return ( other instanceof TestParticipant ) && cisUserId.equals( ((TestParticipant) other).cisUserId );
+        }
+
+        @Override
+        public int hashCode() {
+            return cisUserId.hashCode();
+        }
     }
-*/
 
 
     private String assertUnauthorizedException( Runnable function ) {
@@ -6,6 +6,7 @@
 
 package org.familysearch.cmp.authorization;
 
+import org.familysearch.cmp.authorization.cache.NegativeResultCache;
 import org.familysearch.cmp.authorization.exception.UnauthenticatedException;
 import org.familysearch.cmp.authorization.permissions.CmpPermission;
 import org.familysearch.engage.foundation.security.AuthorizationContext;
@@ -16,6 +17,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -24,6 +30,7 @@ import org.mockito.MockitoAnnotations;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 
@@ -98,6 +105,56 @@ public class ValidSessionOnlyAuthorizationFilterTest {
     }
 
 
+    @Test
+    public void testIsAuthorized_UnauthenticatedSessionRemembered()
+        throws Exception {
+
+        System.out.println( "  Test isAuthorized (Unauthenticated Session Cached)" );
+
+        AuthorizationContext context = new AuthorizationContext( TEST_PERMISSION );
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( "[expired session]" );
+        when( mockSecurityManager.authenticatedUserID() ).thenReturn( null );
+        testSessionFilter.setUnauthenticatedSessionCache( new NegativeResultCache<>( 10, 1L, TimeUnit.MINUTES ) );
+
+        for ( int attempt = 0; attempt < 3; attempt++ ) {
+            try {
+                testSessionFilter.isAuthorized( null, context );
+                fail( "Expected UnauthenticatedException" );
+            }
+            catch( UnauthenticatedException ex ) {
+                // expected
+            }
+        }
+        verify( mockSecurityManager, times(1) ).authenticatedUserID();
+    }
+
+
+    @Test
+    public void testIsAuthorized_ReusesRequestMemo()
+        throws Exception {
+
+        System.out.println( "  Test isAuthorized (Session Read From Request Memo)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( "session-1" );
+        testSessionFilter.setUnauthenticatedSessionCache( new NegativeResultCache<>( 10, 1L, TimeUnit.MINUTES ) );
+
+        RequestContextHolder.setRequestAttributes( new ServletRequestAttributes( new MockHttpServletRequest() ) );
+        try {
+            // as the aspect does before the chain runs
+            RequestAuthorizationMemo.authenticatedSessionID( mockSecurityManager );
+
+            assertThat( testSessionFilter.isAuthorized( null, new AuthorizationContext( TEST_PERMISSION ) ), equalTo( true ) );
+            assertThat( testSessionFilter.isAuthorized( null, new AuthorizationContext( TEST_PERMISSION ) ), equalTo( true ) );
+        }
+        finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        verify( mockSecurityManager, times(1) ).authenticatedSessionID();
+        verify( mockSecurityManager, times(1) ).authenticatedUserID();
+    }
+
+
     @Test( expected = UnauthenticatedException.class )
     public void testIsAuthorized_NullUserIdOnRequest()
         throws Exception {
@@ -0,0 +1,124 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+
+
+public class AuditRingBufferTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void offer_full_refusedThenAcceptedAfterDrain() {
+
+        System.out.println( "  Test Full Buffer Refuses Without Waiting" );
+
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>( 3 );
+        assertThat( buffer.capacity(), equalTo( 4 ) );
+
+        for ( int i = 1; i <= 4; i++ ) {
+            assertThat( buffer.offer( i ), is( true ) );
+        }
+        assertThat( buffer.offer( 5 ), is( false ) );
+        assertThat( buffer.size(), equalTo( 4 ) );
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat( buffer.drainTo( drained, 2 ), equalTo( 2 ) );
+        assertThat( drained, contains( 1, 2 ) );
+
+        assertThat( buffer.offer( 6 ), is( true ) );
+        assertThat( buffer.offer( 7 ), is( true ) );
+        drained.clear();
+        buffer.drainTo( drained, 10 );
+        assertThat( drained, contains( 3, 4, 6, 7 ) );
+        assertThat( buffer.poll(), nullValue() );
+    }
+
+
+    @Test
+    public void offer_concurrentProducers_nothingLostOrDuplicated()
+        throws Exception {
+
+        System.out.println( "  Test Concurrent Producers" );
+
+        final int                       producers = 4;
+        final int                       perProducer = 20000;
+        final AuditRingBuffer<Integer>  buffer = new AuditRingBuffer<>( 1024 );
+        final AtomicInteger             refused = new AtomicInteger();
+        final CountDownLatch            done = new CountDownLatch( producers );
+        final ExecutorService           executor = Executors.newFixedThreadPool( producers );
+
+        for ( int p = 0; p < producers; p++ ) {
+            final int base = p * perProducer;
+            executor.execute( () -> {
+                for ( int i = 0; i < perProducer; i++ ) {
+                    if ( ! buffer.offer( base + i ) ) {
+                        refused.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            } );
+        }
+
+        Set<Integer> received = new HashSet<>();
+        int          duplicates = 0;
+        while ( (done.getCount() > 0) || (buffer.size() > 0) ) {
+            Integer element = buffer.poll();
+            if ( (element != null) && ! received.add( element ) ) {
+                ++duplicates;
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination( 5L, TimeUnit.SECONDS );
+
+        assertThat( duplicates, equalTo( 0 ) );
+        assertThat( received.size() + refused.get(), equalTo( producers * perProducer ) );
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.audit;
+
+import org.familysearch.cmp.authorization.util.NamedDaemonThreadFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+
+
+public class AuthorizationAuditLogTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    /**
+     * Collects the batches; holds the writer thread until released.
+     */
+    static class GatedWriter implements AuditEventWriter {
+
+        final List<AuthorizationAuditEvent> events = Collections.synchronizedList( new ArrayList<>() );
+        final CountDownLatch                gate = new CountDownLatch( 1 );
+        final CountDownLatch                firstBatch = new CountDownLatch( 1 );
+
+        @Override
+        public void write( List<AuthorizationAuditEvent> batch )
+            throws IOException {
+
+            firstBatch.countDown();
+            try {
+                gate.await( 5L, TimeUnit.SECONDS );
+            }
+            catch( InterruptedException ex ) {
+                throw new IOException( ex );
+            }
+            events.addAll( batch );
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void publish_writerBehind_dropsAndCounts()
+        throws Exception {
+
+        System.out.println( "  Test Overflow Drops Without Blocking" );
+
+        GatedWriter           writer = new GatedWriter();
+        AuthorizationAuditLog auditLog = new AuthorizationAuditLog( 4, writer, new NamedDaemonThreadFactory( "test-audit" ) );
+        auditLog.setBatchSize( 1 );
+
+        // the writer thread takes the first event and blocks in write()
+        assertThat( auditLog.publish( event( "first", true ) ), is( true ) );
+        assertThat( writer.firstBatch.await( 5L, TimeUnit.SECONDS ), is( true ) );
+
+        for ( int i = 0; i < 4; i++ ) {
+            assertThat( auditLog.publish( event( "queued", true ) ), is( true ) );
+        }
+        assertThat( auditLog.publish( event( "overflow", false ) ), is( false ) );
+        assertThat( auditLog.getDroppedCount(), equalTo( 1L ) );
+        assertThat( auditLog.getPublishedCount(), equalTo( 5L ) );
+
+        writer.gate.countDown();
+        auditLog.close();
+
+        assertThat( auditLog.getWrittenCount(), equalTo( 5L ) );
+        assertThat( writer.events.size(), equalTo( 5 ) );
+        assertThat( auditLog.publish( event( "closed", true ) ), is( false ) );
+    }
+
+
+    @Test
+    public void jsonLinesWriter_writesAndRotates()
+        throws Exception {
+
+        System.out.println( "  Test JSON Lines Writer Rotation" );
+
+        Path                 file = tempFolder.getRoot().toPath().resolve( "audit/decisions.jsonl" );
+        JsonLinesAuditWriter writer = new JsonLinesAuditWriter( file, 300L, 1 );
+
+        writer.write( Arrays.asList( event( "one", true ), event( "two\"quoted\"", false ) ) );
+        List<String> lines = Files.readAllLines( file, StandardCharsets.UTF_8 );
+        assertThat( lines.size(), equalTo( 2 ) );
+        assertThat( lines.get( 0 ), equalTo( "{\"ts\":1000,\"endpoint\":\"ThreadController.modifyThread\",\"sessionFingerprint\":\"one\","
+                                             + "\"user\":\"cis.user.1\",\"permissions\":[\"FSMessagingModifyThread\"],"
+                                             + "\"casContext\":null,\"decidedBy\":\"CASAuthorizationFilter\",\"error\":null,"
+                                             + "\"granted\":true,\"latencyMicros\":1500}" ) );
+        assertThat( lines.get( 1 ).contains( "\"sessionFingerprint\":\"two\\\"quoted\\\"\"" ), is( true ) );
+
+        writer.write( Collections.singletonList( event( "three", true ) ) );
+        writer.write( Collections.singletonList( event( "four", true ) ) );
+        writer.close();
+
+        assertThat( Files.readAllLines( file, StandardCharsets.UTF_8 ).size(), equalTo( 1 ) );
+        assertThat( Files.readAllLines( file.resolveSibling( "decisions.jsonl.1" ), StandardCharsets.UTF_8 ).size(), equalTo( 1 ) );
+        assertThat( Files.exists( file.resolveSibling( "decisions.jsonl.2" ) ), is( false ) );
+    }
+
+
+    @Test
+    public void sessionFingerprint_stableAndKeyed()
+        throws Exception {
+
+        System.out.println( "  Test Session Fingerprint" );
+
+        SessionFingerprint fingerprint = new SessionFingerprint( "audit-key".getBytes( StandardCharsets.UTF_8 ) );
+        String             token = "c3f2a7d0-session-token";
+
+        assertThat( fingerprint.of( token ), equalTo( fingerprint.of( token ) ) );
+        assertThat( fingerprint.of( token ).length(), equalTo( 16 ) );
+        assertThat( fingerprint.of( token ).contains( token ), is( false ) );
+        assertThat( fingerprint.of( token ), not( equalTo( fingerprint.of( token + "x" ) ) ) );
+        assertThat( new SessionFingerprint( "other-key".getBytes( StandardCharsets.UTF_8 ) ).of( token ),
+                    not( equalTo( fingerprint.of( token ) ) ) );
+        assertThat( fingerprint.of( null ), nullValue() );
+    }
+
+
+    private static AuthorizationAuditEvent event( String sessionFingerprint, boolean granted ) {
+
+        return( new AuthorizationAuditEvent( 1000L, "ThreadController.modifyThread", sessionFingerprint, "cis.user.1",
+                                             Collections.singletonList( "FSMessagingModifyThread" ), null,
+                                             "CASAuthorizationFilter", null, granted, 1500000L ) );
+    }
+
+}
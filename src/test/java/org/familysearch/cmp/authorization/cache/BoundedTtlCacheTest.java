@@ -0,0 +1,202 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+
+
+public class BoundedTtlCacheTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+    private static final long TTL_SECONDS = 10L;
+
+
+    private AtomicLong                       testClock;
+
+    private BoundedTtlCache<String, String>  testCache;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        testClock = new AtomicLong( 1000L );
+        testCache = new BoundedTtlCache<>( 10, TTL_SECONDS, TimeUnit.SECONDS, testClock::get );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void getIfPresent_hitAndMiss() {
+
+        System.out.println( "  Test GetIfPresent (Hit and Miss)" );
+
+        testCache.put( "key", "value" );
+
+        assertThat( testCache.getIfPresent( "key" ), equalTo( "value" ) );
+        assertThat( testCache.getIfPresent( "other" ), nullValue() );
+
+        assertThat( testCache.stats().getHitCount(), equalTo( 1L ) );
+        assertThat( testCache.stats().getMissCount(), equalTo( 1L ) );
+    }
+
+
+    @Test
+    public void getIfPresent_expiresAfterTtl() {
+
+        System.out.println( "  Test GetIfPresent (Expired)" );
+
+        testCache.put( "key", "value" );
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( TTL_SECONDS ) );
+
+        assertThat( testCache.getIfPresent( "key" ), nullValue() );
+        assertThat( testCache.stats().getExpirationCount(), equalTo( 1L ) );
+        assertThat( testCache.size(), equalTo( 0 ) );
+    }
+
+
+    @Test
+    public void put_staysWithinSizeBound() {
+
+        System.out.println( "  Test Put (Size Bound)" );
+
+        for ( int i = 0; i < 25; i++ ) {
+            testCache.put( "key" + i, "value" + i );
+        }
+
+        assertThat( testCache.size(), lessThanOrEqualTo( 10 ) );
+        assertThat( testCache.stats().getEvictionCount(), equalTo( 25L - testCache.size() ) );
+    }
+
+
+    @Test
+    public void put_sweepsExpiredEntriesBeforeLiveOnes() {
+
+        System.out.println( "  Test Put (Expired Entries Swept First)" );
+
+        for ( int i = 0; i < 10; i++ ) {
+            testCache.put( "old" + i, "value" + i );
+        }
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( TTL_SECONDS ) );
+        testCache.put( "new", "value" );
+
+        assertThat( testCache.getIfPresent( "new" ), equalTo( "value" ) );
+        assertThat( testCache.stats().getExpirationCount(), equalTo( 10L ) );
+        assertThat( testCache.stats().getEvictionCount(), equalTo( 0L ) );
+    }
+
+
+    @Test
+    public void getStale_readableWithinRetention() {
+
+        System.out.println( "  Test GetStale (Within Retention)" );
+
+        testCache = new BoundedTtlCache<>( 10, TTL_SECONDS, 60L, TimeUnit.SECONDS, testClock::get );
+        testCache.put( "key", "value" );
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( TTL_SECONDS ) );
+
+        assertThat( testCache.getIfPresent( "key" ), nullValue() );
+        assertThat( testCache.getStale( "key" ), equalTo( "value" ) );
+
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( 60L ) );
+        assertThat( testCache.getStale( "key" ), nullValue() );
+    }
+
+
+    @Test
+    public void put_jitterShortensTtl() {
+
+        System.out.println( "  Test Put (Expiry Jitter)" );
+
+        // the largest possible draw takes the whole 50% off the TTL
+        testCache = new BoundedTtlCache<>( 10, TTL_SECONDS, 0L, TimeUnit.SECONDS, 0.5, 1.0, testClock::get, () -> 1.0 );
+        testCache.put( "key", "value" );
+
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( TTL_SECONDS / 2 ) - 1L );
+        assertThat( testCache.getIfPresent( "key" ), equalTo( "value" ) );
+
+        testClock.incrementAndGet();
+        assertThat( testCache.getIfPresent( "key" ), nullValue() );
+    }
+
+
+    @Test
+    public void claimRefresh_onceAfterRefreshPoint() {
+
+        System.out.println( "  Test ClaimRefresh (Refresh Ahead)" );
+
+        testCache = new BoundedTtlCache<>( 10, TTL_SECONDS, 0L, TimeUnit.SECONDS, 0.0, 0.8, testClock::get, () -> 0.0 );
+        testCache.put( "key", "value" );
+
+        assertThat( testCache.claimRefresh( "key" ), is( false ) );
+
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( 8L ) );
+        assertThat( testCache.claimRefresh( "key" ), is( true ) );
+        assertThat( testCache.claimRefresh( "key" ), is( false ) );
+        assertThat( testCache.getIfPresent( "key" ), equalTo( "value" ) );
+
+        // a refreshed entry starts a new life, with a new refresh point
+        testCache.put( "key", "newer value" );
+        assertThat( testCache.claimRefresh( "key" ), is( false ) );
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( 8L ) );
+        assertThat( testCache.claimRefresh( "key" ), is( true ) );
+        assertThat( testCache.refreshCount(), equalTo( 2L ) );
+    }
+
+
+    @Test
+    public void claimRefresh_neverForExpiredOrWithoutRefreshAhead() {
+
+        System.out.println( "  Test ClaimRefresh (Expired / Off)" );
+
+        testCache.put( "key", "value" );
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( TTL_SECONDS - 1L ) );
+        assertThat( testCache.claimRefresh( "key" ), is( false ) );
+
+        testCache = new BoundedTtlCache<>( 10, TTL_SECONDS, 0L, TimeUnit.SECONDS, 0.0, 0.5, testClock::get, () -> 0.0 );
+        testCache.put( "key", "value" );
+        testClock.addAndGet( TimeUnit.SECONDS.toNanos( TTL_SECONDS ) );
+        assertThat( testCache.claimRefresh( "key" ), is( false ) );
+        assertThat( testCache.claimRefresh( "missing" ), is( false ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void constructor_rejectsZeroSize() {
+
+        System.out.println( "  Test Constructor (Bad Size)" );
+        new BoundedTtlCache<String, String>( 0, TTL_SECONDS, TimeUnit.SECONDS );
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.identity.api.PermissionSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+
+public class BatchingPermissionLoaderTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+    private static final String TEST_SESSION_ID =   "[CIS session ID]";
+    private static final String TEST_CAS_CONTEXT =  "[CAS context]";
+
+
+    @Mock
+    private PermissionSetLoader mockDelegate;
+
+    private PermissionSet permissionSet;
+
+    private BatchingPermissionLoader testLoader;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        MockitoAnnotations.initMocks( this );
+
+        permissionSet = new PermissionSet( TEST_CAS_CONTEXT, new HashSet<>(), new HashSet<>() );
+        when( mockDelegate.load( any( CasDecisionKey.class ) ) )
+            .thenReturn( CompletableFuture.completedFuture( permissionSet ) );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        testLoader.close();
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void load_sameSessionAndContext_groupedIntoOneCall()
+        throws Exception {
+
+        System.out.println( "  Test Load (Grouped Call)" );
+
+        testLoader = new BatchingPermissionLoader( mockDelegate, 2, 5L, TimeUnit.SECONDS, 1 );
+
+        Future<PermissionSet> view = testLoader.load( key( TEST_SESSION_ID, "FSMessagingAdminApiViewThread" ) );
+        Future<PermissionSet> modify = testLoader.load( key( TEST_SESSION_ID, "FSMessagingAdminApiModifyThread" ) );
+
+        assertThat( view.get( 5L, TimeUnit.SECONDS ), sameInstance( permissionSet ) );
+        assertThat( modify.get( 5L, TimeUnit.SECONDS ), sameInstance( permissionSet ) );
+
+        ArgumentCaptor<CasDecisionKey> captor = ArgumentCaptor.forClass( CasDecisionKey.class );
+        verify( mockDelegate, times(1) ).load( captor.capture() );
+        assertThat( captor.getValue().getPermissions(),
+                    containsInAnyOrder( "FSMessagingAdminApiViewThread", "FSMessagingAdminApiModifyThread" ) );
+        assertThat( testLoader.batchCount(), equalTo( 1L ) );
+    }
+
+
+    @Test
+    public void load_differentSessions_oneCallEach()
+        throws Exception {
+
+        System.out.println( "  Test Load (One Call Per Session)" );
+
+        testLoader = new BatchingPermissionLoader( mockDelegate, 2, 5L, TimeUnit.SECONDS, 1 );
+
+        Future<PermissionSet> first = testLoader.load( key( TEST_SESSION_ID, "SessionRequired" ) );
+        Future<PermissionSet> second = testLoader.load( key( "[other session ID]", "SessionRequired" ) );
+
+        first.get( 5L, TimeUnit.SECONDS );
+        second.get( 5L, TimeUnit.SECONDS );
+
+        verify( mockDelegate, times(2) ).load( any( CasDecisionKey.class ) );
+        assertThat( testLoader.groupedCallCount(), equalTo( 2L ) );
+    }
+
+
+    @Test
+    public void load_lingerElapsed_dispatchesPartialBatch()
+        throws Exception {
+
+        System.out.println( "  Test Load (Linger Elapsed)" );
+
+        testLoader = new BatchingPermissionLoader( mockDelegate, 100, 10L, TimeUnit.MILLISECONDS, 1 );
+
+        assertThat( testLoader.load( key( TEST_SESSION_ID, "SessionRequired" ) ).get( 5L, TimeUnit.SECONDS ),
+                    sameInstance( permissionSet ) );
+    }
+
+
+    @Test
+    public void load_delegateFails_failsEveryWaiter()
+        throws Exception {
+
+        System.out.println( "  Test Load (Delegate Failure)" );
+
+        when( mockDelegate.load( any( CasDecisionKey.class ) ) ).thenThrow( new IllegalStateException( "What Happened?" ) );
+        testLoader = new BatchingPermissionLoader( mockDelegate, 1, 0L, TimeUnit.MILLISECONDS, 1 );
+
+        try {
+            testLoader.load( key( TEST_SESSION_ID, "SessionRequired" ) ).get( 5L, TimeUnit.SECONDS );
+            throw new AssertionError( "Test expected an ExecutionException to be thrown before this statement" );
+        }
+        catch( ExecutionException ex ) {
+            assertThat( ex.getCause(), instanceOf( IllegalStateException.class ) );
+        }
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void load_groupedCallHangs_failsBatchAtCallTimeout()
+        throws Exception {
+
+        System.out.println( "  Test Load (Grouped Call Times Out)" );
+
+        Future<PermissionSet> hungCall = mock( Future.class );
+        when( hungCall.get( anyLong(), any( TimeUnit.class ) ) ).thenThrow( new TimeoutException() );
+        when( mockDelegate.load( any( CasDecisionKey.class ) ) ).thenReturn( hungCall );
+
+        testLoader = new BatchingPermissionLoader( mockDelegate, 1, 0L, TimeUnit.MILLISECONDS, 1 );
+        testLoader.setCallTimeout( 50L, TimeUnit.MILLISECONDS );
+
+        try {
+            testLoader.load( key( TEST_SESSION_ID, "SessionRequired" ) ).get( 5L, TimeUnit.SECONDS );
+            throw new AssertionError( "Test expected an ExecutionException to be thrown before this statement" );
+        }
+        catch( ExecutionException ex ) {
+            assertThat( ex.getCause(), instanceOf( TimeoutException.class ) );
+        }
+        verify( hungCall, times(1) ).get( 50L, TimeUnit.MILLISECONDS );
+    }
+
+
+    @Test
+    public void close_batchStillLingering_cancelsItsLookups()
+        throws Exception {
+
+        System.out.println( "  Test Close (Lingering Batch Cancelled)" );
+
+        testLoader = new BatchingPermissionLoader( mockDelegate, 100, 5L, TimeUnit.SECONDS, 1 );
+
+        Future<PermissionSet> first = testLoader.load( key( TEST_SESSION_ID, "SessionRequired" ) );
+        Future<PermissionSet> second = testLoader.load( key( "[other session ID]", "SessionRequired" ) );
+        Thread.sleep( 50L );                                            // both now held by the dispatcher
+
+        testLoader.close();
+
+        for ( Future<PermissionSet> lookup : Arrays.asList( first, second ) ) {
+            try {
+                lookup.get( 1L, TimeUnit.SECONDS );
+                throw new AssertionError( "Test expected a CancellationException to be thrown before this statement" );
+            }
+            catch( CancellationException ex ) {
+                // expected
+            }
+        }
+        verify( mockDelegate, times(0) ).load( any( CasDecisionKey.class ) );
+    }
+
+
+    private static CasDecisionKey key( String sessionId, String permission ) {
+        return( new CasDecisionKey( sessionId, TEST_CAS_CONTEXT, Collections.singletonList( permission ) ) );
+    }
+
+}
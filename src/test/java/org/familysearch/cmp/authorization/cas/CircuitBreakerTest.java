@@ -0,0 +1,217 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+
+
+public class CircuitBreakerTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+    private static final long FAST_CALL = TimeUnit.MILLISECONDS.toNanos( 5L );
+    private static final long SLOW_CALL = TimeUnit.MILLISECONDS.toNanos( 500L );
+    private static final long OPEN_DURATION_MILLIS = 1000L;
+
+
+    private AtomicLong      testClock;
+
+    private CircuitBreaker  testBreaker;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        testClock = new AtomicLong( 1000L );
+        testBreaker = new CircuitBreaker( "test", 10, 4, 0.5, 0.5, 100L, OPEN_DURATION_MILLIS, 2, testClock::get );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void closed_belowMinimumCalls_doesNotTrip() {
+
+        System.out.println( "  Test Closed (Below Minimum Calls)" );
+
+        fail( 3 );
+
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.CLOSED ) );
+        assertThat( testBreaker.tryAcquire(), not( CircuitBreaker.NO_PERMIT ) );
+    }
+
+
+    @Test
+    public void closed_failureRateReached_opens() {
+
+        System.out.println( "  Test Closed (Failure Rate Trips)" );
+
+        succeed( 2 );
+        fail( 2 );
+
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+        assertThat( testBreaker.tryAcquire(), equalTo( CircuitBreaker.NO_PERMIT ) );
+        assertThat( testBreaker.getTripCount(), equalTo( 1L ) );
+    }
+
+
+    @Test
+    public void closed_slowCallRateReached_opens() {
+
+        System.out.println( "  Test Closed (Slow Call Rate Trips)" );
+
+        for ( int i = 0; i < 4; i++ ) {
+            testBreaker.onSuccess( testBreaker.tryAcquire(), ( i % 2 == 0 ) ? SLOW_CALL : FAST_CALL );
+        }
+
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+    }
+
+
+    @Test
+    public void halfOpen_successfulTrials_close() {
+
+        System.out.println( "  Test Half-Open (Trials Succeed)" );
+
+        fail( 4 );
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+
+        long first = testBreaker.tryAcquire();
+        assertThat( first, not( CircuitBreaker.NO_PERMIT ) );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.HALF_OPEN ) );
+        long second = testBreaker.tryAcquire();
+        assertThat( second, not( CircuitBreaker.NO_PERMIT ) );
+        assertThat( testBreaker.tryAcquire(), equalTo( CircuitBreaker.NO_PERMIT ) );
+
+        testBreaker.onSuccess( first, FAST_CALL );
+        testBreaker.onSuccess( second, FAST_CALL );
+
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.CLOSED ) );
+    }
+
+
+    @Test
+    public void halfOpen_failedTrial_reopens() {
+
+        System.out.println( "  Test Half-Open (Trial Fails)" );
+
+        fail( 4 );
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+
+        testBreaker.onFailure( testBreaker.tryAcquire(), FAST_CALL );
+
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+        assertThat( testBreaker.tryAcquire(), equalTo( CircuitBreaker.NO_PERMIT ) );
+        assertThat( testBreaker.getTripCount(), equalTo( 2L ) );
+    }
+
+
+    @Test
+    public void halfOpen_trialNeverCompletes_reopensAfterSlowCallThreshold() {
+
+        System.out.println( "  Test Half-Open (Trial Times Out)" );
+
+        fail( 4 );
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+
+        long abandoned = testBreaker.tryAcquire();
+        testBreaker.onSuccess( testBreaker.tryAcquire(), FAST_CALL );
+
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( 99L ) );
+        assertThat( testBreaker.tryAcquire(), equalTo( CircuitBreaker.NO_PERMIT ) );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.HALF_OPEN ) );
+
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( 1L ) );
+        assertThat( testBreaker.tryAcquire(), equalTo( CircuitBreaker.NO_PERMIT ) );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+        assertThat( testBreaker.getTripCount(), equalTo( 2L ) );
+
+        // the abandoned trial finally fails during the next probe; it must not count
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+        long first = testBreaker.tryAcquire();
+        long second = testBreaker.tryAcquire();
+        testBreaker.onFailure( abandoned, SLOW_CALL );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.HALF_OPEN ) );
+
+        // ... and neither of the new trials' outcomes is mistaken for it
+        testBreaker.onSuccess( first, FAST_CALL );
+        testBreaker.onSuccess( second, FAST_CALL );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.CLOSED ) );
+    }
+
+
+    @Test
+    public void halfOpen_trialFromEarlierRoundReportsLate_probeOutcomeKept() {
+
+        System.out.println( "  Test Half-Open (Late Outcome of an Earlier Round)" );
+
+        fail( 4 );
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+
+        // one trial is abandoned and never reports; the other fails the round
+        testBreaker.tryAcquire();
+        long failed = testBreaker.tryAcquire();
+        testBreaker.onFailure( failed, FAST_CALL );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+
+        // a closed-state call made before the first trip reports during the next round
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+        long probe = testBreaker.tryAcquire();
+        testBreaker.onFailure( 0L, FAST_CALL );
+        testBreaker.onSuccess( failed, FAST_CALL );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.HALF_OPEN ) );
+
+        // the real probe's failure is not swallowed
+        testBreaker.onFailure( probe, FAST_CALL );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.OPEN ) );
+        assertThat( testBreaker.getTripCount(), equalTo( 3L ) );
+
+        // and rounds after that still close on their own trials' outcomes
+        testClock.addAndGet( TimeUnit.MILLISECONDS.toNanos( OPEN_DURATION_MILLIS ) );
+        succeed( 2 );
+        assertThat( testBreaker.getState(), equalTo( CircuitBreaker.State.CLOSED ) );
+    }
+
+
+    private void succeed( int calls ) {
+        for ( int i = 0; i < calls; i++ ) {
+            testBreaker.onSuccess( testBreaker.tryAcquire(), FAST_CALL );
+        }
+    }
+
+
+    private void fail( int calls ) {
+        for ( int i = 0; i < calls; i++ ) {
+            testBreaker.onFailure( testBreaker.tryAcquire(), FAST_CALL );
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+
+
+public class FutureBridgeTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    private FutureBridge testBridge;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        testBridge = new FutureBridge( 1, 1 );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        testBridge.close();
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void toCompletable_completionStage_completesWithIt()
+        throws Exception {
+
+        System.out.println( "  Test To Completable (CompletionStage)" );
+
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> bridged = testBridge.toCompletable( source, 0L );
+
+        assertThat( bridged.isDone(), is( false ) );
+        source.complete( "granted" );
+        assertThat( bridged.getNow( null ), equalTo( "granted" ) );
+    }
+
+
+    @Test
+    public void toCompletable_plainFuture_completesFromWaiter()
+        throws Exception {
+
+        System.out.println( "  Test To Completable (Plain Future)" );
+
+        FutureTask<String>          source = new FutureTask<>( () -> "granted" );
+        CompletableFuture<String>   bridged = testBridge.toCompletable( source, 0L );
+
+        source.run();
+        assertThat( bridged.get( 1L, TimeUnit.SECONDS ), equalTo( "granted" ) );
+    }
+
+
+    @Test
+    public void toCompletable_queuedBehindBusyWaiter_timesOutFromSubmission()
+        throws Exception {
+
+        System.out.println( "  Test To Completable (Deadline Counts Queued Time)" );
+
+        FutureTask<String> busy = new FutureTask<>( () -> "busy" );
+        FutureTask<String> queued = new FutureTask<>( () -> "queued" );
+
+        testBridge.toCompletable( busy, 0L );                                   // holds the only waiter
+        CompletableFuture<String> bridged = testBridge.toCompletable( queued, 50L );
+
+        try {
+            bridged.get( 1L, TimeUnit.SECONDS );
+            fail( "Expected the deadline to fail the queued future" );
+        }
+        catch( ExecutionException ex ) {
+            assertThat( ex.getCause(), instanceOf( TimeoutException.class ) );
+        }
+        finally {
+            busy.run();
+        }
+    }
+
+
+    @Test
+    public void toCompletable_waiterQueueFull_failsAtOnce() {
+
+        System.out.println( "  Test To Completable (Queue Full)" );
+
+        FutureTask<String> busy = new FutureTask<>( () -> "busy" );
+        FutureTask<String> queued = new FutureTask<>( () -> "queued" );
+        Future<String>     rejected = new FutureTask<>( () -> "rejected" );
+
+        try {
+            testBridge.toCompletable( busy, 0L );                               // handed straight to the only waiter
+            testBridge.toCompletable( queued, 0L );
+            CompletableFuture<String> bridged = testBridge.toCompletable( rejected, 0L );
+
+            assertThat( bridged.isCompletedExceptionally(), is( true ) );
+            try {
+                bridged.join();
+                fail( "Expected the full queue to fail the future" );
+            }
+            catch( RuntimeException ex ) {
+                assertThat( ex.getCause(), instanceOf( RejectedExecutionException.class ) );
+            }
+        }
+        finally {
+            busy.run();
+            queued.run();
+        }
+    }
+
+}
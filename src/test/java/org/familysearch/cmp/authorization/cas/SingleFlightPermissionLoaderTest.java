@@ -0,0 +1,156 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.cas;
+
+import org.familysearch.cmp.authorization.cache.CasDecisionKey;
+import org.familysearch.identity.api.PermissionSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+
+@SuppressWarnings("unchecked")
+public class SingleFlightPermissionLoaderTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+    private static final CasDecisionKey TEST_KEY =
+        new CasDecisionKey( "[CIS session ID]", "[CAS context]", Collections.singletonList( "SessionRequired" ) );
+
+    private static final CasDecisionKey OTHER_KEY =
+        new CasDecisionKey( "[other session ID]", "[CAS context]", Collections.singletonList( "SessionRequired" ) );
+
+
+    @Mock
+    private PermissionSetLoader mockDelegate;
+
+    @Mock
+    private Future<PermissionSet> mockFuture;
+
+    private CompletableFuture<PermissionSet>    pendingLookup;
+    private PermissionSet                       testPermissionSet;
+    private FutureBridge                        futureBridge;
+    private SingleFlightPermissionLoader        testLoader;
+
+
+    @Before
+    public void setup()
+        throws Exception {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        MockitoAnnotations.initMocks( this );
+
+        pendingLookup = new CompletableFuture<>();
+        testPermissionSet = new PermissionSet( "[CAS context]", new HashSet<>(), new HashSet<>() );
+        when( mockDelegate.load( any( CasDecisionKey.class ) ) ).thenReturn( pendingLookup );
+        when( mockFuture.get() ).thenReturn( testPermissionSet );
+
+        futureBridge = new FutureBridge( 1 );
+        testLoader = new SingleFlightPermissionLoader( mockDelegate, futureBridge );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        futureBridge.close();
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void load_concurrentIdenticalKeys_shareOneLookup()
+        throws Exception {
+
+        System.out.println( "  Test Load (Shared In-Flight Lookup)" );
+
+        Future<PermissionSet> first = testLoader.load( TEST_KEY );
+        Future<PermissionSet> second = testLoader.load( TEST_KEY );
+
+        assertThat( first instanceof CompletableFuture, is( true ) );
+        assertThat( testLoader.startedCount(), equalTo( 1L ) );
+        assertThat( testLoader.joinedCount(), equalTo( 1L ) );
+        verify( mockDelegate, times(1) ).load( TEST_KEY );
+
+        // one caller giving up doesn't cancel the shared lookup
+        first.cancel( true );
+        pendingLookup.complete( testPermissionSet );
+        assertThat( second.get(), sameInstance( testPermissionSet ) );
+    }
+
+
+    @Test
+    public void load_differentKeys_lookedUpSeparately()
+        throws Exception {
+
+        System.out.println( "  Test Load (Distinct Keys)" );
+
+        testLoader.load( TEST_KEY );
+        testLoader.load( OTHER_KEY );
+
+        assertThat( testLoader.inFlightCount(), equalTo( 2 ) );
+        verify( mockDelegate, times(1) ).load( TEST_KEY );
+        verify( mockDelegate, times(1) ).load( OTHER_KEY );
+    }
+
+
+    @Test
+    public void load_completedLookup_leavesInFlightTableWithoutGet()
+        throws Exception {
+
+        System.out.println( "  Test Load (Retires Completed Lookup Nobody Collected)" );
+
+        testLoader.load( TEST_KEY );
+        assertThat( testLoader.inFlightCount(), equalTo( 1 ) );
+
+        pendingLookup.complete( testPermissionSet );
+        assertThat( testLoader.inFlightCount(), equalTo( 0 ) );
+
+        testLoader.load( TEST_KEY );
+        verify( mockDelegate, times(2) ).load( TEST_KEY );
+    }
+
+
+    @Test
+    public void load_plainFuture_bridgedAndRetired()
+        throws Exception {
+
+        System.out.println( "  Test Load (Plain Future Bridged)" );
+
+        when( mockDelegate.load( any( CasDecisionKey.class ) ) ).thenReturn( mockFuture );
+        when( mockFuture.isDone() ).thenReturn( true );
+
+        assertThat( testLoader.load( TEST_KEY ).get(), sameInstance( testPermissionSet ) );
+        assertThat( testLoader.inFlightCount(), equalTo( 0 ) );
+    }
+
+}
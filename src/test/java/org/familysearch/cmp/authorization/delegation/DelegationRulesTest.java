@@ -0,0 +1,111 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.delegation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+
+
+public class DelegationRulesTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void defaults_serviceAccountActsForWellKnownContributor() {
+
+        System.out.println( "  Test Default Rule" );
+
+        DelegationRules rules = DelegationRules.defaults();
+
+        assertThat( rules.mayActFor( "cis.proc.MMMM-JJJ", "cis.wkca.MERE-ERE" ), is( true ) );
+        assertThat( rules.mayActFor( "cis.wkca.MERE-ERE", "cis.proc.MMMM-JJJ" ), is( false ) );
+        assertThat( rules.mayActFor( "cis.user.TEST-TEST", "cis.wkca.MERE-ERE" ), is( false ) );
+        assertThat( rules.mayActFor( "cis.proc.MMMM-JJJ", "cis.user.TEST-TEST" ), is( false ) );
+        assertThat( rules.actsForOthers( "cis.proc.MMMM-JJJ" ), is( true ) );
+        assertThat( rules.actsForOthers( "cis.user.TEST-TEST" ), is( false ) );
+    }
+
+
+    @Test
+    public void of_nestedPrefixAndExactRules() {
+
+        System.out.println( "  Test Nested and Exact Rules" );
+
+        Map<String, Collection<String>> config = new HashMap<>();
+        config.put( "cis.proc*", Collections.singletonList( "cis.wkca*" ) );
+        config.put( "cis.proc.batch*", Collections.singletonList( "cis.user.IMPORT-0001" ) );
+        config.put( "cis.admin.ROOT-0001", Arrays.asList( "cis.user*", "cis.wkca.MERE-ERE" ) );
+
+        DelegationRules rules = DelegationRules.of( config );
+
+        // the longer prefix adds to what the shorter one allows
+        assertThat( rules.mayActFor( "cis.proc.batch.7", "cis.wkca.MERE-ERE" ), is( true ) );
+        assertThat( rules.mayActFor( "cis.proc.batch.7", "cis.user.IMPORT-0001" ), is( true ) );
+        assertThat( rules.mayActFor( "cis.proc.batch.7", "cis.user.IMPORT-00012" ), is( false ) );
+        assertThat( rules.mayActFor( "cis.proc.web", "cis.user.IMPORT-0001" ), is( false ) );
+
+        // an exact actor rule applies to that ID only
+        assertThat( rules.mayActFor( "cis.admin.ROOT-0001", "cis.user.TEST-TEST" ), is( true ) );
+        assertThat( rules.mayActFor( "cis.admin.ROOT-0001", "cis.wkca.MERE-ERE" ), is( true ) );
+        assertThat( rules.mayActFor( "cis.admin.ROOT-00012", "cis.user.TEST-TEST" ), is( false ) );
+        assertThat( rules.mayActFor( "cis.admin.ROOT", "cis.user.TEST-TEST" ), is( false ) );
+    }
+
+
+    @Test
+    public void none_delegatesNothing() {
+
+        System.out.println( "  Test No Rules" );
+
+        assertThat( DelegationRules.NONE.isEmpty(), is( true ) );
+        assertThat( DelegationRules.NONE.mayActFor( "cis.proc.MMMM-JJJ", "cis.wkca.MERE-ERE" ), is( false ) );
+        assertThat( DelegationRules.NONE.actsForOthers( "cis.proc.MMMM-JJJ" ), is( false ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void of_bareWildcard_rejected() {
+
+        System.out.println( "  Test Bare Wildcard Pattern" );
+
+        DelegationRules.of( Collections.singletonMap( "*", Collections.singletonList( "cis.wkca*" ) ) );
+    }
+
+}
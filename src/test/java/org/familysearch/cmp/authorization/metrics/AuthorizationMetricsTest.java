@@ -0,0 +1,136 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.exception.UnauthenticatedException;
+import org.familysearch.cmp.authorization.exception.UnauthorizedException;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+
+
+public class AuthorizationMetricsTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    static class TestController {
+
+        @PermissionRequired( FSMessagingModifyThread )
+        public void modifyThread() {
+        }
+    }
+
+
+    private SimpleMeterRegistry     meterRegistry;
+    private AuthorizationMetrics    testMetrics;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        meterRegistry = new SimpleMeterRegistry();
+        testMetrics = new AuthorizationMetrics( meterRegistry );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void endpointMeters_recordedByOutcome() {
+
+        System.out.println( "  Test Check Timers By Outcome" );
+
+        AuthorizationMetrics.EndpointMeters meters = testMetrics.endpointMeters( "TestController.modifyThread" );
+        meters.record( TimeUnit.MILLISECONDS.toNanos( 2L ), null );
+        meters.record( TimeUnit.MILLISECONDS.toNanos( 3L ), new UnauthorizedException() );
+        meters.record( 1000L, new CompletionException( new UnauthenticatedException( "no session" ) ) );
+        meters.record( 1000L, new IllegalStateException( "broken" ) );
+
+        assertThat( checkCount( "allowed" ), equalTo( 1L ) );
+        assertThat( checkCount( "denied" ), equalTo( 1L ) );
+        assertThat( checkCount( "unauthenticated" ), equalTo( 1L ) );
+        assertThat( checkCount( "error" ), equalTo( 1L ) );
+        assertThat( meterRegistry.get( AuthorizationMetrics.CHECK_TIMER ).tag( "outcome", "denied" ).timer()
+                                 .totalTime( TimeUnit.MILLISECONDS ), equalTo( 3.0 ) );
+    }
+
+
+    @Test
+    public void filterAndLookupMeters_recorded() {
+
+        System.out.println( "  Test Filter Counters And Lookup Timers" );
+
+        AuthorizationMetrics.FilterMeters filterMeters = testMetrics.filterMeters( "CASAuthorizationFilter" );
+        filterMeters.hit();
+        filterMeters.pass();
+        filterMeters.pass();
+
+        AuthorizationMetrics.LookupMeters lookupMeters = testMetrics.casLookupMeters();
+        lookupMeters.record( 1000L, null );
+        lookupMeters.record( 1000L, new TimeoutException() );
+
+        assertThat( meterRegistry.get( AuthorizationMetrics.FILTER_COUNTER ).tag( "result", "pass" ).counter().count(), equalTo( 2.0 ) );
+        assertThat( meterRegistry.get( AuthorizationMetrics.FILTER_COUNTER ).tag( "result", "throw" ).counter().count(), equalTo( 0.0 ) );
+        assertThat( meterRegistry.get( AuthorizationMetrics.CAS_LOOKUP_TIMER ).tag( "outcome", "timeout" ).timer().count(), equalTo( 1L ) );
+        assertThat( meterRegistry.get( AuthorizationMetrics.CAS_LOOKUP_TIMER ).tag( "outcome", "error" ).timer().count(), equalTo( 0L ) );
+    }
+
+
+    @Test
+    public void planRegistry_registersMetersOncePerPlan()
+        throws Exception {
+
+        System.out.println( "  Test Plans Carry Pre-Registered Meters" );
+
+        AuthorizationPlanRegistry planRegistry = new AuthorizationPlanRegistry();
+        planRegistry.setMetrics( testMetrics );
+
+        AuthorizationPlan plan = planRegistry.planFor( TestController.class.getMethod( "modifyThread" ) );
+        assertThat( meterRegistry.get( AuthorizationMetrics.CHECK_TIMER ).tag( "endpoint", "TestController.modifyThread" )
+                                 .timers().size(), equalTo( 4 ) );
+
+        plan.getMeters().record( 1000L, null );
+        assertThat( planRegistry.planFor( TestController.class.getMethod( "modifyThread" ) ).getMeters(),
+                    sameInstance( plan.getMeters() ) );
+        assertThat( checkCount( "allowed" ), equalTo( 1L ) );
+    }
+
+
+    private long checkCount( String outcome ) {
+        return( meterRegistry.get( AuthorizationMetrics.CHECK_TIMER ).tag( "outcome", outcome ).timer().count() );
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.permissions;
+
+import org.familysearch.engage.foundation.security.Permission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.MessagingClientRole;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+
+public class CmpPermissionMaskTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void ofNames_matchesOfPermissions() {
+
+        System.out.println( "  Test Names And Permissions Agree" );
+
+        long byName = CmpPermissionMask.ofNames( Arrays.asList( SessionRequired.name(), MessagingClientRole.name() ) );
+        long byValue = CmpPermissionMask.of( SessionRequired, MessagingClientRole );
+
+        assertThat( byName, equalTo( byValue ) );
+        assertThat( CmpPermissionMask.ofPermissions( Arrays.<Permission>asList( MessagingClientRole, SessionRequired ) ),
+                    equalTo( byValue ) );
+    }
+
+
+    @Test
+    public void ofPermissions_foreignPermissionMatchedByName() {
+
+        System.out.println( "  Test Foreign Permission Matched By Name" );
+
+        Permission sameName = mock( Permission.class );
+        Permission unknown = mock( Permission.class );
+        when( sameName.getName() ).thenReturn( SessionRequired.name() );
+        when( unknown.getName() ).thenReturn( "NotACmpPermission" );
+
+        assertThat( CmpPermissionMask.ofPermissions( Arrays.asList( sameName, unknown ) ),
+                    equalTo( CmpPermissionMask.bit( SessionRequired ) ) );
+        assertThat( CmpPermissionMask.isDefined( "NotACmpPermission" ), is( false ) );
+    }
+
+
+    @Test
+    public void names_sharedAndInOrdinalOrder() {
+
+        System.out.println( "  Test Names (Shared, Ordinal Order)" );
+
+        long mask = CmpPermissionMask.of( MessagingClientRole, FSMessagingModifyThread );
+        List<String> names = CmpPermissionMask.names( mask );
+
+        assertThat( names, contains( FSMessagingModifyThread.name(), MessagingClientRole.name() ) );
+        assertThat( CmpPermissionMask.names( mask ), sameInstance( names ) );
+        assertThat( CmpPermissionMask.names( CmpPermissionMask.NONE ).isEmpty(), is( true ) );
+    }
+
+
+    @Test
+    public void anyGranted_onlyChecksRequestedBits() {
+
+        System.out.println( "  Test Any Granted" );
+
+        long requested = CmpPermissionMask.of( SessionRequired, FSMessagingModifyThread );
+
+        assertThat( CmpPermissionMask.anyGranted( requested, new HashSet<>( Collections.singletonList( FSMessagingModifyThread.name() ) ) ),
+                    is( true ) );
+        assertThat( CmpPermissionMask.anyGranted( requested, new HashSet<>( Collections.singletonList( MessagingClientRole.name() ) ) ),
+                    is( false ) );
+        assertThat( CmpPermissionMask.anyGranted( CmpPermissionMask.NONE, Collections.singleton( SessionRequired.name() ) ),
+                    is( false ) );
+    }
+
+
+}
@@ -0,0 +1,118 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.permissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingAdminApiModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingAdminApiViewThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingFullAccessUserRole;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingFullTimeAdminRole;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+
+
+public class PermissionImplicationsTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void recommended_modifyImpliesView() {
+
+        System.out.println( "  Test Recommended Hierarchy" );
+
+        PermissionImplications implications = PermissionImplications.recommended();
+
+        assertThat( implications.implied( CmpPermissionMask.of( FSMessagingAdminApiModifyThread ) ),
+                    equalTo( CmpPermissionMask.of( FSMessagingAdminApiModifyThread, FSMessagingAdminApiViewThread ) ) );
+        assertThat( implications.satisfying( CmpPermissionMask.of( FSMessagingFullAccessUserRole ) ),
+                    equalTo( CmpPermissionMask.of( FSMessagingFullAccessUserRole, FSMessagingFullTimeAdminRole ) ) );
+        assertThat( implications.implied( CmpPermissionMask.of( FSMessagingAdminApiViewThread ) ),
+                    equalTo( CmpPermissionMask.of( FSMessagingAdminApiViewThread ) ) );
+        assertThat( implications.isEmpty(), is( false ) );
+    }
+
+
+    @Test
+    public void of_closesTransitively() {
+
+        System.out.println( "  Test Transitive Closure" );
+
+        Map<CmpPermission, Collection<CmpPermission>> graph = new EnumMap<>( CmpPermission.class );
+        graph.put( FSMessagingAdminApiModifyThread, Collections.singleton( FSMessagingModifyThread ) );
+        graph.put( FSMessagingModifyThread, Collections.singleton( FSMessagingAdminApiViewThread ) );
+        graph.put( FSMessagingAdminApiViewThread, Collections.singleton( FSMessagingAdminApiModifyThread ) );   // a cycle
+
+        PermissionImplications implications = PermissionImplications.of( graph );
+        long all = CmpPermissionMask.of( FSMessagingAdminApiModifyThread, FSMessagingModifyThread, FSMessagingAdminApiViewThread );
+
+        assertThat( implications.implied( CmpPermissionMask.of( FSMessagingModifyThread ) ), equalTo( all ) );
+        assertThat( implications.satisfying( CmpPermissionMask.of( FSMessagingModifyThread ) ), equalTo( all ) );
+        assertThat( implications.implied( CmpPermissionMask.of( SessionRequired ) ), equalTo( CmpPermissionMask.of( SessionRequired ) ) );
+    }
+
+
+    @Test
+    public void none_isIdentity() {
+
+        System.out.println( "  Test No Implications" );
+
+        long mask = CmpPermissionMask.of( SessionRequired, FSMessagingModifyThread );
+
+        assertThat( PermissionImplications.NONE.isEmpty(), is( true ) );
+        assertThat( PermissionImplications.NONE.implied( mask ), equalTo( mask ) );
+        assertThat( PermissionImplications.NONE.satisfying( mask ), equalTo( mask ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void ofNames_undefinedPermission_rejected() {
+
+        System.out.println( "  Test Undefined Permission Name" );
+
+        Map<String, List<String>> graph = new HashMap<>();
+        graph.put( FSMessagingModifyThread.name(), Collections.singletonList( "NoSuchPermission" ) );
+
+        PermissionImplications.ofNames( graph );
+    }
+
+}
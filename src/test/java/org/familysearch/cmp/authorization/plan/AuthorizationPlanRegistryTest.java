@@ -0,0 +1,190 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.plan;
+
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.CASAuthorizationFilter;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.ValidSessionOnlyAuthorizationFilter;
+import org.familysearch.cmp.authorization.permissions.CmpPermissionMask;
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.familysearch.identity.api.IdentityService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+
+
+public class AuthorizationPlanRegistryTest {
+
+    private static final String TEST_CAS_CONTEXT = "User-Messaging";
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    static class AnnotatedResource {
+
+        @PermissionRequired( SessionRequired )
+        public void sessionOnly() {
+        }
+
+        @PermissionRequired( value = { SessionRequired, FSMessagingModifyThread }, casTimeoutMillis = 250L )
+        public void modifyThread() {
+        }
+    }
+
+
+    @Retention( RetentionPolicy.RUNTIME )
+    @Target( { ElementType.METHOD, ElementType.TYPE } )
+    @PermissionRequired( value = { SessionRequired, FSMessagingModifyThread }, requireCheckSessionCasContext = true )
+    @interface ThreadModification {
+    }
+
+
+    @PermissionRequired( SessionRequired )
+    static class SessionScopedResource {
+
+        @GetMapping( "/read" )
+        public void read() {
+        }
+
+        @ThreadModification
+        public void modifyThread() {
+        }
+
+        public void afterPropertiesSet() {
+        }
+
+        void internal() {
+        }
+    }
+
+
+    private ValidSessionOnlyAuthorizationFilter sessionFilter;
+    private CASAuthorizationFilter              casFilter;
+    private AuthorizationPlanRegistry           testRegistry;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        FoundationSecurityManager securityManager = mock( FoundationSecurityManager.class );
+        sessionFilter = new ValidSessionOnlyAuthorizationFilter( securityManager, SessionRequired.name() );
+        casFilter = new CASAuthorizationFilter( securityManager, mock( IdentityService.class ), TEST_CAS_CONTEXT,
+                                                Collections.singleton( FSMessagingModifyThread.name() ) );
+
+        testRegistry = new AuthorizationPlanRegistry(
+                           new AsyncAuthorizationFilterChain( Arrays.<AsyncAuthorizationFilter>asList( sessionFilter, casFilter ) ) );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void planFor_compiledOnce() throws Exception {
+
+        System.out.println( "  Test Plan Compiled Once" );
+
+        Method method = AnnotatedResource.class.getMethod( "modifyThread" );
+        PermissionRequired permission = method.getAnnotation( PermissionRequired.class );
+
+        AuthorizationPlan plan = testRegistry.planFor( method, permission );
+
+        assertThat( testRegistry.planFor( method, permission ), sameInstance( plan ) );
+        assertThat( testRegistry.size(), equalTo( 1 ) );
+        assertThat( plan.getPermissionMask(), equalTo( CmpPermissionMask.of( SessionRequired, FSMessagingModifyThread ) ) );
+    }
+
+
+    @Test
+    public void planFor_classLevelAndComposedAnnotations() throws Exception {
+
+        System.out.println( "  Test Plan Class-Level and Composed Annotations" );
+
+        AuthorizationPlan readPlan = testRegistry.planFor( SessionScopedResource.class.getMethod( "read" ) );
+        AuthorizationPlan modifyPlan = testRegistry.planFor( SessionScopedResource.class.getMethod( "modifyThread" ) );
+
+        assertThat( readPlan.getPermissionMask(), equalTo( CmpPermissionMask.of( SessionRequired ) ) );
+        assertThat( modifyPlan.getPermissionMask(), equalTo( CmpPermissionMask.of( SessionRequired, FSMessagingModifyThread ) ) );
+        assertThat( modifyPlan.isRequireCheckSessionCasContext(), is( true ) );
+        assertThat( testRegistry.planFor( SessionScopedResource.class.getDeclaredMethod( "internal" ) ), nullValue() );
+        assertThat( testRegistry.planFor( SessionScopedResource.class.getMethod( "afterPropertiesSet" ) ), nullValue() );
+        assertThat( testRegistry.planFor( SessionScopedResource.class.getMethod( "toString" ) ), nullValue() );
+        assertThat( testRegistry.planFor( SessionScopedResource.class.getMethod( "read" ) ), sameInstance( readPlan ) );
+        assertThat( testRegistry.size(), equalTo( 2 ) );
+    }
+
+
+    @Test
+    public void planFor_unmatchableFiltersLeftOut() throws Exception {
+
+        System.out.println( "  Test Plan Chain Narrowed" );
+
+        Method sessionOnly = AnnotatedResource.class.getMethod( "sessionOnly" );
+        Method modifyThread = AnnotatedResource.class.getMethod( "modifyThread" );
+
+        AuthorizationPlan sessionPlan = testRegistry.planFor( sessionOnly, sessionOnly.getAnnotation( PermissionRequired.class ) );
+        AuthorizationPlan modifyPlan = testRegistry.planFor( modifyThread, modifyThread.getAnnotation( PermissionRequired.class ) );
+
+        assertThat( sessionPlan.getAsyncFilterChain().getFilters(), contains( (AsyncAuthorizationFilter) sessionFilter ) );
+        assertThat( modifyPlan.getAsyncFilterChain().getFilters(),
+                    contains( (AsyncAuthorizationFilter) sessionFilter, casFilter ) );
+    }
+
+
+    @Test
+    public void newContext_carriesPlanAndTimeout() throws Exception {
+
+        System.out.println( "  Test Plan Context" );
+
+        Method method = AnnotatedResource.class.getMethod( "modifyThread" );
+        AuthorizationPlan plan = testRegistry.planFor( method, method.getAnnotation( PermissionRequired.class ) );
+
+        AuthorizationContext context = plan.newContext();
+
+        assertThat( context.get( AuthorizationPlan.KEY_AUTHORIZATION_PLAN ), is( (Object) plan ) );
+        assertThat( context.get( CASAuthorizationFilter.KEY_CAS_TIMEOUT_MILLIS ), is( (Object) 250L ) );
+        assertThat( context.getPermissionNames(), contains( SessionRequired.name(), FSMessagingModifyThread.name() ) );
+    }
+
+
+}
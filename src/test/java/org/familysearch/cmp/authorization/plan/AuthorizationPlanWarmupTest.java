@@ -0,0 +1,127 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.plan;
+
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.ValidSessionOnlyAuthorizationFilter;
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Collections;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+
+
+
+public class AuthorizationPlanWarmupTest {
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    static class SessionResource {
+
+        @PermissionRequired( SessionRequired )
+        public void read() {
+        }
+
+        @PermissionRequired( SessionRequired )
+        public void write() {
+        }
+
+        public void unprotected() {
+        }
+    }
+
+
+    static class ThreadResource {
+
+        @PermissionRequired( { SessionRequired, FSMessagingModifyThread } )
+        public void modifyThread() {
+        }
+    }
+
+
+    private AuthorizationPlanRegistry   planRegistry;
+    private AuthorizationPlanWarmup     testWarmup;
+    private StaticListableBeanFactory   beanFactory;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        AsyncAuthorizationFilter sessionFilter = new ValidSessionOnlyAuthorizationFilter( mock( FoundationSecurityManager.class ),
+                                                                                          SessionRequired.name() );
+        AsyncAuthorizationFilterChain chain = new AsyncAuthorizationFilterChain( Collections.singletonList( sessionFilter ) );
+
+        planRegistry = new AuthorizationPlanRegistry( chain );
+        testWarmup = new AuthorizationPlanWarmup( planRegistry, chain );
+        beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean( "sessionResource", new SessionResource() );
+        testWarmup.setBeanFactory( beanFactory );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void afterSingletonsInstantiated_compilesAnnotatedMethods() {
+
+        System.out.println( "  Test Warm-Up Compiles Plans" );
+
+        testWarmup.afterSingletonsInstantiated();
+
+        assertThat( planRegistry.size(), equalTo( 2 ) );
+        assertThat( testWarmup.getWarmedUpPlanCount(), equalTo( 2 ) );
+    }
+
+
+    @Test( expected = IllegalStateException.class )
+    public void afterSingletonsInstantiated_unhandledPermission_failsFast() {
+
+        System.out.println( "  Test Warm-Up Unhandled Permission" );
+
+        beanFactory.addBean( "threadResource", new ThreadResource() );
+        testWarmup.afterSingletonsInstantiated();
+    }
+
+
+    @Test
+    public void afterSingletonsInstantiated_unhandledPermissionTolerated_stillCompiles() {
+
+        System.out.println( "  Test Warm-Up Unhandled Permission (Logged Only)" );
+
+        beanFactory.addBean( "threadResource", new ThreadResource() );
+        testWarmup.setFailOnUnhandledPermission( false );
+        testWarmup.afterSingletonsInstantiated();
+
+        assertThat( planRegistry.size(), equalTo( 3 ) );
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.reporting;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+
+public class RejectionReporterTest {
+
+    private static final String TEST_ENDPOINT = "ThreadController.modifyThread";
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    private Logger              mockLogger;
+    private double              nextRandom;
+    private RejectionReporter   testReporter;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        mockLogger = mock( Logger.class );
+        when( mockLogger.getName() ).thenReturn( "test.rejections" );
+        when( mockLogger.isWarnEnabled() ).thenReturn( true );
+
+        nextRandom = 0.5;
+        testReporter = new RejectionReporter( () -> nextRandom );
+        testReporter.setExemplarsPerInterval( 2 );
+        testReporter.setDefaultSampleRate( 0.0 );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void record_exemplarsThenSampled_allCounted() {
+
+        System.out.println( "  Test Exemplars Then Sampling" );
+
+        assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "denied" ), is( true ) );
+        assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "denied" ), is( true ) );
+        for ( int i = 0; i < 10; i++ ) {
+            assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "denied" ), is( false ) );
+        }
+
+        // exemplars are kept per endpoint and reason
+        assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "not-participant" ), is( true ) );
+        assertThat( testReporter.getTotal( TEST_ENDPOINT, "denied" ), equalTo( 12L ) );
+
+        Map<String, Long> summary = testReporter.summarize();
+        assertThat( summary.get( TEST_ENDPOINT + "/denied" ), equalTo( 12L ) );
+        assertThat( summary.get( TEST_ENDPOINT + "/not-participant" ), equalTo( 1L ) );
+
+        // a new interval logs exemplars again; the running total is kept
+        assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "denied" ), is( true ) );
+        assertThat( testReporter.getTotal( TEST_ENDPOINT, "denied" ), equalTo( 13L ) );
+        assertThat( testReporter.summarize().size(), equalTo( 1 ) );
+    }
+
+
+    @Test
+    public void record_perLoggerSampleRate() {
+
+        System.out.println( "  Test Per-Logger Sample Rate" );
+
+        testReporter.setExemplarsPerInterval( 0 );
+        testReporter.setSampleRates( Collections.singletonMap( "test.rejections", 0.25 ) );
+
+        nextRandom = 0.2;
+        assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "denied" ), is( true ) );
+        nextRandom = 0.3;
+        assertThat( testReporter.record( mockLogger, Level.WARN, TEST_ENDPOINT, "denied" ), is( false ) );
+
+        // disabled levels are counted but never logged
+        testReporter.setSampleRates( Collections.singletonMap( "test.rejections", 1.0 ) );
+        assertThat( testReporter.record( mockLogger, Level.INFO, TEST_ENDPOINT, "denied" ), is( false ) );
+        assertThat( testReporter.getTotal( TEST_ENDPOINT, "denied" ), equalTo( 3L ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void setDefaultSampleRate_outOfRange_rejected() {
+
+        System.out.println( "  Test Invalid Sample Rate" );
+
+        testReporter.setDefaultSampleRate( 1.5 );
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.simulation;
+
+import org.familysearch.identity.api.IdentityService;
+import org.familysearch.identity.api.PermissionSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.SessionRequired;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+
+
+public class SimulatedIdentityServiceTest {
+
+    private static final String TEST_CAS_CONTEXT =  "User-Messaging";
+    private static final String TEST_SESSION =      "[granted session]";
+    private static final String OTHER_SESSION =     "[other session]";
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    private SimulatedIdentityService simulated;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+
+        if ( simulated != null ) {
+            simulated.close();
+        }
+
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void isAuthorized_answersFromSessionTable() throws Exception {
+
+        System.out.println( "  Test Session Permission Tables" );
+
+        simulated = new SimulatedIdentityService( LatencyDistribution.fixed( 0.0 ), 0.0, 1 )
+                        .grant( TEST_SESSION, Arrays.asList( SessionRequired.name(), FSMessagingModifyThread.name() ) )
+                        .grantByDefault( Collections.singletonList( SessionRequired.name() ) );
+        IdentityService identityService = simulated.asIdentityService();
+
+        PermissionSet granted = identityService.isAuthorized( TEST_SESSION, TEST_CAS_CONTEXT,
+                                                              Collections.singletonList( FSMessagingModifyThread.name() ) ).get();
+        PermissionSet other = identityService.isAuthorized( OTHER_SESSION, TEST_CAS_CONTEXT,
+                                                            Arrays.asList( SessionRequired.name(), FSMessagingModifyThread.name() ) ).get();
+
+        assertThat( granted.getAuthorizedPermissions(), containsInAnyOrder( FSMessagingModifyThread.name() ) );
+        assertThat( other.getAuthorizedPermissions(), containsInAnyOrder( SessionRequired.name() ) );
+        assertThat( other.getDeniedPermissions(), containsInAnyOrder( FSMessagingModifyThread.name() ) );
+
+        assertThat( simulated.getCallCount(), equalTo( 2L ) );
+        assertThat( simulated.getCallCount( TEST_SESSION ), equalTo( 1L ) );
+        assertThat( simulated.getPermissionsRequestedCount(), equalTo( 3L ) );
+        assertThat( simulated.getPermissionsGrantedCount(), equalTo( 2L ) );
+    }
+
+
+    @Test
+    public void isAuthorized_delayedByLatency() throws Exception {
+
+        System.out.println( "  Test Simulated Latency" );
+
+        simulated = new SimulatedIdentityService( LatencyDistribution.fixed( 50.0 ), 0.0, 1 );
+
+        long start = System.nanoTime();
+        Future<PermissionSet> answer = simulated.asIdentityService()
+                                                .isAuthorized( TEST_SESSION, TEST_CAS_CONTEXT, Collections.singletonList( SessionRequired.name() ) );
+        assertThat( answer.isDone(), is( false ) );
+
+        assertThat( answer.get( 5L, TimeUnit.SECONDS ).getAuthorizedPermissions(), empty() );
+        assertThat( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), greaterThanOrEqualTo( 45L ) );
+    }
+
+
+    @Test
+    public void isAuthorized_failsAtErrorRate() throws Exception {
+
+        System.out.println( "  Test Simulated Failures" );
+
+        simulated = new SimulatedIdentityService( LatencyDistribution.fixed( 0.0 ), 1.0, 1 );
+
+        try {
+            simulated.asIdentityService().isAuthorized( TEST_SESSION, TEST_CAS_CONTEXT, Collections.singletonList( SessionRequired.name() ) ).get();
+            fail( "Expected a simulated failure" );
+        }
+        catch( ExecutionException ex ) {
+            assertThat( ex.getCause(), instanceOf( IllegalStateException.class ) );
+        }
+        assertThat( simulated.getFailureCount(), equalTo( 1L ) );
+    }
+
+
+    @Test
+    public void latencyDistributions_neverNegative() {
+
+        System.out.println( "  Test Latency Distributions" );
+
+        Random random = new Random( 42L );
+        for ( LatencyDistribution.Shape shape : LatencyDistribution.Shape.values() ) {
+            LatencyDistribution distribution = LatencyDistribution.of( shape, 5.0, 10.0 );
+            for ( int i = 0; i < 1000; i++ ) {
+                assertThat( distribution.sampleMicros( random ), greaterThanOrEqualTo( 0L ) );
+            }
+        }
+    }
+
+
+}
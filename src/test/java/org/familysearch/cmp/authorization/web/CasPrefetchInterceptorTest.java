@@ -0,0 +1,158 @@
+/*
+ * (c) 2018 by Intellectual Reserve, Inc. All rights reserved.
+ */
+
+package org.familysearch.cmp.authorization.web;
+
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilter;
+import org.familysearch.cmp.authorization.AsyncAuthorizationFilterChain;
+import org.familysearch.cmp.authorization.PermissionRequired;
+import org.familysearch.cmp.authorization.PrefetchingFilter;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlan;
+import org.familysearch.cmp.authorization.plan.AuthorizationPlanRegistry;
+import org.familysearch.engage.foundation.security.AuthorizationContext;
+import org.familysearch.engage.foundation.security.FoundationSecurityManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.familysearch.cmp.authorization.permissions.CmpPermission.FSMessagingModifyThread;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+
+public class CasPrefetchInterceptorTest {
+
+    private static final String TEST_SESSION_ID = "[CIS session ID]";
+
+    private static int  testCnt = 0;
+    private static Lock forceSerialLock = new ReentrantLock();
+
+
+    static class TestController {
+
+        @PermissionRequired( FSMessagingModifyThread )
+        public String modifyThread() {
+            return( "modified" );
+        }
+
+        public String unprotected() {
+            return( "open" );
+        }
+    }
+
+
+    /**
+     * Prefetching chain member, standing in for the CASAuthorizationFilter.
+     */
+    interface PrefetchingAsyncFilter extends AsyncAuthorizationFilter, PrefetchingFilter {
+    }
+
+
+    private FoundationSecurityManager   mockSecurityManager;
+    private PrefetchingAsyncFilter      mockPrefetchingFilter;
+    private CasPrefetchInterceptor      testInterceptor;
+
+
+    @Before
+    public void setup() {
+
+        // Force sequential test execution by requiring acquisition to exclusive lock!
+        forceSerialLock.lock();
+        ++testCnt;
+
+        mockSecurityManager = mock( FoundationSecurityManager.class );
+        mockPrefetchingFilter = mock( PrefetchingAsyncFilter.class );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenReturn( TEST_SESSION_ID );
+        when( mockPrefetchingFilter.isAuthorizedAsync( any( AsyncAuthorizationFilterChain.class ), any( AuthorizationContext.class ) ) )
+            .thenReturn( CompletableFuture.completedFuture( Boolean.TRUE ) );
+
+        testInterceptor = new CasPrefetchInterceptor( mockSecurityManager,
+                                                      new AuthorizationPlanRegistry(),
+                                                      new AsyncAuthorizationFilterChain( Collections.singletonList( mockPrefetchingFilter ) ) );
+
+        System.out.println( String.format( "\nTest %d Setup", testCnt ) );
+        System.out.flush();
+    }
+
+
+    @After
+    public void teardown() {
+        System.out.println( String.format("Test %d Teardown", testCnt) );
+        System.out.flush();
+        forceSerialLock.unlock();
+    }
+
+
+    @Test
+    public void preHandle_protectedHandler_prefetchesPlan()
+        throws Exception {
+
+        System.out.println( "  Test PreHandle (Protected Handler)" );
+
+        boolean proceed = testInterceptor.preHandle( new MockHttpServletRequest( "PUT", "/threads/1" ), new MockHttpServletResponse(),
+                                                     handler( "modifyThread" ) );
+
+        ArgumentCaptor<AuthorizationPlan> plan = ArgumentCaptor.forClass( AuthorizationPlan.class );
+        verify( mockPrefetchingFilter, times(1) ).prefetch( eq( TEST_SESSION_ID ), plan.capture() );
+        assertThat( plan.getValue().getMethod(), equalTo( TestController.class.getMethod( "modifyThread" ) ) );
+        assertThat( proceed, is( true ) );
+    }
+
+
+    @Test
+    public void preHandle_unprotectedHandler_noPrefetch()
+        throws Exception {
+
+        System.out.println( "  Test PreHandle (Unprotected Handler)" );
+
+        boolean proceed = testInterceptor.preHandle( new MockHttpServletRequest( "GET", "/open" ), new MockHttpServletResponse(),
+                                                     handler( "unprotected" ) );
+
+        verify( mockPrefetchingFilter, never() ).prefetch( anyString(), any( AuthorizationPlan.class ) );
+        assertThat( proceed, is( true ) );
+    }
+
+
+    @Test
+    public void preHandle_prefetchFails_requestStillProceeds()
+        throws Exception {
+
+        System.out.println( "  Test PreHandle (Prefetch Fails)" );
+
+        when( mockSecurityManager.authenticatedSessionID() ).thenThrow( new IllegalStateException( "no session" ) );
+        boolean proceed = testInterceptor.preHandle( new MockHttpServletRequest( "GET", "/threads" ), new MockHttpServletResponse(),
+                                                     handler( "modifyThread" ) );
+
+        verify( mockPrefetchingFilter, never() ).prefetch( anyString(), any( AuthorizationPlan.class ) );
+        assertThat( proceed, is( true ) );
+    }
+
+
+    private HandlerMethod handler( String methodName )
+        throws Exception {
+
+        return( new HandlerMethod( new TestController(), TestController.class.getMethod( methodName ) ) );
+    }
+
+}